@@ -2,12 +2,14 @@ package com.geophoto;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * GeoPhoto Application - Personal Photo Map Manager
  * Main application entry point
  */
 @SpringBootApplication
+@EnableScheduling
 public class GeoPhotoApplication {
     
     public static void main(String[] args) {
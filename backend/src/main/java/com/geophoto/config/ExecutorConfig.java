@@ -0,0 +1,118 @@
+package com.geophoto.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executor Configuration
+ * Bounded worker pools for background photo processing
+ */
+@Configuration
+public class ExecutorConfig {
+    
+    /**
+     * Worker pool for rendition (thumbnail) generation after upload.
+     * Bounded queue: when full, new jobs are rejected and the photo keeps
+     * the original image as its thumbnail.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor thumbnailExecutor(
+            @Value("${app.thumbnail.pool-size:2}") int poolSize,
+            @Value("${app.thumbnail.queue-capacity:500}") int queueCapacity) {
+        return boundedExecutor("thumbnail-", poolSize, queueCapacity);
+    }
+    
+    /**
+     * Worker pool for the processing stage of async and batch uploads (metadata, thumbnails, insert).
+     * Bounded queue: when full, async uploads are refused with 429 (see UploadJobService) and batch
+     * or import entries are prepared on their own thread, which waits for them anyway.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor uploadExecutor(
+            @Value("${app.upload.async.pool-size:4}") int poolSize,
+            @Value("${app.upload.async.queue-capacity:1000}") int queueCapacity) {
+        return boundedExecutor("upload-", poolSize, queueCapacity);
+    }
+    
+    /**
+     * Isolated pool for metadata parsing (see MetadataExtractionService).
+     * Bounded queue: when full, the photo is saved without metadata rather than
+     * letting parse work pile up behind a pathological file.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor metadataExecutor(
+            @Value("${app.metadata.pool-size:4}") int poolSize,
+            @Value("${app.metadata.queue-capacity:200}") int queueCapacity) {
+        return boundedExecutor("metadata-", poolSize, queueCapacity);
+    }
+    
+    /**
+     * Runs ZIP imports once their archive is spooled to disk, so a long import holds neither a
+     * request thread nor an admission permit. Bounded queue: when full the archive is refused.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor importExecutor(
+            @Value("${app.import.pool-size:2}") int poolSize,
+            @Value("${app.import.queue-capacity:20}") int queueCapacity) {
+        return boundedExecutor("import-", poolSize, queueCapacity);
+    }
+    
+    /**
+     * Sprite atlas generation (SpriteAtlasService), kept off request threads.
+     * Bounded queue: when full the atlas is generated on a later request.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor atlasExecutor(
+            @Value("${app.image.atlas.pool-size:1}") int poolSize,
+            @Value("${app.image.atlas.queue-capacity:50}") int queueCapacity) {
+        return boundedExecutor("atlas-", poolSize, queueCapacity);
+    }
+    
+    /**
+     * Workers for maintenance jobs (metadata backfill): GridFS prefix reads and extraction
+     * for one batch run in parallel. When saturated the job's own thread does the work.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor backfillExecutor(
+            @Value("${app.backfill.parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = boundedExecutor("backfill-", parallelism, parallelism * 4);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+    
+    /**
+     * Metadata parsing for maintenance jobs, kept apart from metadataExecutor so a backfill never
+     * fills the queue live uploads depend on. Bounded queue: when full the photo is retried later.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor backfillMetadataExecutor(
+            @Value("${app.backfill.parallelism:4}") int parallelism) {
+        return boundedExecutor("backfill-metadata-", parallelism, parallelism * 4);
+    }
+    
+    /**
+     * Background copies of GridFS originals into the local disk cache (see LocalDiskCache).
+     * Bounded queue: when full the fill is skipped and the file is simply served from GridFS again.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor cacheFillExecutor(
+            @Value("${app.image.cache.fill-pool-size:2}") int poolSize,
+            @Value("${app.image.cache.fill-queue-capacity:100}") int queueCapacity) {
+        return boundedExecutor("cache-fill-", poolSize, queueCapacity);
+    }
+    
+    private ThreadPoolTaskExecutor boundedExecutor(String threadNamePrefix, int poolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -0,0 +1,73 @@
+package com.geophoto.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.geophoto.dto.MessageResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Multipart Limit Filter
+ * Per-endpoint size limits for multipart requests. spring.servlet.multipart.max-request-size applies to
+ * the whole servlet, so it is set to the batch upload limit; every other multipart endpoint is held to
+ * app.upload.max-request-size here. The check uses Content-Length and runs before anything reads the
+ * body, so an oversized request is turned away before its parts are spooled to disk. Requests without
+ * a Content-Length (chunked transfer encoding) are only bounded by the servlet-wide limit.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+public class MultipartLimitFilter extends OncePerRequestFilter {
+
+    private static final String BATCH_UPLOAD_PATH = "/api/photos/upload/batch";
+
+    private final ObjectMapper objectMapper;
+    private final long maxRequestBytes;
+    private final long batchMaxRequestBytes;
+
+    public MultipartLimitFilter(
+            ObjectMapper objectMapper,
+            @Value("${app.upload.max-request-size:20MB}") DataSize maxRequestSize,
+            @Value("${app.upload.batch.max-request-size:500MB}") DataSize batchMaxRequestSize) {
+        this.objectMapper = objectMapper;
+        this.maxRequestBytes = maxRequestSize.toBytes();
+        this.batchMaxRequestBytes = batchMaxRequestSize.toBytes();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType == null || !contentType.toLowerCase().startsWith(MediaType.MULTIPART_FORM_DATA_VALUE);
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        long limit = BATCH_UPLOAD_PATH.equals(request.getRequestURI()) ? batchMaxRequestBytes : maxRequestBytes;
+        long length = request.getContentLengthLong();
+        if (length > limit) {
+            log.warn("Rejected {} byte multipart request to {} (limit {})", length, request.getRequestURI(), limit);
+            response.setStatus(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            objectMapper.writeValue(response.getOutputStream(),
+                    new MessageResponse("Request quá lớn, tối đa " + DataSize.ofBytes(limit).toMegabytes() + " MB"));
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
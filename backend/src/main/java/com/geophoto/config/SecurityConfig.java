@@ -102,9 +102,10 @@ public class SecurityConfig {
             "http://192.168.*.*:*",  // Mạng LAN
             "http://10.*.*.*:*"      // Mạng nội bộ
         ));
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
-        configuration.setExposedHeaders(Arrays.asList("Authorization"));
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "Location", "Upload-Offset", "Retry-After",
+                "Accept-Ranges", "Content-Range"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
         
@@ -0,0 +1,84 @@
+package com.geophoto.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.geophoto.dto.MessageResponse;
+import com.geophoto.entity.User;
+import com.geophoto.service.UploadAdmissionService;
+import com.geophoto.service.UploadRejectedException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Upload Admission Filter
+ * Puts UploadAdmissionService in front of every ingest endpoint (single, batch, chunked uploads
+ * and ZIP imports). It is a servlet filter rather than a HandlerInterceptor because
+ * DispatcherServlet parses multipart bodies before any interceptor runs: here the permit is taken
+ * after authentication (Spring Security's filters come first) but before the request body is read,
+ * and released when the request completes. Rejections are answered with 429 and Retry-After.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final List<String> INGEST_PATHS = List.of(
+            "/api/photos/upload", "/api/photos/upload/batch", "/api/photos/uploads/**", "/api/photos/imports/**");
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private final UploadAdmissionService uploadAdmissionService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        // Only requests that carry photo data; status polls (GET/HEAD) and aborts pass through
+        String method = request.getMethod();
+        if (!"POST".equals(method) && !"PATCH".equals(method) && !"PUT".equals(method)) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return INGEST_PATHS.stream().noneMatch(pattern -> PATH_MATCHER.match(pattern, path));
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof User user)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        UploadAdmissionService.Permit permit;
+        try {
+            permit = uploadAdmissionService.acquire(user.getId());
+        } catch (UploadRejectedException e) {
+            log.warn("Upload rejected: {}", e.getMessage());
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            objectMapper.writeValue(response.getOutputStream(),
+                    new MessageResponse("Server đang bận xử lý upload, vui lòng thử lại sau"));
+            return;
+        }
+        try (permit) {
+            filterChain.doFilter(request, response);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.geophoto.config;
 
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
@@ -11,14 +12,21 @@ import java.nio.file.Paths;
 
 /**
  * Web MVC Configuration
- * Configures CORS and Static Resource Handling
+ * Configures CORS and Static Resource Handling (upload admission control is UploadAdmissionFilter)
  */
 @Configuration
+@RequiredArgsConstructor
 public class WebMvcConfig implements WebMvcConfigurer {
     
     @Value("${app.upload.dir}")
     private String uploadDir;
     
+    /**
+     * Serve legacy disk files under /uploads/**; turn off once the legacy migration has completed
+     */
+    @Value("${app.upload.legacy-static.enabled:true}")
+    private boolean legacyStaticEnabled;
+    
     /**
      * Configure CORS to allow frontend (localhost:5173) to access the API
      * Note: CORS is also configured in SecurityConfig, this is a fallback
@@ -39,6 +47,9 @@ public class WebMvcConfig implements WebMvcConfigurer {
      */
     @Override
     public void addResourceHandlers(@NonNull ResourceHandlerRegistry registry) {
+        if (!legacyStaticEnabled) {
+            return;
+        }
         // Convert relative path to absolute path and ensure it ends with /
         java.nio.file.Path uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
         String uploadLocation = "file:" + uploadPath.toString().replace("\\", "/") + "/";
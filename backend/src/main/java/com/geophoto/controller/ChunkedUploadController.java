@@ -0,0 +1,210 @@
+package com.geophoto.controller;
+
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.UploadSessionDTO;
+import com.geophoto.entity.User;
+import com.geophoto.service.ChunkedUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Chunked Upload Controller
+ * Resumable upload cho file lớn hơn giới hạn multipart (10 MB)
+ *
+ * ┌────────────────────────────────────────────────────────────────────────────┐
+ * │ Method │ Endpoint                              │ Chức năng                 │
+ * ├────────────────────────────────────────────────────────────────────────────┤
+ * │ POST   │ /api/photos/uploads                   │ Tạo upload session        │
+ * │ HEAD   │ /api/photos/uploads/{id}              │ Offset hiện tại (header)  │
+ * │ GET    │ /api/photos/uploads/{id}              │ Trạng thái session        │
+ * │ PATCH  │ /api/photos/uploads/{id}              │ Gửi bytes tại Upload-Offset│
+ * │ POST   │ /api/photos/uploads/{id}/finalize     │ Hoàn tất, tạo Photo       │
+ * │ DELETE │ /api/photos/uploads/{id}              │ Hủy upload                │
+ * └────────────────────────────────────────────────────────────────────────────┘
+ *
+ * PATCH body là bytes thô (application/octet-stream). Mỗi PATCH nên chứa bội số của chunkSize
+ * (trừ phần cuối file); phần chunk chưa đủ sẽ bị bỏ và client gửi lại từ offset trả về.
+ * Khi mất kết nối, client gọi HEAD để lấy Upload-Offset rồi tiếp tục.
+ */
+@RestController
+@RequestMapping("/api/photos/uploads")
+@RequiredArgsConstructor
+@Slf4j
+public class ChunkedUploadController {
+
+    public static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+
+    private final ChunkedUploadService chunkedUploadService;
+
+    /**
+     * Get current authenticated user
+     */
+    private User getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return (User) authentication.getPrincipal();
+    }
+
+    /**
+     * POST /api/photos/uploads
+     * Tạo upload session mới
+     */
+    @PostMapping
+    public ResponseEntity<?> createSession(@Valid @RequestBody CreateUploadRequest request) {
+        User currentUser = getCurrentUser();
+        try {
+            UploadSessionDTO session = chunkedUploadService.createSession(
+                    request.getFileName(), request.getContentType(), request.getTotalSize(), currentUser);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header("Location", "/api/photos/uploads/" + session.getId())
+                    .header(UPLOAD_OFFSET_HEADER, "0")
+                    .body(session);
+        } catch (RuntimeException e) {
+            log.warn("Rejected upload session for {}: {}", request.getFileName(), e.getMessage());
+            return ResponseEntity.badRequest().body("Không thể tạo upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * HEAD /api/photos/uploads/{id}
+     * Offset để tiếp tục upload
+     */
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getOffset(@PathVariable String id) {
+        try {
+            UploadSessionDTO session = chunkedUploadService.getSession(id, getCurrentUser().getId());
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getOffset()))
+                    .header("Cache-Control", "no-store")
+                    .build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * GET /api/photos/uploads/{id}
+     * Trạng thái upload session
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getSession(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.getSession(id, getCurrentUser().getId()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Không tìm thấy upload session với ID: " + id);
+        }
+    }
+
+    /**
+     * PATCH /api/photos/uploads/{id}
+     * Ghi bytes bắt đầu từ Upload-Offset
+     *
+     * @return 200 + Upload-Offset mới; 409 + Upload-Offset hiện tại nếu offset không khớp
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> appendChunk(
+            @PathVariable String id,
+            @RequestHeader(UPLOAD_OFFSET_HEADER) long offset,
+            HttpServletRequest request) {
+        User currentUser = getCurrentUser();
+        UploadSessionDTO session;
+        try {
+            session = chunkedUploadService.getSession(id, currentUser.getId());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Không tìm thấy upload session với ID: " + id);
+        }
+        if (offset != session.getOffset()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getOffset()))
+                    .body(session);
+        }
+
+        try {
+            UploadSessionDTO updated = chunkedUploadService.appendChunk(
+                    id, currentUser.getId(), offset, request.getInputStream());
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(updated.getOffset()))
+                    .body(updated);
+        } catch (IOException e) {
+            // Connection dropped mid-body: whole chunks already written are kept
+            log.warn("Upload session {} interrupted: {}", id, e.getMessage());
+            UploadSessionDTO current = chunkedUploadService.getSession(id, currentUser.getId());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(current.getOffset()))
+                    .body(current);
+        } catch (RuntimeException e) {
+            log.warn("Upload session {} rejected chunk at {}: {}", id, offset, e.getMessage());
+            UploadSessionDTO current = chunkedUploadService.getSession(id, currentUser.getId());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(current.getOffset()))
+                    .body("Lỗi khi ghi dữ liệu: " + e.getMessage());
+        }
+    }
+
+    /**
+     * POST /api/photos/uploads/{id}/finalize
+     * Hoàn tất upload: trích xuất metadata và tạo Photo
+     * (gọi lại sau khi đã hoàn tất sẽ trả về ảnh đã tạo)
+     */
+    @PostMapping("/{id}/finalize")
+    public ResponseEntity<?> finalizeUpload(
+            @PathVariable String id,
+            @RequestParam(value = "description", required = false) String description,
+            @RequestParam(value = "latitude", required = false) Double latitude,
+            @RequestParam(value = "longitude", required = false) Double longitude) {
+        User currentUser = getCurrentUser();
+        try {
+            PhotoDTO photo = chunkedUploadService.finalizeUpload(
+                    id, currentUser.getId(), description, latitude, longitude);
+            return ResponseEntity.status(HttpStatus.CREATED).body(photo);
+        } catch (RuntimeException e) {
+            log.error("Error finalizing upload session {}", id, e);
+            return ResponseEntity.badRequest().body("Lỗi khi hoàn tất upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * DELETE /api/photos/uploads/{id}
+     * Hủy upload và xóa dữ liệu đã gửi
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abortUpload(@PathVariable String id) {
+        try {
+            chunkedUploadService.abortUpload(id, getCurrentUser().getId());
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Không tìm thấy upload session với ID: " + id);
+        }
+    }
+
+    /**
+     * Request body để tạo upload session
+     */
+    @Data
+    public static class CreateUploadRequest {
+        @NotBlank(message = "Tên file không được để trống")
+        private String fileName;
+
+        @NotBlank(message = "Content type không được để trống")
+        private String contentType;
+
+        @NotNull(message = "Kích thước file không được để trống")
+        @Positive(message = "Kích thước file phải lớn hơn 0")
+        private Long totalSize;
+    }
+}
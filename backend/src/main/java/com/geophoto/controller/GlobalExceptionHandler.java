@@ -1,7 +1,9 @@
 package com.geophoto.controller;
 
 import com.geophoto.dto.MessageResponse;
+import com.geophoto.service.UploadRejectedException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -41,6 +43,17 @@ public class GlobalExceptionHandler {
                 .body(new MessageResponse(firstError));
     }
     
+    /**
+     * Handle uploads turned away by admission control
+     */
+    @ExceptionHandler(UploadRejectedException.class)
+    public ResponseEntity<MessageResponse> handleUploadRejected(UploadRejectedException ex) {
+        log.warn("Upload rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new MessageResponse("Server đang bận xử lý upload, vui lòng thử lại sau"));
+    }
+    
     /**
      * Handle generic runtime exceptions
      */
@@ -0,0 +1,109 @@
+package com.geophoto.controller;
+
+import com.geophoto.dto.ImportJobDTO;
+import com.geophoto.entity.User;
+import com.geophoto.service.ArchiveTooLargeException;
+import com.geophoto.service.ImportService;
+import com.geophoto.service.UploadRejectedException;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Import Controller
+ * Import ảnh từ file ZIP, đọc dạng stream (không giải nén ra đĩa)
+ *
+ * ┌──────────────────────────────────────────────────────────────────────────┐
+ * │ Method │ Endpoint                            │ Chức năng                 │
+ * ├──────────────────────────────────────────────────────────────────────────┤
+ * │ POST   │ /api/photos/imports                 │ Tạo import job            │
+ * │ PUT    │ /api/photos/imports/{id}/archive    │ Gửi file ZIP (body thô)   │
+ * │ GET    │ /api/photos/imports/{id}            │ Tiến độ import            │
+ * └──────────────────────────────────────────────────────────────────────────┘
+ *
+ * PUT body là file ZIP thô (application/zip), không qua multipart nên không bị giới hạn 10 MB;
+ * file lớn hơn app.import.max-archive-size thì trả về 413.
+ * Request PUT trả về 202 ngay khi đã nhận xong archive (lưu tạm ra đĩa); việc import chạy nền,
+ * client GET để xem tiến độ. Hàng đợi import đầy thì trả về 429, có thể gửi lại archive sau.
+ */
+@RestController
+@RequestMapping("/api/photos/imports")
+@RequiredArgsConstructor
+@Slf4j
+public class ImportController {
+
+    private final ImportService importService;
+
+    /**
+     * Get current authenticated user
+     */
+    private User getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return (User) authentication.getPrincipal();
+    }
+
+    /**
+     * POST /api/photos/imports
+     * Tạo import job mới
+     */
+    @PostMapping
+    public ResponseEntity<?> createJob(@RequestParam(value = "fileName", required = false) String fileName) {
+        ImportJobDTO job = importService.createJob(fileName, getCurrentUser());
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header("Location", "/api/photos/imports/" + job.getId())
+                .body(job);
+    }
+
+    /**
+     * PUT /api/photos/imports/{id}/archive
+     * Gửi file ZIP; các ảnh trong đó được import nền
+     */
+    @PutMapping("/{id}/archive")
+    public ResponseEntity<?> uploadArchive(@PathVariable String id, HttpServletRequest request) {
+        User currentUser = getCurrentUser();
+        try {
+            importService.getJob(id, currentUser.getId());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Không tìm thấy import job với ID: " + id);
+        }
+
+        try {
+            ImportJobDTO job = importService.importArchive(id, currentUser.getId(), request.getInputStream());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header("Location", "/api/photos/imports/" + job.getId())
+                    .body(job);
+        } catch (ArchiveTooLargeException e) {
+            log.warn("Import job {} refused archive: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body("File ZIP quá lớn: " + e.getMessage());
+        } catch (IOException e) {
+            log.warn("Import job {} could not read request body: {}", id, e.getMessage());
+            return ResponseEntity.badRequest().body("Lỗi khi đọc file ZIP: " + e.getMessage());
+        } catch (UploadRejectedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Import job đã nhận file ZIP: " + e.getMessage());
+        }
+    }
+
+    /**
+     * GET /api/photos/imports/{id}
+     * Tiến độ import
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getJob(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(importService.getJob(id, getCurrentUser().getId()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Không tìm thấy import job với ID: " + id);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.geophoto.controller;
+
+import com.geophoto.entity.JobCheckpoint;
+import com.geophoto.service.GeoLocationMigrationService;
+import com.geophoto.service.LegacyUploadMigrationService;
+import com.geophoto.service.MetadataBackfillService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Maintenance Controller
+ * Các job bảo trì dữ liệu chạy nền, chỉ dành cho ADMIN
+ *
+ * ┌──────────────────────────────────────────────────────────────────────────┐
+ * │ Method │ Endpoint                              │ Chức năng               │
+ * ├──────────────────────────────────────────────────────────────────────────┤
+ * │ GET    │ /api/admin/backfill/metadata          │ Tiến độ backfill        │
+ * │ POST   │ /api/admin/backfill/metadata/start    │ Bắt đầu / tiếp tục      │
+ * │ POST   │ /api/admin/backfill/metadata/pause    │ Tạm dừng sau batch này  │
+ * │ DELETE │ /api/admin/backfill/metadata          │ Xóa checkpoint          │
+ * │ GET    │ /api/admin/migrations/legacy-uploads  │ Tiến độ migration       │
+ * │ POST   │ /api/admin/migrations/legacy-uploads/start │ Bắt đầu / tiếp tục │
+ * │ POST   │ /api/admin/migrations/legacy-uploads/pause │ Tạm dừng           │
+ * │ DELETE │ /api/admin/migrations/legacy-uploads  │ Xóa checkpoint          │
+ * │ GET    │ /api/admin/migrations/geo-location    │ Tiến độ migration       │
+ * │ POST   │ /api/admin/migrations/geo-location/start │ Bắt đầu / tiếp tục   │
+ * │ POST   │ /api/admin/migrations/geo-location/pause │ Tạm dừng             │
+ * │ DELETE │ /api/admin/migrations/geo-location    │ Xóa checkpoint          │
+ * └──────────────────────────────────────────────────────────────────────────┘
+ */
+@RestController
+@RequestMapping("/api/admin")
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+@Slf4j
+public class MaintenanceController {
+
+    private final MetadataBackfillService metadataBackfillService;
+    private final LegacyUploadMigrationService legacyUploadMigrationService;
+    private final GeoLocationMigrationService geoLocationMigrationService;
+
+    /**
+     * GET /api/admin/backfill/metadata
+     * Tiến độ backfill metadata (GPS, ngày chụp) cho ảnh cũ
+     */
+    @GetMapping("/backfill/metadata")
+    public ResponseEntity<JobCheckpoint> getMetadataBackfill() {
+        return ResponseEntity.ok(metadataBackfillService.getStatus());
+    }
+
+    /**
+     * POST /api/admin/backfill/metadata/start
+     * Bắt đầu hoặc tiếp tục từ checkpoint
+     */
+    @PostMapping("/backfill/metadata/start")
+    public ResponseEntity<JobCheckpoint> startMetadataBackfill() {
+        log.info("Starting metadata backfill");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(metadataBackfillService.start());
+    }
+
+    /**
+     * POST /api/admin/backfill/metadata/pause
+     * Dừng sau batch hiện tại, checkpoint được giữ lại
+     */
+    @PostMapping("/backfill/metadata/pause")
+    public ResponseEntity<JobCheckpoint> pauseMetadataBackfill() {
+        log.info("Pausing metadata backfill");
+        return ResponseEntity.ok(metadataBackfillService.pause());
+    }
+
+    /**
+     * DELETE /api/admin/backfill/metadata
+     * Xóa checkpoint để lần chạy sau quét lại từ đầu
+     */
+    @DeleteMapping("/backfill/metadata")
+    public ResponseEntity<?> resetMetadataBackfill() {
+        try {
+            metadataBackfillService.reset();
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Backfill đang chạy, hãy tạm dừng trước");
+        }
+    }
+    
+    /**
+     * GET /api/admin/migrations/legacy-uploads
+     * Tiến độ chuyển file cũ trong thư mục uploads sang GridFS
+     */
+    @GetMapping("/migrations/legacy-uploads")
+    public ResponseEntity<JobCheckpoint> getLegacyUploadMigration() {
+        return ResponseEntity.ok(legacyUploadMigrationService.getStatus());
+    }
+
+    /**
+     * POST /api/admin/migrations/legacy-uploads/start
+     * Bắt đầu hoặc tiếp tục từ checkpoint
+     */
+    @PostMapping("/migrations/legacy-uploads/start")
+    public ResponseEntity<JobCheckpoint> startLegacyUploadMigration() {
+        log.info("Starting legacy upload migration");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(legacyUploadMigrationService.start());
+    }
+
+    /**
+     * POST /api/admin/migrations/legacy-uploads/pause
+     * Dừng sau batch hiện tại, checkpoint được giữ lại
+     */
+    @PostMapping("/migrations/legacy-uploads/pause")
+    public ResponseEntity<JobCheckpoint> pauseLegacyUploadMigration() {
+        log.info("Pausing legacy upload migration");
+        return ResponseEntity.ok(legacyUploadMigrationService.pause());
+    }
+
+    /**
+     * DELETE /api/admin/migrations/legacy-uploads
+     * Xóa checkpoint để lần chạy sau quét lại từ đầu
+     */
+    @DeleteMapping("/migrations/legacy-uploads")
+    public ResponseEntity<?> resetLegacyUploadMigration() {
+        try {
+            legacyUploadMigrationService.reset();
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Migration đang chạy, hãy tạm dừng trước");
+        }
+    }
+
+    /**
+     * GET /api/admin/migrations/geo-location
+     * Tiến độ ghi trường location (GeoJSON) và gridCell cho ảnh cũ; index được tạo khi migration hoàn tất
+     */
+    @GetMapping("/migrations/geo-location")
+    public ResponseEntity<JobCheckpoint> getGeoLocationMigration() {
+        return ResponseEntity.ok(geoLocationMigrationService.getStatus());
+    }
+
+    /**
+     * POST /api/admin/migrations/geo-location/start
+     * Bắt đầu hoặc tiếp tục từ checkpoint
+     */
+    @PostMapping("/migrations/geo-location/start")
+    public ResponseEntity<JobCheckpoint> startGeoLocationMigration() {
+        log.info("Starting geo location migration");
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(geoLocationMigrationService.start());
+    }
+
+    /**
+     * POST /api/admin/migrations/geo-location/pause
+     * Dừng sau batch hiện tại, checkpoint được giữ lại
+     */
+    @PostMapping("/migrations/geo-location/pause")
+    public ResponseEntity<JobCheckpoint> pauseGeoLocationMigration() {
+        log.info("Pausing geo location migration");
+        return ResponseEntity.ok(geoLocationMigrationService.pause());
+    }
+
+    /**
+     * DELETE /api/admin/migrations/geo-location
+     * Xóa checkpoint để lần chạy sau chia lại các khoảng _id từ đầu
+     */
+    @DeleteMapping("/migrations/geo-location")
+    public ResponseEntity<?> resetGeoLocationMigration() {
+        try {
+            geoLocationMigrationService.reset();
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Migration đang chạy, hãy tạm dừng trước");
+        }
+    }
+}
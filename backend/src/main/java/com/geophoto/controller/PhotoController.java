@@ -1,10 +1,27 @@
 package com.geophoto.controller;
 
+import com.geophoto.dto.BatchUploadResultDTO;
+import com.geophoto.dto.PhotoClustersDTO;
 import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.SpriteAtlasDTO;
+import com.geophoto.dto.UploadJobDTO;
+import com.geophoto.dto.ViewportPhotosDTO;
 import com.geophoto.entity.User;
+import com.geophoto.service.ImageDeliveryService;
 import com.geophoto.service.PhotoService;
+import com.geophoto.service.RenditionService;
+import com.geophoto.service.SpriteAtlasService;
+import com.geophoto.service.UploadJobService;
+import com.geophoto.service.UploadRejectedException;
+import com.geophoto.util.GeoQueries;
+import com.geophoto.util.GridCells;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -13,11 +30,10 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.lang.NonNull;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import java.util.Map;
 
 /**
  * Photo Controller
@@ -30,6 +46,15 @@ import org.springframework.http.MediaType;
 public class PhotoController {
     
     private final PhotoService photoService;
+    private final UploadJobService uploadJobService;
+    private final ImageDeliveryService imageDeliveryService;
+    private final RenditionService renditionService;
+    private final SpriteAtlasService spriteAtlasService;
+    
+    private static final int MAX_HASHES_PER_CHECK = 5000;
+    
+    @Value("${app.upload.batch.max-files:200}")
+    private int maxBatchFiles;
     
     /**
      * Get current authenticated user
@@ -42,17 +67,30 @@ public class PhotoController {
     /**
      * GET /api/photos/image/{filename}
      * Serve photo image from GridFS
+     * Hỗ trợ Range (206 / multipart/byteranges / 416) để tải tiếp file lớn
+     * Với w/h/fit/q: trả về bản thu nhỏ (kích thước và chất lượng phải nằm trong allow-list)
      */
     @GetMapping("/image/{filename}")
-    public ResponseEntity<Resource> servePhoto(@PathVariable String filename) {
-        Resource file = photoService.getPhotoResource(filename);
-        if (file == null || !file.exists()) {
-             return ResponseEntity.notFound().build();
+    public void servePhoto(
+            @PathVariable String filename,
+            @RequestParam(value = "w", required = false) Integer width,
+            @RequestParam(value = "h", required = false) Integer height,
+            @RequestParam(value = "fit", required = false) String fit,
+            @RequestParam(value = "q", required = false) Integer quality,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        RenditionService.RenditionSpec rendition = null;
+        if (width != null || height != null || fit != null || quality != null) {
+            try {
+                rendition = renditionService.spec(width, height, fit, quality);
+            } catch (IllegalArgumentException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Tham số ảnh không hợp lệ: " + e.getMessage());
+                return;
+            }
+        }
+        if (!imageDeliveryService.serve(filename, rendition, request, response)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFilename() + "\"")
-                .contentType(MediaType.IMAGE_JPEG) // We could try to detect type, but JPEG is safe default or we can store content type in DB
-                .body(file);
     }
     
     /**
@@ -67,6 +105,61 @@ public class PhotoController {
         return ResponseEntity.ok(photos);
     }
     
+    /**
+     * GET /api/photos/within?south=&west=&north=&east=[&polygon=lng,lat;lng,lat;...]
+     * Lấy ảnh nằm trong khung nhìn bản đồ (dùng index 2dsphere), mới nhất trước
+     * polygon (tùy chọn): chỉ lấy ảnh nằm trong đa giác
+     * west > east: khung nhìn vắt qua kinh tuyến 180
+     */
+    @GetMapping("/within")
+    public ResponseEntity<?> getPhotosWithin(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east,
+            @RequestParam(value = "polygon", required = false) String polygon) {
+        if (!GeoQueries.isValidBox(south, west, north, east)) {
+            return ResponseEntity.badRequest().body("Khung nhìn không hợp lệ");
+        }
+        try {
+            ViewportPhotosDTO result = photoService.getPhotosWithin(getCurrentUser().getId(),
+                    south, west, north, east, polygon != null ? parsePolygon(polygon) : null);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Đa giác không hợp lệ: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * GET /api/photos/clusters?south=&west=&north=&east=&zoom=
+     * Ảnh trong khung nhìn cho mức zoom hiện tại, đã gom nhóm ở server:
+     * ít ảnh thì trả về từng ảnh (points), nhiều ảnh thì trả về các cụm (tâm, số ảnh, ảnh đại diện)
+     * Số cụm luôn bị giới hạn, không phụ thuộc vào số ảnh trong thư viện
+     */
+    @GetMapping("/clusters")
+    public ResponseEntity<?> getPhotoClusters(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east,
+            @RequestParam int zoom) {
+        if (!GeoQueries.isValidBox(south, west, north, east) || zoom < 0 || zoom > GridCells.MAX_LEVEL) {
+            return ResponseEntity.badRequest().body("Khung nhìn hoặc mức zoom không hợp lệ");
+        }
+        PhotoClustersDTO result = photoService.getPhotoClusters(getCurrentUser().getId(),
+                south, west, north, east, zoom);
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * GET /api/photos/stats
+     * Số ảnh của user hiện tại: { total, withGps }
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Long>> getPhotoStats() {
+        return ResponseEntity.ok(photoService.getPhotoStats(getCurrentUser().getId()));
+    }
+    
     /**
      * GET /api/photos
      * Lấy tất cả ảnh của user hiện tại
@@ -79,6 +172,38 @@ public class PhotoController {
         return ResponseEntity.ok(photos);
     }
     
+    /**
+     * GET /api/photos/atlas?south=&west=&north=&east=
+     * Sprite atlas cho marker bản đồ: thumbnail của các ảnh trong khung nhìn được ghép vào vài ảnh lớn
+     * west > east: khung nhìn vắt qua kinh tuyến 180
+     */
+    @GetMapping("/atlas")
+    public ResponseEntity<?> getViewportAtlas(
+            @RequestParam double south,
+            @RequestParam double west,
+            @RequestParam double north,
+            @RequestParam double east) {
+        if (!GeoQueries.isValidBox(south, west, north, east)) {
+            return ResponseEntity.badRequest().body("Khung nhìn không hợp lệ");
+        }
+        SpriteAtlasDTO atlas = spriteAtlasService.forViewport(getCurrentUser().getId(), south, west, north, east);
+        return ResponseEntity.ok(atlas);
+    }
+    
+    /**
+     * POST /api/photos/atlas
+     * Sprite atlas cho danh sách ảnh (body: { "photoIds": [...] })
+     * Trả về URL các atlas và bảng vị trí (photoId -> x, y) của từng thumbnail
+     */
+    @PostMapping("/atlas")
+    public ResponseEntity<?> getPhotosAtlas(@RequestBody AtlasRequest request) {
+        if (request.getPhotoIds() == null || request.getPhotoIds().isEmpty()) {
+            return ResponseEntity.badRequest().body("Danh sách ảnh trống");
+        }
+        SpriteAtlasDTO atlas = spriteAtlasService.forPhotos(getCurrentUser().getId(), request.getPhotoIds());
+        return ResponseEntity.ok(atlas);
+    }
+    
     /**
      * GET /api/photos/{id}
      * Lấy ảnh theo ID
@@ -96,14 +221,17 @@ public class PhotoController {
      * 
      * @param file File ảnh cần upload (JPEG, PNG, etc.)
      * @param description Mô tả tùy chọn cho ảnh
+     * @param async true = trả về 202 ngay sau khi lưu file, xử lý metadata/thumbnail ở background
      * @return PhotoDTO chứa thông tin ảnh đã lưu, bao gồm GPS nếu có
+     *         (async: UploadJobDTO, theo dõi qua GET /api/photos/jobs/{id})
      */
     @PostMapping("/upload")
     public ResponseEntity<?> uploadPhoto(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "description", required = false) String description,
             @RequestParam(value = "latitude", required = false) Double latitude,
-            @RequestParam(value = "longitude", required = false) Double longitude) {
+            @RequestParam(value = "longitude", required = false) Double longitude,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
         
         // Validate file
         if (file.isEmpty()) {
@@ -123,6 +251,13 @@ public class PhotoController {
                 currentUser.getUsername(), file.getOriginalFilename(), file.getSize(), contentType);
         
         try {
+            if (async) {
+                UploadJobDTO job = uploadJobService.submitUpload(file, description, latitude, longitude, currentUser);
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header(HttpHeaders.LOCATION, "/api/photos/jobs/" + job.getId())
+                        .body(job);
+            }
+            
             PhotoDTO photo = photoService.uploadPhoto(file, description, latitude, longitude, currentUser);
             
             // Log GPS extraction result
@@ -135,6 +270,8 @@ public class PhotoController {
             
             return ResponseEntity.status(HttpStatus.CREATED).body(photo);
             
+        } catch (UploadRejectedException e) {
+            throw e;
         } catch (RuntimeException e) {
             log.error("Error uploading photo: {}", file.getOriginalFilename(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -146,6 +283,69 @@ public class PhotoController {
         }
     }
     
+    /**
+     * POST /api/photos/upload/batch
+     * Upload nhiều ảnh trong một request (multipart, field "files")
+     * Metadata được xử lý song song, các Photo được lưu bằng một bulk insert
+     * Lưu ý: toàn bộ request multipart được ghi ra file tạm trước khi vào controller
+     * (tối đa app.upload.batch.max-request-size); bộ ảnh lớn nên dùng upload theo chunk
+     * 
+     * @param files Danh sách file ảnh
+     * @return Kết quả cho từng file, theo thứ tự gửi lên
+     */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<?> uploadPhotos(@RequestParam("files") List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            return ResponseEntity.badRequest().body("Không có file nào được gửi lên");
+        }
+        if (files.size() > maxBatchFiles) {
+            return ResponseEntity.badRequest().body("Tối đa " + maxBatchFiles + " file mỗi lần upload");
+        }
+        
+        User currentUser = getCurrentUser();
+        log.info("Batch upload of {} files for user {}", files.size(), currentUser.getUsername());
+        List<BatchUploadResultDTO> results = photoService.uploadPhotos(files, currentUser);
+        return ResponseEntity.ok(results);
+    }
+    
+    /**
+     * POST /api/photos/hashes/check
+     * Kiểm tra trước khi upload: client gửi SHA-256 (hex) của các file,
+     * server trả về những hash mà user đã có ảnh để client bỏ qua không gửi lại
+     * 
+     * @return { "existing": [hash, ...] }
+     */
+    @PostMapping("/hashes/check")
+    public ResponseEntity<?> checkHashes(@RequestBody HashCheckRequest request) {
+        List<String> hashes = request.getHashes();
+        if (hashes == null || hashes.isEmpty()) {
+            return ResponseEntity.ok(Map.of("existing", List.of()));
+        }
+        if (hashes.size() > MAX_HASHES_PER_CHECK) {
+            return ResponseEntity.badRequest().body("Tối đa " + MAX_HASHES_PER_CHECK + " hash mỗi lần kiểm tra");
+        }
+        User currentUser = getCurrentUser();
+        List<String> existing = photoService.findExistingHashes(hashes, currentUser.getId());
+        log.info("Hash check for user {}: {} of {} already uploaded", 
+                currentUser.getUsername(), existing.size(), hashes.size());
+        return ResponseEntity.ok(Map.of("existing", existing));
+    }
+    
+    /**
+     * GET /api/photos/jobs/{id}
+     * Trạng thái xử lý của upload async
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<?> getUploadJob(@PathVariable String id) {
+        User currentUser = getCurrentUser();
+        try {
+            return ResponseEntity.ok(uploadJobService.getJob(id, currentUser.getId()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Không tìm thấy upload job với ID: " + id);
+        }
+    }
+    
     /**
      * DELETE /api/photos/{id}
      * Xóa ảnh
@@ -190,6 +390,41 @@ public class PhotoController {
         }
     }
     
+    /**
+     * "lng,lat;lng,lat;..." -> [longitude, latitude] pairs
+     */
+    private static List<double[]> parsePolygon(String polygon) {
+        List<double[]> vertices = new ArrayList<>();
+        for (String vertex : polygon.split(";")) {
+            String[] parts = vertex.split(",");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Points must be lng,lat");
+            }
+            try {
+                vertices.add(new double[] {Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim())});
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in " + vertex);
+            }
+        }
+        return vertices;
+    }
+    
+    /**
+     * Request body for POST /api/photos/atlas
+     */
+    @Data
+    public static class AtlasRequest {
+        private List<String> photoIds;
+    }
+    
+    /**
+     * Request body for the upload pre-check
+     */
+    @Data
+    public static class HashCheckRequest {
+        private List<String> hashes;
+    }
+    
     /**
      * Request body class for location update
      */
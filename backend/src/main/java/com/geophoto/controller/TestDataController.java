@@ -69,8 +69,7 @@ public class TestDataController {
         photo.setFileName(filename);
         photo.setUrl("/uploads/" + filename);
         photo.setThumbnailUrl("/uploads/" + filename);
-        photo.setLatitude(latitude);
-        photo.setLongitude(longitude);
+        photo.setCoordinates(latitude, longitude);
         photo.setDescription(description);
         photo.setTakenAt(LocalDateTime.now().minusDays((long)(Math.random() * 30)));
         return photo;
@@ -0,0 +1,28 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Batch Upload Result Data Transfer Object
+ * One entry per file of POST /api/photos/upload/batch, in request order
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadResultDTO {
+    
+    private String fileName;
+    private boolean success;
+    private PhotoDTO photo; // Set when success
+    private String error; // Set when not success
+    
+    public static BatchUploadResultDTO success(String fileName, PhotoDTO photo) {
+        return new BatchUploadResultDTO(fileName, true, photo, null);
+    }
+    
+    public static BatchUploadResultDTO failure(String fileName, String error) {
+        return new BatchUploadResultDTO(fileName, false, null, error);
+    }
+}
@@ -0,0 +1,31 @@
+package com.geophoto.dto;
+
+import com.geophoto.entity.UploadJob.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Import Job Data Transfer Object
+ * Returned by /api/photos/imports
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportJobDTO {
+    
+    private String id;
+    private JobStatus status;
+    private String fileName;
+    private int entriesProcessed;
+    private int imported;
+    private int skipped;
+    private int failed;
+    private List<String> errors; // "entry: reason" for the first failed entries
+    private String error; // Set when status is FAILED
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,39 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Photo Clusters Data Transfer Object
+ * Returned by GET /api/photos/clusters: the photos of a map viewport, either one by one
+ * (few photos) or grouped per grid cell
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PhotoClustersDTO {
+
+    private long total; // Photos in the viewport
+    private int level; // Grid level of the clusters (0 when points are returned)
+    private List<Cluster> clusters; // Empty when points are returned
+    private List<PhotoDTO> points; // Individual photos, only up to app.photos.clusters.points-threshold; otherwise null
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Cluster {
+        private String cell; // Quadkey prefix of the grid cell
+        private double latitude; // Centroid of the photos in the cell
+        private double longitude;
+        private long count;
+        private String photoId; // Newest photo of the cell, shown as the cluster thumbnail
+        private String thumbnailUrl; // Marker rendition of that photo (its thumbnail or image until generated)
+        private double south; // Bounds of the photos in the cell, for zooming in on click
+        private double west;
+        private double north;
+        private double east;
+    }
+}
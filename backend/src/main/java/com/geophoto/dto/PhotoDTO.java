@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 /**
  * Photo Data Transfer Object
@@ -19,6 +20,9 @@ public class PhotoDTO {
     private String fileName;
     private String url;
     private String thumbnailUrl;
+    private String contentHash; // SHA-256 of the original (hex), for client-side dedup
+    private Map<String, String> renditions; // rendition name -> URL (marker, grid, preview)
+    private String blurHash; // Placeholder painted before the thumbnail loads
     private Double latitude;
     private Double longitude;
     private LocalDateTime takenAt;
@@ -0,0 +1,42 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sprite Atlas Data Transfer Object
+ * Returned by /api/photos/atlas: map marker thumbnails packed into a few images
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpriteAtlasDTO {
+
+    private int tileSize; // Width and height of every sprite in atlas pixels
+    private List<Atlas> atlases;
+    private List<String> missing; // Photo IDs without a sprite (show their own marker image)
+    private boolean truncated; // More photos matched than app.image.atlas.max-photos
+    private boolean pending; // Some atlases are still being generated (their photos are in missing); ask again later
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Atlas {
+        private String url; // Immutable image URL (/api/photos/image/atlas_{key}.jpg)
+        private int width;
+        private int height;
+        private Map<String, Sprite> sprites; // Photo ID -> top-left corner of its tile
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Sprite {
+        private int x;
+        private int y;
+    }
+}
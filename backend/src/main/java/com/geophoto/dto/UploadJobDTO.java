@@ -0,0 +1,27 @@
+package com.geophoto.dto;
+
+import com.geophoto.entity.UploadJob.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload Job Data Transfer Object
+ * Returned by async uploads (202) and GET /api/photos/jobs/{id}
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadJobDTO {
+    
+    private String id;
+    private JobStatus status;
+    private int progress; // 0-100
+    private String fileName;
+    private PhotoDTO photo; // Set once status is COMPLETED
+    private String error; // Set when status is FAILED
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
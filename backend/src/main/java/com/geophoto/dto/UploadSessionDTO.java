@@ -0,0 +1,27 @@
+package com.geophoto.dto;
+
+import com.geophoto.entity.UploadSession.SessionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload Session Data Transfer Object
+ * State of a resumable upload returned by /api/photos/uploads
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionDTO {
+    
+    private String id;
+    private String fileName;
+    private long totalSize;
+    private int chunkSize; // PATCH bodies must be a multiple of this, except the last one
+    private long offset; // Next byte the server expects
+    private SessionStatus status;
+    private String photoId; // Set once finalized
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,20 @@
+package com.geophoto.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Viewport Photos Data Transfer Object
+ * Returned by GET /api/photos/within
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewportPhotosDTO {
+    
+    private List<PhotoDTO> photos;
+    private boolean truncated; // More photos are in the viewport than app.photos.within.max-results
+}
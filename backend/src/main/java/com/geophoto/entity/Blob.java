@@ -0,0 +1,55 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Blob Document
+ * Content-addressed original stored once in GridFS and shared by every Photo with the same bytes
+ */
+@Document(collection = "blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Blob {
+    
+    /**
+     * SHA-256 of the content (lowercase hex)
+     */
+    @Id
+    private String id;
+    
+    /**
+     * GridFS filename: {sha256}{extension}; internal, never served under this name
+     */
+    private String filename;
+    
+    /**
+     * Public filenames of the references (random UUID + extension), one per reference:
+     * /api/photos/image/{alias} serves this blob (see OriginalFileResolver)
+     */
+    @Indexed
+    private List<String> aliases = new ArrayList<>();
+    
+    /**
+     * GridFS file id (hex ObjectId); the blob owns exactly this file
+     */
+    private String gridFsFileId;
+    
+    private String contentType;
+    
+    /**
+     * Number of references (size of aliases); the GridFS file is deleted when it drops to zero
+     */
+    private long refCount;
+    
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,76 @@
+package com.geophoto.entity;
+
+import com.geophoto.entity.UploadJob.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Import Job Document
+ * Progress of a ZIP archive import; counters are updated as entries complete
+ * Jobs expire automatically 7 days after creation
+ */
+@Document(collection = "import_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportJob {
+    
+    @Id
+    private String id;
+    
+    /**
+     * User ID who owns this job
+     */
+    @Indexed
+    private String userId;
+    
+    /**
+     * QUEUED until the archive is sent, PROCESSING while it streams in
+     */
+    private JobStatus status = JobStatus.QUEUED;
+    
+    /**
+     * Archive filename sent by the client
+     */
+    private String fileName;
+    
+    /**
+     * Archive entries read so far (including skipped and failed ones)
+     */
+    private int entriesProcessed;
+    
+    /**
+     * Photos created
+     */
+    private int imported;
+    
+    /**
+     * Entries that are not images (directories, documents, OS metadata files)
+     */
+    private int skipped;
+    
+    private int failed;
+    
+    /**
+     * First failures as "entry: reason" (capped)
+     */
+    private List<String> errors = new ArrayList<>();
+    
+    /**
+     * Failure reason when the whole import failed (e.g. corrupt archive)
+     */
+    private String error;
+    
+    @Indexed(expireAfter = "7d")
+    private LocalDateTime createdAt = LocalDateTime.now();
+    
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
@@ -0,0 +1,93 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Job Checkpoint Document
+ * Progress of a long-running maintenance job (backfills, migrations), saved after every batch
+ * so the job resumes where it stopped after a pause or restart
+ */
+@Document(collection = "job_checkpoints")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobCheckpoint {
+    
+    /**
+     * Job name, e.g. "metadata-backfill"
+     */
+    @Id
+    private String id;
+    
+    private CheckpointStatus status = CheckpointStatus.IDLE;
+    
+    /**
+     * Last processed key (document _id as hex ObjectId, or file name); the next batch starts after it
+     */
+    private String lastId;
+    
+    /**
+     * Documents examined so far
+     */
+    private long processed;
+    
+    /**
+     * Documents changed so far
+     */
+    private long updated;
+    
+    /**
+     * Documents that could not be processed
+     */
+    private long failed;
+    
+    private String error;
+    
+    private LocalDateTime startedAt;
+    
+    private LocalDateTime updatedAt;
+    
+    private LocalDateTime finishedAt;
+    
+    /**
+     * _id ranges walked in parallel, for jobs that split the collection (empty otherwise)
+     */
+    private List<IdRange> ranges = new ArrayList<>();
+    
+    /**
+     * Keys that failed and are retried once the cursor reaches the end (jobs that track them)
+     */
+    private List<String> failedKeys = new ArrayList<>();
+    
+    /**
+     * Part of the _id space with its own keyset cursor
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class IdRange {
+        private String minId; // Inclusive lower bound (hex ObjectId)
+        private String maxId; // Exclusive upper bound, null for the last range (no upper bound)
+        private String lastId; // Last processed _id, null before the first batch of the range
+        private boolean done;
+    }
+    
+    /**
+     * Checkpoint Status Enum
+     */
+    public enum CheckpointStatus {
+        IDLE,
+        RUNNING,
+        PAUSED,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -1,19 +1,25 @@
 package com.geophoto.entity;
 
+import com.geophoto.util.GridCells;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Photo Document
  * Represents a photo with GPS metadata stored in MongoDB
  */
 @Document(collection = "photos")
+@CompoundIndex(name = "user_content_hash", def = "{'userId': 1, 'contentHash': 1}")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -24,18 +30,57 @@ public class Photo {
     
     private String fileName;
     
+    /**
+     * Indexed: renditions look up the orientation of their source by url
+     */
+    @Indexed
     private String url;
     
     private String thumbnailUrl;
     
-    // Note: Geospatial indexing disabled temporarily
-    // @GeoSpatialIndexed requires GeoJSON format or [longitude, latitude] array
+    /**
+     * SHA-256 of the original (lowercase hex), key of the shared Blob
+     * Null for photos uploaded before content-addressed storage
+     */
+    private String contentHash;
+    
+    /**
+     * Generated renditions (rendition name -> image URL), e.g. "marker", "grid", "preview"
+     * Filled in asynchronously by ThumbnailService after upload
+     */
+    private Map<String, String> renditions = new HashMap<>();
+    
+    /**
+     * BlurHash of the image (~30 characters), painted by clients while the thumbnail loads
+     * Set at ingest from the embedded EXIF preview, otherwise by ThumbnailService
+     */
+    private String blurHash;
+    
     private Double latitude;
     
     private Double longitude;
     
+    /**
+     * GeoJSON point [longitude, latitude] for viewport queries
+     * Always written together with latitude/longitude (see setCoordinates / point).
+     * The {userId, location: 2dsphere} index is built by GeoLocationMigrationService once
+     * every existing document has the field.
+     */
+    private GeoJsonPoint location;
+    
+    /**
+     * Web Mercator quadkey of the coordinates (GridCells.MAX_LEVEL digits), grouped by prefix
+     * to cluster markers server-side; written together with location
+     */
+    private String gridCell;
+    
     private LocalDateTime takenAt;
     
+    /**
+     * EXIF orientation of the original (1-8), applied when generating renditions
+     */
+    private Integer orientation;
+    
     private String description;
     
     private LocalDateTime uploadedAt = LocalDateTime.now();
@@ -46,5 +91,27 @@ public class Photo {
      */
     @Indexed
     private String userId;
+    
+    /**
+     * Set latitude, longitude and the derived location and grid cell together
+     * (the derived fields are null unless both coordinates are set)
+     */
+    public void setCoordinates(Double latitude, Double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.location = point(latitude, longitude);
+        this.gridCell = GridCells.cell(latitude, longitude);
+    }
+    
+    /**
+     * Value of the location field for the given coordinates, or null if either is missing or out
+     * of range (a 2dsphere index rejects such points)
+     */
+    public static GeoJsonPoint point(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null
+                || Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            return null;
+        }
+        return new GeoJsonPoint(longitude, latitude);
+    }
 }
-
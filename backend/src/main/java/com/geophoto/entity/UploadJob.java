@@ -0,0 +1,75 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload Job Document
+ * Tracks background processing of an upload accepted with 202 Accepted
+ * Jobs expire automatically 7 days after creation
+ */
+@Document(collection = "upload_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadJob {
+    
+    @Id
+    private String id;
+    
+    /**
+     * User ID who owns this job
+     */
+    @Indexed
+    private String userId;
+    
+    private JobStatus status = JobStatus.QUEUED;
+    
+    /**
+     * Progress in percent (0-100)
+     */
+    private int progress;
+    
+    /**
+     * Original filename of the upload
+     */
+    private String fileName;
+    
+    /**
+     * Stored original (StoredUpload) the job holds a blob reference for until the photo is saved
+     */
+    private String imageFilename;
+    
+    private String contentHash;
+    
+    /**
+     * ID of the created Photo once the job has completed
+     */
+    private String photoId;
+    
+    /**
+     * Failure reason when status is FAILED
+     */
+    private String error;
+    
+    @Indexed(expireAfter = "7d")
+    private LocalDateTime createdAt = LocalDateTime.now();
+    
+    private LocalDateTime updatedAt = LocalDateTime.now();
+    
+    /**
+     * Job Status Enum
+     */
+    public enum JobStatus {
+        QUEUED,
+        PROCESSING,
+        COMPLETED,
+        FAILED
+    }
+}
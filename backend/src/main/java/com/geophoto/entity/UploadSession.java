@@ -0,0 +1,82 @@
+package com.geophoto.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Upload Session Document
+ * State of a resumable chunked upload. Received bytes are written directly as
+ * GridFS chunks (fs.chunks) of the pre-allocated file id; the fs.files entry is
+ * only created on finalize.
+ */
+@Document(collection = "upload_sessions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    
+    @Id
+    private String id;
+    
+    /**
+     * User ID who owns this session
+     */
+    @Indexed
+    private String userId;
+    
+    /**
+     * Original filename sent by the client
+     */
+    private String fileName;
+    
+    private String contentType;
+    
+    /**
+     * Declared total size in bytes
+     */
+    private long totalSize;
+    
+    /**
+     * GridFS chunk size; every PATCH except the last must carry whole chunks
+     */
+    private int chunkSize;
+    
+    /**
+     * Bytes durably stored so far (always a multiple of chunkSize until complete)
+     */
+    private long bytesReceived;
+    
+    /**
+     * GridFS file id (hex ObjectId) the chunks are written under
+     */
+    private String gridFsFileId;
+    
+    private SessionStatus status = SessionStatus.ACTIVE;
+    
+    /**
+     * Photo created on finalize
+     */
+    private String photoId;
+    
+    private LocalDateTime createdAt = LocalDateTime.now();
+    
+    /**
+     * Unfinished sessions and their chunks are removed after this time
+     */
+    @Indexed
+    private LocalDateTime expiresAt;
+    
+    /**
+     * Session Status Enum
+     */
+    public enum SessionStatus {
+        ACTIVE,
+        COMPLETED
+    }
+}
@@ -0,0 +1,20 @@
+package com.geophoto.repository;
+
+import com.geophoto.entity.ImportJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Import Job Repository
+ * MongoDB Repository for ImportJob documents
+ */
+@Repository
+public interface ImportJobRepository extends MongoRepository<ImportJob, String> {
+    
+    /**
+     * Find job by ID and user ID (để kiểm tra quyền sở hữu)
+     */
+    Optional<ImportJob> findByIdAndUserId(String id, String userId);
+}
@@ -0,0 +1,13 @@
+package com.geophoto.repository;
+
+import com.geophoto.entity.JobCheckpoint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Job Checkpoint Repository
+ * MongoDB Repository for JobCheckpoint documents
+ */
+@Repository
+public interface JobCheckpointRepository extends MongoRepository<JobCheckpoint, String> {
+}
@@ -35,9 +35,19 @@ public interface PhotoRepository extends MongoRepository<Photo, String> {
      */
     List<Photo> findByUserIdAndLatitudeIsNotNullAndLongitudeIsNotNull(String userId);
     
+    /**
+     * Find the user's photos with any of the given content hashes (upload pre-check)
+     */
+    List<Photo> findByUserIdAndContentHashIn(String userId, java.util.Collection<String> contentHashes);
+    
     /**
      * Count photos by user ID
      */
     long countByUserId(String userId);
+    
+    /**
+     * Count a user's photos with a map location (valid GPS coordinates)
+     */
+    long countByUserIdAndLocationIsNotNull(String userId);
 }
 
@@ -0,0 +1,20 @@
+package com.geophoto.repository;
+
+import com.geophoto.entity.UploadJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Upload Job Repository
+ * MongoDB Repository for UploadJob documents
+ */
+@Repository
+public interface UploadJobRepository extends MongoRepository<UploadJob, String> {
+    
+    /**
+     * Find job by ID and user ID (để kiểm tra quyền sở hữu)
+     */
+    Optional<UploadJob> findByIdAndUserId(String id, String userId);
+}
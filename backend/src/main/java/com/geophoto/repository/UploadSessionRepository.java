@@ -0,0 +1,28 @@
+package com.geophoto.repository;
+
+import com.geophoto.entity.UploadSession;
+import com.geophoto.entity.UploadSession.SessionStatus;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Upload Session Repository
+ * MongoDB Repository for UploadSession documents
+ */
+@Repository
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String> {
+    
+    /**
+     * Find session by ID and user ID (để kiểm tra quyền sở hữu)
+     */
+    Optional<UploadSession> findByIdAndUserId(String id, String userId);
+    
+    /**
+     * Find sessions past their expiry (for cleanup of abandoned uploads)
+     */
+    List<UploadSession> findByStatusAndExpiresAtBefore(SessionStatus status, LocalDateTime time);
+}
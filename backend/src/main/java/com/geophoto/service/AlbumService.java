@@ -267,6 +267,9 @@ public class AlbumService {
         dto.setFileName(photo.getFileName());
         dto.setUrl(photo.getUrl());
         dto.setThumbnailUrl(photo.getThumbnailUrl());
+        dto.setContentHash(photo.getContentHash());
+        dto.setRenditions(photo.getRenditions());
+        dto.setBlurHash(photo.getBlurHash());
         dto.setLatitude(photo.getLatitude());
         dto.setLongitude(photo.getLongitude());
         dto.setTakenAt(photo.getTakenAt());
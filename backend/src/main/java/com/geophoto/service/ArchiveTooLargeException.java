@@ -0,0 +1,13 @@
+package com.geophoto.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an import archive is larger than app.import.max-archive-size (mapped to 413 Payload Too Large)
+ */
+public class ArchiveTooLargeException extends IOException {
+
+    public ArchiveTooLargeException(long maxBytes) {
+        super("Archive is larger than " + maxBytes + " bytes");
+    }
+}
@@ -0,0 +1,166 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Blob;
+import com.mongodb.client.result.UpdateResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Blob Service
+ * Content-addressed storage of originals with reference counting.
+ * An upload is streamed to GridFS under a temporary name while its SHA-256 is computed,
+ * then either becomes the blob for that hash or, when the blob already exists,
+ * is deleted and the existing GridFS file is referenced instead.
+ * Every reference has its own random public filename (alias), so URLs reveal nothing about the
+ * content and a reference released by one user takes its URL with it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BlobService {
+
+    private static final String FILES_COLLECTION = "fs.files";
+
+    private final MongoTemplate mongoTemplate;
+    private final GridFsTemplate gridFsTemplate;
+    private final RenditionService renditionService;
+
+    /**
+     * Take a reference to the blob with the given hash, using the freshly stored file if it is new.
+     * Dedup is global: identical content uploaded by different users is stored once. Clients never
+     * see it: each reference gets a new random filename, and the pre-upload hash check only reports
+     * the caller's own photos.
+     * Retries until the outcome is definite: the only way to lose both the increment and the insert
+     * is a blob whose last reference is being released right now, which disappears shortly.
+     *
+     * @param sha256 Hash of the stored file
+     * @param storedFileId GridFS id of the freshly stored file (deleted if the blob already exists)
+     * @param extension Extension for the filenames (e.g. ".jpg")
+     * @return Public filename of the new reference (served at /api/photos/image/{filename})
+     */
+    public String claim(String sha256, ObjectId storedFileId, String extension, String contentType) {
+        String filename = sha256 + extension;
+        String alias = newAlias(extension);
+        while (true) {
+            // Same content already stored: reference it and drop our copy (still under its temporary name)
+            Blob existing = mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("id").is(sha256).and("refCount").gt(0)),
+                    new Update().inc("refCount", 1).push("aliases", alias),
+                    FindAndModifyOptions.options().returnNew(true),
+                    Blob.class);
+            if (existing != null) {
+                deleteFile(storedFileId);
+                log.info("Duplicate upload {} reuses existing blob ({} references)", sha256, existing.getRefCount());
+                return alias;
+            }
+
+            // New content: rename first, since once the blob document exists its filename must resolve
+            String temporaryName = rename(storedFileId, filename, sha256);
+            try {
+                Blob blob = new Blob();
+                blob.setId(sha256);
+                blob.setFilename(filename);
+                blob.setGridFsFileId(storedFileId.toHexString());
+                blob.setContentType(contentType);
+                blob.getAliases().add(alias);
+                blob.setRefCount(1);
+                mongoTemplate.insert(blob);
+                return alias;
+            } catch (DuplicateKeyException e) {
+                // Another upload of the same content won, or the last reference is being released:
+                // give the name back so only the blob's own file answers to it, then look again
+                rename(storedFileId, temporaryName, null);
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Take additional references to an existing blob (e.g. several photos sharing one migrated file)
+     *
+     * @param extension Extension for the filenames (e.g. ".jpg")
+     * @return Public filenames of the new references
+     * @throws RuntimeException if the blob no longer exists
+     */
+    public List<String> retain(String sha256, String extension, int count) {
+        List<String> aliases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            aliases.add(newAlias(extension));
+        }
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(sha256).and("refCount").gt(0)),
+                new Update().inc("refCount", count).push("aliases").each(aliases.toArray()),
+                Blob.class);
+        if (result.getMatchedCount() == 0) {
+            throw new RuntimeException("Blob not found: " + sha256);
+        }
+        return aliases;
+    }
+
+    /**
+     * Drop one reference and its public filename (with the renditions made under that name);
+     * the GridFS file is deleted with the last reference
+     *
+     * @param alias Public filename returned by claim or retain
+     */
+    public void release(String sha256, String alias) {
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(sha256).and("aliases").is(alias)),
+                new Update().inc("refCount", -1).pull("aliases", alias),
+                Blob.class);
+        if (result.getMatchedCount() == 0) {
+            log.warn("Released unknown blob reference {} ({})", alias, sha256);
+            return;
+        }
+        renditionService.deleteRenditions(alias);
+        Blob orphan = mongoTemplate.findAndRemove(
+                Query.query(Criteria.where("id").is(sha256).and("refCount").lte(0)), Blob.class);
+        if (orphan != null) {
+            deleteFile(new ObjectId(orphan.getGridFsFileId()));
+            log.info("Deleted blob {} ({})", sha256, orphan.getFilename());
+        }
+    }
+
+    private static String newAlias(String extension) {
+        return UUID.randomUUID() + extension;
+    }
+
+    /**
+     * Rename a GridFS file (and record or clear its hash)
+     *
+     * @return Previous filename
+     */
+    private String rename(ObjectId fileId, String filename, String sha256) {
+        Document update = new Document("$set", new Document("filename", filename));
+        if (sha256 != null) {
+            update.get("$set", Document.class).append("metadata.sha256", sha256);
+        } else {
+            update.append("$unset", new Document("metadata.sha256", ""));
+        }
+        Document previous = mongoTemplate.getCollection(FILES_COLLECTION).findOneAndUpdate(
+                new Document("_id", fileId), update);
+        if (previous == null) {
+            throw new RuntimeException("Stored file not found: " + fileId);
+        }
+        return previous.getString("filename");
+    }
+
+    private void deleteFile(ObjectId fileId) {
+        // By id: a concurrent upload of the same content may hold a file with the same name
+        gridFsTemplate.delete(Query.query(Criteria.where("_id").is(fileId)));
+    }
+}
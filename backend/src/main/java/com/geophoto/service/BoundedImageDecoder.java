@@ -0,0 +1,192 @@
+package com.geophoto.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded Image Decoder
+ * Decodes images for server-side resizing without ever materializing a full-resolution bitmap:
+ * - reads only the source region that ends up in the rendition (square crop)
+ * - uses ImageIO source subsampling so a 50 MP JPEG decodes at roughly 2x the target size
+ * - a JVM-wide semaphore limits the number of decoded pixels held at once;
+ *   concurrent decodes queue for the budget instead of running out of heap
+ *
+ * Metrics: geophoto.decoder.queue.depth, geophoto.decoder.pixels.in-use,
+ * geophoto.decoder.pixels.budget, geophoto.decoder.wait
+ */
+@Component
+@Slf4j
+public class BoundedImageDecoder {
+
+    private final int pixelBudget;
+    private final long acquireTimeoutMs;
+    private final Semaphore pixelPermits;
+    private final Timer waitTimer;
+
+    public BoundedImageDecoder(
+            MeterRegistry meterRegistry,
+            @Value("${app.image.decode.pixel-budget:100000000}") int pixelBudget,
+            @Value("${app.image.decode.acquire-timeout-ms:60000}") long acquireTimeoutMs) {
+        this.pixelBudget = pixelBudget;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.pixelPermits = new Semaphore(pixelBudget, true);
+
+        Gauge.builder("geophoto.decoder.queue.depth", pixelPermits, Semaphore::getQueueLength)
+                .description("Decodes waiting for pixel budget")
+                .register(meterRegistry);
+        Gauge.builder("geophoto.decoder.pixels.in-use", pixelPermits, p -> pixelBudget - p.availablePermits())
+                .description("Decoded pixels currently held")
+                .register(meterRegistry);
+        Gauge.builder("geophoto.decoder.pixels.budget", pixelPermits, p -> pixelBudget)
+                .description("Maximum decoded pixels held at once")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("geophoto.decoder.wait")
+                .description("Time spent waiting for pixel budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decoded image holding its share of the pixel budget until closed.
+     * Callers must close it once they are done with the pixels (try-with-resources).
+     */
+    public final class DecodedImage implements AutoCloseable {
+        private final BufferedImage image;
+        private int permits;
+
+        private DecodedImage(BufferedImage image, int permits) {
+            this.image = image;
+            this.permits = permits;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        @Override
+        public void close() {
+            if (permits > 0) {
+                pixelPermits.release(permits);
+                permits = 0;
+            }
+        }
+    }
+
+    /**
+     * Decode an image sized for a rendition.
+     *
+     * @param in Encoded image (not closed by this method)
+     * @param targetSize Longest edge of the rendition that will be produced
+     * @param squareCrop Read only the centered square of the source
+     * @return Decoded image (at least targetSize where the source allows), or null if no ImageIO reader supports the format
+     */
+    public DecodedImage decode(InputStream in, int targetSize, boolean squareCrop) throws IOException {
+        return decode(in, squareCrop, (regionWidth, regionHeight) ->
+                Math.max(regionWidth, regionHeight) / (double) Math.max(1, targetSize));
+    }
+
+    /**
+     * Decode an image sized for a width x height box.
+     *
+     * @param in Encoded image (not closed by this method)
+     * @param boxWidth Box width, or 0 if only the height is constrained
+     * @param boxHeight Box height, or 0 if only the width is constrained
+     * @param cover true if the rendition fills the box (and is cropped), false if it fits inside it
+     * @return Decoded image (at least the box where the source allows), or null if no ImageIO reader supports the format
+     */
+    public DecodedImage decodeForBox(InputStream in, int boxWidth, int boxHeight, boolean cover) throws IOException {
+        return decode(in, false, (regionWidth, regionHeight) -> {
+            double widthRatio = boxWidth > 0 ? regionWidth / (double) boxWidth : 0;
+            double heightRatio = boxHeight > 0 ? regionHeight / (double) boxHeight : 0;
+            if (widthRatio == 0 || heightRatio == 0) {
+                return Math.max(widthRatio, heightRatio);
+            }
+            return cover ? Math.min(widthRatio, heightRatio) : Math.max(widthRatio, heightRatio);
+        });
+    }
+
+    /**
+     * Source-to-rendition size ratio of the region that will be decoded
+     */
+    @FunctionalInterface
+    private interface DownscaleRatio {
+        double of(int regionWidth, int regionHeight);
+    }
+
+    private DecodedImage decode(InputStream in, boolean squareCrop, DownscaleRatio downscaleRatio) throws IOException {
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                Rectangle region = new Rectangle(0, 0, width, height);
+                if (squareCrop && width != height) {
+                    int side = Math.min(width, height);
+                    region = new Rectangle((width - side) / 2, (height - side) / 2, side, side);
+                }
+
+                // Keep ~2x the target so the final resize can filter instead of relying on point sampling
+                int subsampling = Math.max(1, (int) (downscaleRatio.of(region.width, region.height) / 2));
+                long decodedPixels = (long) ceilDiv(region.width, subsampling) * ceilDiv(region.height, subsampling);
+                // A single image larger than the whole budget takes all of it rather than waiting forever
+                int permits = (int) Math.min(decodedPixels, pixelBudget);
+
+                acquire(permits);
+                try {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(region);
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    BufferedImage image = reader.read(0, param);
+                    log.debug("Decoded {}x{} source as {}x{} (subsampling {})",
+                            width, height, image.getWidth(), image.getHeight(), subsampling);
+                    return new DecodedImage(image, permits);
+                } catch (IOException | RuntimeException e) {
+                    pixelPermits.release(permits);
+                    throw e;
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void acquire(int permits) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!pixelPermits.tryAcquire(permits, acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for decode budget (" + permits + " pixels)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for decode budget", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
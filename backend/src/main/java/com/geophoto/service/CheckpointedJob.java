@@ -0,0 +1,183 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.JobCheckpoint;
+import com.geophoto.entity.JobCheckpoint.CheckpointStatus;
+import com.geophoto.repository.JobCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checkpointed Job
+ * Base class for long-running maintenance jobs (backfills, migrations) that work in batches.
+ * Handles start / pause / reset, runs the batches on a dedicated thread, saves the
+ * JobCheckpoint after every batch and resumes a job that was running when the application stopped.
+ */
+@Slf4j
+public abstract class CheckpointedJob {
+
+    protected final JobCheckpointRepository checkpointRepository;
+    private final String jobName;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean pauseRequested;
+
+    protected CheckpointedJob(String jobName, JobCheckpointRepository checkpointRepository) {
+        this.jobName = jobName;
+        this.checkpointRepository = checkpointRepository;
+    }
+
+    /**
+     * Process the next batch after checkpoint.getLastId(), update the checkpoint counters and lastId
+     *
+     * @return false when there is nothing left to process
+     */
+    protected abstract boolean processNextBatch(JobCheckpoint checkpoint) throws Exception;
+
+    /**
+     * Called on the job thread before the first batch of every run (fresh or resumed)
+     */
+    protected void beforeRun(JobCheckpoint checkpoint) throws Exception {
+    }
+
+    /**
+     * Called once all batches are done, before the job is marked COMPLETED.
+     * Throwing marks the job FAILED instead.
+     */
+    protected void afterCompletion(JobCheckpoint checkpoint) throws Exception {
+    }
+
+    /**
+     * Continue a job that was running when the application stopped
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeAfterRestart() {
+        checkpointRepository.findById(jobName)
+                .filter(checkpoint -> checkpoint.getStatus() == CheckpointStatus.RUNNING)
+                .ifPresent(checkpoint -> {
+                    log.info("Resuming {} after {}", jobName, checkpoint.getLastId());
+                    launch(checkpoint);
+                });
+    }
+
+    /**
+     * Start or resume the job; a completed run starts over from the beginning
+     *
+     * @return Current checkpoint
+     */
+    public synchronized JobCheckpoint start() {
+        JobCheckpoint checkpoint = checkpointRepository.findById(jobName).orElseGet(this::newCheckpoint);
+        if (running.get()) {
+            return checkpoint;
+        }
+        if (checkpoint.getStatus() == CheckpointStatus.COMPLETED) {
+            checkpoint = newCheckpoint();
+        }
+        if (checkpoint.getStartedAt() == null) {
+            checkpoint.setStartedAt(LocalDateTime.now());
+        }
+        checkpoint.setStatus(CheckpointStatus.RUNNING);
+        checkpoint.setError(null);
+        checkpoint.setFinishedAt(null);
+        checkpoint = save(checkpoint);
+        launch(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Stop after the current batch; start() resumes from the checkpoint
+     */
+    public JobCheckpoint pause() {
+        if (running.get()) {
+            pauseRequested = true;
+        }
+        return getStatus();
+    }
+
+    /**
+     * Forget the checkpoint so the next start() begins from scratch
+     *
+     * @throws RuntimeException if the job is running
+     */
+    public synchronized void reset() {
+        if (running.get()) {
+            throw new RuntimeException(jobName + " is running, pause it first");
+        }
+        checkpointRepository.deleteById(jobName);
+    }
+
+    public JobCheckpoint getStatus() {
+        return checkpointRepository.findById(jobName).orElseGet(this::newCheckpoint);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void launch(JobCheckpoint checkpoint) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        pauseRequested = false;
+        Thread thread = new Thread(() -> run(checkpoint), jobName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(JobCheckpoint checkpoint) {
+        try {
+            beforeRun(checkpoint);
+            while (!pauseRequested) {
+                if (!processNextBatch(checkpoint)) {
+                    afterCompletion(checkpoint);
+                    checkpoint.setStatus(CheckpointStatus.COMPLETED);
+                    checkpoint.setFinishedAt(LocalDateTime.now());
+                    save(checkpoint);
+                    log.info("{} completed: {} examined, {} updated, {} failed", jobName,
+                            checkpoint.getProcessed(), checkpoint.getUpdated(), checkpoint.getFailed());
+                    return;
+                }
+                save(checkpoint);
+            }
+            checkpoint.setStatus(CheckpointStatus.PAUSED);
+            save(checkpoint);
+            log.info("{} paused after {}", jobName, checkpoint.getLastId());
+        } catch (Exception e) {
+            log.error("{} failed after {}", jobName, checkpoint.getLastId(), e);
+            checkpoint.setStatus(CheckpointStatus.FAILED);
+            checkpoint.setError(e.getMessage());
+            save(checkpoint);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Sleep so that a batch of {@code items} took at least items / ratePerSecond seconds
+     */
+    protected static void throttle(int items, long batchStartNanos, double ratePerSecond) throws InterruptedException {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        long minimumNanos = (long) (items / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+        long remaining = minimumNanos - (System.nanoTime() - batchStartNanos);
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private JobCheckpoint save(JobCheckpoint checkpoint) {
+        checkpoint.setUpdatedAt(LocalDateTime.now());
+        return checkpointRepository.save(checkpoint);
+    }
+
+    private JobCheckpoint newCheckpoint() {
+        JobCheckpoint checkpoint = new JobCheckpoint();
+        checkpoint.setId(jobName);
+        return checkpoint;
+    }
+}
@@ -0,0 +1,282 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.UploadSessionDTO;
+import com.geophoto.entity.UploadSession;
+import com.geophoto.entity.UploadSession.SessionStatus;
+import com.geophoto.entity.User;
+import com.geophoto.repository.UploadSessionRepository;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.result.UpdateResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Chunked Upload Service
+ * Resumable uploads (init / PATCH at offset / finalize) for files above the multipart limit.
+ * Request bodies are written straight into fs.chunks of a pre-allocated GridFS file id,
+ * one GridFS chunk at a time, so neither memory nor temp files ever hold the whole file.
+ * The fs.files document is inserted on finalize, which makes the file visible to GridFsTemplate.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChunkedUploadService {
+
+    /** Default GridFS bucket used by GridFsTemplate */
+    private static final String FILES_COLLECTION = "fs.files";
+    private static final String CHUNKS_COLLECTION = "fs.chunks";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final PhotoService photoService;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.upload.chunked.max-size:524288000}")
+    private long maxSize;
+
+    @Value("${app.upload.chunked.chunk-size:1048576}")
+    private int chunkSize;
+
+    @Value("${app.upload.chunked.session-ttl-hours:24}")
+    private int sessionTtlHours;
+
+    /**
+     * Start an upload session
+     *
+     * @throws RuntimeException if the size or content type is not accepted
+     */
+    public UploadSessionDTO createSession(String fileName, String contentType, long totalSize, User user) {
+        if (totalSize <= 0) {
+            throw new RuntimeException("File is empty");
+        }
+        if (totalSize > maxSize) {
+            throw new RuntimeException("File exceeds maximum size of " + maxSize + " bytes");
+        }
+        if (contentType == null || !contentType.startsWith("image/")) {
+            throw new RuntimeException("Not an image: " + contentType);
+        }
+
+        UploadSession session = new UploadSession();
+        session.setUserId(user.getId());
+        session.setFileName(fileName);
+        session.setContentType(contentType);
+        session.setTotalSize(totalSize);
+        session.setChunkSize(chunkSize);
+        session.setGridFsFileId(new ObjectId().toHexString());
+        session.setExpiresAt(LocalDateTime.now().plusHours(sessionTtlHours));
+        UploadSession saved = uploadSessionRepository.save(session);
+        log.info("Upload session {} created for {} ({} bytes)", saved.getId(), fileName, totalSize);
+        return convertToDTO(saved);
+    }
+
+    /**
+     * Get session state for the owner
+     *
+     * @throws RuntimeException if the session does not exist or belongs to another user
+     */
+    public UploadSessionDTO getSession(String id, String userId) {
+        return convertToDTO(findSession(id, userId));
+    }
+
+    /**
+     * Append bytes at the given offset.
+     * Only whole GridFS chunks are stored; a trailing partial chunk is dropped unless it ends the file,
+     * and the returned offset tells the client where to resume.
+     *
+     * @param offset Must equal the session's current offset (checked by the caller for a 409 response)
+     * @param body Request body (read up to the end of the file, not closed)
+     * @return Session state with the new offset
+     * @throws RuntimeException on offset mismatch, body larger than the declared size, or a finished session
+     */
+    public UploadSessionDTO appendChunk(String id, String userId, long offset, InputStream body) throws IOException {
+        UploadSession session = findSession(id, userId);
+        if (session.getStatus() != SessionStatus.ACTIVE) {
+            throw new RuntimeException("Upload session is already finalized");
+        }
+        if (offset != session.getBytesReceived()) {
+            throw new RuntimeException("Upload offset mismatch, expected " + session.getBytesReceived());
+        }
+
+        MongoCollection<Document> chunks = mongoTemplate.getCollection(CHUNKS_COLLECTION);
+        ObjectId filesId = new ObjectId(session.getGridFsFileId());
+        int size = session.getChunkSize();
+        long received = session.getBytesReceived();
+        byte[] buffer = new byte[size];
+
+        while (received < session.getTotalSize()) {
+            int expected = (int) Math.min(size, session.getTotalSize() - received);
+            int read = body.readNBytes(buffer, 0, expected);
+            if (read < expected) {
+                // Partial chunk in the middle of the file: the client resends it with the next PATCH
+                break;
+            }
+            int n = (int) (received / size);
+            chunks.replaceOne(
+                    Filters.and(Filters.eq("files_id", filesId), Filters.eq("n", n)),
+                    new Document("files_id", filesId)
+                            .append("n", n)
+                            .append("data", new Binary(read == size ? buffer : Arrays.copyOf(buffer, read))),
+                    new ReplaceOptions().upsert(true));
+
+            // Conditional on the previous offset so concurrent PATCHes cannot both advance it;
+            // an active upload keeps its session alive
+            UpdateResult result = mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("id").is(id).and("bytesReceived").is(received)),
+                    new Update().set("bytesReceived", received + read)
+                            .set("expiresAt", LocalDateTime.now().plusHours(sessionTtlHours)),
+                    UploadSession.class);
+            if (result.getMatchedCount() == 0) {
+                throw new RuntimeException("Upload session was modified concurrently");
+            }
+            received += read;
+        }
+        if (received == session.getTotalSize() && body.read() != -1) {
+            throw new RuntimeException("Upload exceeds declared size of " + session.getTotalSize() + " bytes");
+        }
+
+        session.setBytesReceived(received);
+        return convertToDTO(session);
+    }
+
+    /**
+     * Complete the GridFS file and run the regular metadata extraction / Photo creation.
+     * Idempotent: finalizing a completed session again (e.g. a retry after a lost response)
+     * returns the photo it created.
+     *
+     * @throws RuntimeException if bytes are missing or another finalize of the session is still running
+     */
+    public PhotoDTO finalizeUpload(String id, String userId, String description, Double latitude, Double longitude) {
+        UploadSession session = findSession(id, userId);
+        if (session.getStatus() == SessionStatus.COMPLETED) {
+            return finalizedPhoto(session);
+        }
+        if (session.getBytesReceived() != session.getTotalSize()) {
+            throw new RuntimeException("Upload incomplete: " + session.getBytesReceived()
+                    + " of " + session.getTotalSize() + " bytes received");
+        }
+
+        // Claim the session so a retried finalize cannot create a second photo
+        UpdateResult claimed = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(id).and("status").is(SessionStatus.ACTIVE)),
+                new Update().set("status", SessionStatus.COMPLETED),
+                UploadSession.class);
+        if (claimed.getMatchedCount() == 0) {
+            return finalizedPhoto(findSession(id, userId));
+        }
+
+        ObjectId gridFsFileId = new ObjectId(session.getGridFsFileId());
+        StoredUpload upload = null;
+        try {
+            mongoTemplate.getCollection(FILES_COLLECTION).insertOne(new Document("_id", gridFsFileId)
+                    .append("length", session.getTotalSize())
+                    .append("chunkSize", session.getChunkSize())
+                    .append("uploadDate", new Date())
+                    .append("filename", photoService.newGridFsFilename(session.getFileName()))
+                    .append("metadata", new Document("userId", userId)
+                            .append("_contentType", session.getContentType())));
+            upload = photoService.adoptStoredFile(gridFsFileId, session.getFileName(), session.getContentType(), userId);
+            PhotoDTO photo = photoService.processStoredUpload(upload, description, latitude, longitude);
+            mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)),
+                    new Update().set("photoId", photo.getId()), UploadSession.class);
+            log.info("Upload session {} finalized as photo {}", id, photo.getId());
+            return photo;
+        } catch (Exception e) {
+            log.error("Finalize failed for upload session {}", id, e);
+            if (upload != null) {
+                photoService.discardStoredUpload(upload);
+            } else {
+                deleteGridFsFile(session.getGridFsFileId());
+            }
+            uploadSessionRepository.deleteById(id);
+            throw new RuntimeException("Failed to process upload: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Photo created by a completed session
+     *
+     * @throws RuntimeException if the finalize that completed the session has not saved it yet
+     */
+    private PhotoDTO finalizedPhoto(UploadSession session) {
+        if (session.getPhotoId() == null) {
+            throw new RuntimeException("Upload session is being finalized");
+        }
+        return photoService.getPhotoById(session.getPhotoId());
+    }
+
+    /**
+     * Abort an unfinished upload and delete its chunks
+     */
+    public void abortUpload(String id, String userId) {
+        UploadSession session = findSession(id, userId);
+        if (session.getStatus() == SessionStatus.ACTIVE) {
+            deleteChunks(session.getGridFsFileId());
+        }
+        uploadSessionRepository.deleteById(id);
+        log.info("Upload session {} aborted", id);
+    }
+
+    /**
+     * Remove expired sessions; chunks of unfinished ones are deleted too
+     */
+    @Scheduled(fixedDelayString = "${app.upload.chunked.cleanup-interval-ms:3600000}")
+    public void cleanupExpiredSessions() {
+        LocalDateTime now = LocalDateTime.now();
+        List<UploadSession> expired = uploadSessionRepository.findByStatusAndExpiresAtBefore(SessionStatus.ACTIVE, now);
+        for (UploadSession session : expired) {
+            deleteChunks(session.getGridFsFileId());
+            uploadSessionRepository.delete(session);
+        }
+        List<UploadSession> completed = uploadSessionRepository.findByStatusAndExpiresAtBefore(SessionStatus.COMPLETED, now);
+        uploadSessionRepository.deleteAll(completed);
+        if (!expired.isEmpty()) {
+            log.info("Removed {} abandoned upload sessions", expired.size());
+        }
+    }
+
+    private UploadSession findSession(String id, String userId) {
+        return uploadSessionRepository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new RuntimeException("Upload session not found with id: " + id));
+    }
+
+    private void deleteChunks(String gridFsFileId) {
+        mongoTemplate.getCollection(CHUNKS_COLLECTION).deleteMany(Filters.eq("files_id", new ObjectId(gridFsFileId)));
+    }
+
+    private void deleteGridFsFile(String gridFsFileId) {
+        deleteChunks(gridFsFileId);
+        mongoTemplate.getCollection(FILES_COLLECTION).deleteOne(Filters.eq("_id", new ObjectId(gridFsFileId)));
+    }
+
+    private UploadSessionDTO convertToDTO(UploadSession session) {
+        UploadSessionDTO dto = new UploadSessionDTO();
+        dto.setId(session.getId());
+        dto.setFileName(session.getFileName());
+        dto.setTotalSize(session.getTotalSize());
+        dto.setChunkSize(session.getChunkSize());
+        dto.setOffset(session.getBytesReceived());
+        dto.setStatus(session.getStatus());
+        dto.setPhotoId(session.getPhotoId());
+        dto.setExpiresAt(session.getExpiresAt());
+        return dto;
+    }
+}
@@ -0,0 +1,240 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.JobCheckpoint;
+import com.geophoto.entity.JobCheckpoint.IdRange;
+import com.geophoto.entity.Photo;
+import com.geophoto.repository.JobCheckpointRepository;
+import com.geophoto.util.GridCells;
+import com.mongodb.bulk.BulkWriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Geo Location Migration Service
+ * Online migration of photos stored before the derived geo fields: writes
+ * location = Point(longitude, latitude) and gridCell (GridCells quadkey) for every photo with
+ * valid coordinates that misses either field.
+ * - splits the photos to migrate into app.migration.geo.ranges _id ranges ($bucketAuto, computed
+ *   once per run and kept in the checkpoint), each walked by its own keyset cursor; the ranges are
+ *   computed again when a run starts with every range done, i.e. after the final check failed
+ * - one step migrates the next batch of every unfinished range in parallel on the backfill workers,
+ *   each batch as one unordered bulk write; the job is paced to app.migration.geo.ops-per-second
+ * - updates only match documents that still miss a field, so re-running a batch after a
+ *   crash, or racing a user edit, is harmless
+ * - the {userId, location: 2dsphere} index is built only after the migration, once counts show
+ *   that every photo with valid coordinates has a location; until then viewport queries run
+ *   unindexed ($geoWithin does not need the index) and the application stays online
+ * Start / pause / checkpointing are handled by CheckpointedJob.
+ */
+@Service
+@Slf4j
+public class GeoLocationMigrationService extends CheckpointedJob {
+
+    public static final String JOB_NAME = "geo-location-migration";
+    public static final String LOCATION_INDEX = "user_location";
+
+    private final MongoTemplate mongoTemplate;
+    private final ThreadPoolTaskExecutor backfillExecutor;
+
+    private final int batchSize;
+    private final int rangeCount;
+    private final double opsPerSecond;
+    private final boolean autoStart;
+
+    public GeoLocationMigrationService(
+            MongoTemplate mongoTemplate,
+            JobCheckpointRepository checkpointRepository,
+            @Qualifier("backfillExecutor") ThreadPoolTaskExecutor backfillExecutor,
+            @Value("${app.migration.geo.batch-size:500}") int batchSize,
+            @Value("${app.migration.geo.ranges:4}") int rangeCount,
+            @Value("${app.migration.geo.ops-per-second:1000}") double opsPerSecond,
+            @Value("${app.migration.geo.auto-start:true}") boolean autoStart) {
+        super(JOB_NAME, checkpointRepository);
+        this.mongoTemplate = mongoTemplate;
+        this.backfillExecutor = backfillExecutor;
+        this.batchSize = batchSize;
+        this.rangeCount = Math.max(1, rangeCount);
+        this.opsPerSecond = opsPerSecond;
+        this.autoStart = autoStart;
+    }
+
+    /**
+     * Start the migration if the location index does not exist yet or some photo misses a
+     * derived field; with nothing to migrate the run only verifies the counts and builds the index
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startIfNeeded() {
+        if (!autoStart || (hasLocationIndex() && !mongoTemplate.exists(Query.query(needsMigration()), Photo.class))) {
+            return;
+        }
+        log.info("Photos need geo fields or the location index {}, starting {}", LOCATION_INDEX, JOB_NAME);
+        start();
+    }
+
+    @Override
+    protected void beforeRun(JobCheckpoint checkpoint) {
+        // Resume unfinished ranges; when all are done the last run failed its final check
+        // (documents skipped after a write error, or written meanwhile): walk what is left again
+        if (checkpoint.getRanges().stream().anyMatch(range -> !range.isDone())) {
+            return;
+        }
+        checkpoint.setRanges(computeRanges());
+        log.info("{}: {} _id ranges to migrate", JOB_NAME, checkpoint.getRanges().size());
+    }
+
+    @Override
+    protected boolean processNextBatch(JobCheckpoint checkpoint) throws InterruptedException {
+        List<IdRange> open = checkpoint.getRanges().stream().filter(range -> !range.isDone()).toList();
+        if (open.isEmpty()) {
+            return false;
+        }
+        long batchStart = System.nanoTime();
+        List<CompletableFuture<BatchResult>> results = open.stream()
+                .map(range -> CompletableFuture.supplyAsync(() -> migrateBatch(range), backfillExecutor))
+                .toList();
+
+        int examined = 0;
+        for (CompletableFuture<BatchResult> future : results) {
+            BatchResult result = future.join();
+            examined += result.examined();
+            checkpoint.setProcessed(checkpoint.getProcessed() + result.examined());
+            checkpoint.setUpdated(checkpoint.getUpdated() + result.updated());
+            checkpoint.setFailed(checkpoint.getFailed() + result.failed());
+        }
+        // Ranges are processed in _id order, so the lowest open cursor is a fair progress marker
+        open.stream().filter(range -> range.getLastId() != null).findFirst()
+                .ifPresent(range -> checkpoint.setLastId(range.getLastId()));
+        throttle(examined, batchStart, opsPerSecond);
+        return true;
+    }
+
+    /**
+     * Verify that nothing is left to migrate, then build the location index
+     */
+    @Override
+    protected void afterCompletion(JobCheckpoint checkpoint) {
+        long remaining = mongoTemplate.count(Query.query(needsMigration()), Photo.class);
+        long invalid = mongoTemplate.count(Query.query(new Criteria().orOperator(
+                Criteria.where("latitude").lt(-90), Criteria.where("latitude").gt(90),
+                Criteria.where("longitude").lt(-180), Criteria.where("longitude").gt(180))), Photo.class);
+        long withLocation = mongoTemplate.count(Query.query(Criteria.where("location").exists(true)), Photo.class);
+        log.info("{}: {} photos with a location, {} with out-of-range coordinates (left unmigrated)",
+                JOB_NAME, withLocation, invalid);
+        if (remaining > 0) {
+            throw new RuntimeException(remaining + " photos with coordinates still miss location or gridCell");
+        }
+        createLocationIndex();
+    }
+
+    /**
+     * Photos with valid coordinates but no location or grid cell
+     */
+    private static Criteria needsMigration() {
+        return Criteria.where("latitude").gte(-90).lte(90).and("longitude").gte(-180).lte(180)
+                .orOperator(Criteria.where("location").exists(false), Criteria.where("gridCell").exists(false));
+    }
+
+    /**
+     * Split the photos to migrate into ranges of about the same number of documents.
+     * $bucketAuto bounds are inclusive below and exclusive above, except for the last bucket,
+     * which includes its max; the last range is therefore left open above.
+     */
+    private List<IdRange> computeRanges() {
+        Aggregation aggregation = Aggregation.newAggregation(
+                        Aggregation.match(needsMigration()),
+                        Aggregation.bucketAuto("_id", rangeCount))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+        List<Document> buckets = mongoTemplate.aggregate(aggregation, Photo.class, Document.class).getMappedResults();
+        List<IdRange> ranges = new ArrayList<>(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            Document bounds = buckets.get(i).get("_id", Document.class);
+            String maxId = i < buckets.size() - 1 ? bounds.getObjectId("max").toHexString() : null;
+            ranges.add(new IdRange(bounds.getObjectId("min").toHexString(), maxId, null, false));
+        }
+        return ranges;
+    }
+
+    /**
+     * Migrate the next batch of one range and move its cursor
+     */
+    private BatchResult migrateBatch(IdRange range) {
+        Criteria id = range.getLastId() != null
+                ? Criteria.where("id").gt(new ObjectId(range.getLastId()))
+                : Criteria.where("id").gte(new ObjectId(range.getMinId()));
+        if (range.getMaxId() != null) {
+            id = id.lt(new ObjectId(range.getMaxId()));
+        }
+        Query query = Query.query(id.andOperator(needsMigration()))
+                .with(Sort.by(Sort.Direction.ASC, "id"))
+                .limit(batchSize);
+        query.fields().include("id", "latitude", "longitude");
+        List<Photo> batch = mongoTemplate.find(query, Photo.class);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Photo.class);
+        for (Photo photo : batch) {
+            bulk.updateOne(Query.query(Criteria.where("id").is(photo.getId()).andOperator(needsMigration())),
+                    new Update().set("location", Photo.point(photo.getLatitude(), photo.getLongitude()))
+                            .set("gridCell", GridCells.cell(photo.getLatitude(), photo.getLongitude())));
+        }
+
+        int updated = 0;
+        int failed = 0;
+        if (!batch.isEmpty()) {
+            try {
+                BulkWriteResult result = bulk.execute();
+                updated = result.getModifiedCount();
+            } catch (BulkOperationException e) {
+                log.warn("{}: {} of {} updates failed: {}", JOB_NAME, e.getErrors().size(),
+                        batch.size(), e.getErrors().get(0).getMessage());
+                updated = e.getResult().getModifiedCount();
+                failed += e.getErrors().size();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            range.setLastId(batch.get(batch.size() - 1).getId());
+        }
+        range.setDone(batch.size() < batchSize);
+        return new BatchResult(batch.size(), updated, failed);
+    }
+
+    private boolean hasLocationIndex() {
+        return mongoTemplate.indexOps(Photo.class).getIndexInfo().stream()
+                .anyMatch(index -> LOCATION_INDEX.equals(index.getName()));
+    }
+
+    private void createLocationIndex() {
+        if (hasLocationIndex()) {
+            return;
+        }
+        log.info("Building photo location index {}", LOCATION_INDEX);
+        IndexOperations indexOps = mongoTemplate.indexOps(Photo.class);
+        indexOps.ensureIndex(new CompoundIndexDefinition(new Document("userId", 1).append("location", "2dsphere"))
+                .named(LOCATION_INDEX));
+    }
+
+    private record BatchResult(int examined, int updated, int failed) {
+    }
+}
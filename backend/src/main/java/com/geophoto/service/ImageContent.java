@@ -0,0 +1,38 @@
+package com.geophoto.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Image ready to be written to an HTTP response, from whichever tier holds it
+ * (GridFS, local disk or memory)
+ *
+ * @param filename Name used in Content-Disposition
+ * @param etag Strong validator, unquoted
+ * @param lastModified Epoch milliseconds
+ * @param tier Where the bytes come from (memory, disk, gridfs), for metrics
+ * @param file Local file holding the bytes, or null; lets the writer use zero-copy transfers
+ * @param body Opens the bytes; only called when a body is actually sent
+ */
+public record ImageContent(String filename, String contentType, long length, String etag, long lastModified,
+                           String tier, Path file, Body body) {
+
+    @FunctionalInterface
+    public interface Body {
+        InputStream open() throws IOException;
+    }
+
+    public static ImageContent ofBytes(String filename, String contentType, byte[] bytes, String etag,
+                                       long lastModified, String tier) {
+        return new ImageContent(filename, contentType, bytes.length, etag, lastModified, tier, null,
+                () -> new ByteArrayInputStream(bytes));
+    }
+
+    public static ImageContent ofFile(String filename, String contentType, LocalDiskCache.Entry entry, String etag) {
+        return new ImageContent(filename, contentType, entry.size(), etag, entry.lastModified(), "disk", entry.path(),
+                () -> Files.newInputStream(entry.path()));
+    }
+}
@@ -0,0 +1,429 @@
+package com.geophoto.service;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Image Delivery Service
+ * Writes GridFS images and their renditions (see RenditionService) to HTTP responses
+ * with byte-range support (RFC 7233):
+ * - single range: 206 with Content-Range
+ * - several ranges: 206 multipart/byteranges; ranges are sorted and overlapping or adjacent
+ *   ones are merged so a request cannot make us send the same bytes twice
+ * - no satisfiable range: 416 with Content-Range: bytes * /length
+ * - malformed Range headers, or more than MAX_RANGES ranges, are ignored (200 with the whole file)
+ * Ranges are served from a single stream that skips forward between them; for GridFS
+ * a skip jumps straight to the chunk that holds the next byte, so the chunks before it are never read.
+ *
+ * Caching: stored files never change under a filename (each upload of an original has its own random
+ * name, see OriginalFileResolver; renditions are named by photo id or source and parameters), so
+ * responses carry a strong ETag (the content hash, or the GridFS file id for files without one),
+ * Last-Modified and an immutable one-year Cache-Control. Conditional requests are answered with 304
+ * from the fs.files document alone; for on-demand renditions the ETag is known from the URL, so no
+ * rendering is made. Files can be deleted, though (and only the deleting node evicts its caches), so
+ * nothing is served, not even a 304, for a name that no longer exists: originals are looked up on
+ * every request, renditions check their source with OriginalFileResolver.exists, and a source found
+ * missing has this node's cached copies evicted.
+ * If-Range is honoured so a resumed download never mixes two versions of a file.
+ *
+ * Originals are served from the node-local disk cache when present (LocalDiskCache) using
+ * sendfile / FileChannel.transferTo; a miss is served from GridFS and queues a background fill.
+ *
+ * Offload (app.image.delivery.accel-redirect-prefix set): when the cache directory is shared with
+ * the nginx in front of us, a file on disk is answered with headers only and an X-Accel-Redirect
+ * to an internal nginx location, and nginx sends the bytes (Range included). Only requests that
+ * carry the X-Image-Offload header, which nginx sets on its image location, are offloaded: a
+ * client reaching the backend directly would get an empty body. A miss is streamed from GridFS
+ * and filled in the background like without offload; the next request is offloaded.
+ * Renditions held in memory, and files over the disk cache entry limit, are still streamed here.
+ *
+ * Metrics: geophoto.image.served.bytes{tier=memory|disk|gridfs|generated},
+ * geophoto.image.offloaded{tier} (responses handed to nginx)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageDeliveryService {
+
+    /** Ranges accepted after merging; more than this serves the whole file */
+    private static final int MAX_RANGES = 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String DEFAULT_CONTENT_TYPE = "image/jpeg";
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    /** Tomcat sendfile request attributes (see org.apache.catalina.servlets.DefaultServlet) */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    private static final String X_ACCEL_REDIRECT = "X-Accel-Redirect";
+    /** Request header set by nginx when it can follow an X-Accel-Redirect */
+    private static final String X_IMAGE_OFFLOAD = "X-Image-Offload";
+
+    private final GridFsTemplate gridFsTemplate;
+    private final OriginalFileResolver originalFileResolver;
+    private final RenditionService renditionService;
+    private final LocalDiskCache diskCache;
+    private final MeterRegistry meterRegistry;
+
+    /** Internal nginx location aliased to the disk cache directory (e.g. /_image_cache/); empty disables offload */
+    @Value("${app.image.delivery.accel-redirect-prefix:}")
+    private String accelRedirectPrefix;
+
+    /** Meters per tier, registered on first use */
+    private final Map<String, Counter> servedBytes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> offloaded = new ConcurrentHashMap<>();
+
+    /**
+     * Inclusive byte range of the file
+     */
+    private record ByteRegion(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+
+        String contentRange(long total) {
+            return "bytes " + start + "-" + end + "/" + total;
+        }
+    }
+
+    /**
+     * Serve a GridFS file, or one of its renditions, honouring conditional and Range headers
+     *
+     * @param rendition Requested rendition, or null for the stored file itself
+     * @return false if the file does not exist (nothing is written)
+     */
+    public boolean serve(String filename, RenditionService.RenditionSpec rendition,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (rendition != null && !originalFileResolver.exists(filename)) {
+            // Deleted, possibly on another node: drop what this node still caches for it
+            renditionService.evictCached(filename);
+            return false;
+        }
+        // Revalidation of a rendition: the URL itself proves the content is unchanged, answered
+        // without reading or rendering anything
+        if (rendition != null && request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            if (new ServletWebRequest(request, response).checkNotModified(renditionService.etag(filename, rendition))) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+                return true;
+            }
+        }
+
+        ImageContent content = rendition != null
+                ? renditionService.get(filename, rendition)
+                : gridFsContent(filename);
+        if (content == null) {
+            return false;
+        }
+        write(content, request, response);
+        return true;
+    }
+
+    /**
+     * Stored file from the local disk cache, or from GridFS (queueing a disk cache fill)
+     */
+    private ImageContent gridFsContent(String filename) {
+        GridFSFile file = originalFileResolver.find(filename);
+        if (file == null) {
+            diskCache.remove(filename);
+            return null;
+        }
+        String etag = etag(file);
+        LocalDiskCache.Entry cached = diskCache.get(filename);
+        if (cached != null) {
+            return ImageContent.ofFile(filename, contentType(file), cached, etag);
+        }
+        ImageContent.Body body = () -> gridFsTemplate.getResource(file).getInputStream();
+        diskCache.fillAsync(filename, file.getLength(), file.getUploadDate().getTime(), body);
+        return new ImageContent(filename, contentType(file), file.getLength(), etag,
+                file.getUploadDate().getTime(), "gridfs", null, body);
+    }
+
+    private void write(ImageContent content, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long length = content.length();
+        String contentType = content.contentType();
+        String etag = content.etag();
+        long lastModified = content.lastModified();
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            // 304 (or 412 for a failed If-Match), decided before any chunk is read
+            return;
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + content.filename() + "\"");
+        if (content.file() != null && offloadEnabled(request)) {
+            // nginx applies Range / If-Range itself on the redirected request
+            response.setContentType(contentType);
+            response.setHeader(X_ACCEL_REDIRECT, accelRedirectPrefix + content.file().getFileName());
+            offloaded.computeIfAbsent(content.tier(), tier -> Counter.builder("geophoto.image.offloaded")
+                    .description("Image responses whose body is sent by nginx")
+                    .tag("tier", tier)
+                    .register(meterRegistry))
+                    .increment();
+            return;
+        }
+
+        String rangeHeader = ifRangeMatches(request, etag, lastModified) ? request.getHeader(HttpHeaders.RANGE) : null;
+        List<ByteRegion> regions = requestedRegions(rangeHeader, length);
+        if (regions == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            writeRegions(content, List.of(new ByteRegion(0, length - 1)), request, response, null);
+            return;
+        }
+        if (regions.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setContentLength(0);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (regions.size() == 1) {
+            ByteRegion region = regions.get(0);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, region.contentRange(length));
+            response.setContentLengthLong(region.length());
+            writeRegions(content, regions, request, response, null);
+        } else {
+            String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+            long contentLength = closingDelimiter(boundary).length;
+            for (ByteRegion region : regions) {
+                contentLength += partHeader(boundary, contentType, region, length).length + region.length();
+            }
+            response.setContentLengthLong(contentLength);
+            writeRegions(content, regions, request, response, boundary);
+        }
+    }
+
+    /**
+     * Satisfiable regions of a Range header, sorted and merged
+     *
+     * @return null to serve the whole file (no header, malformed header, too many ranges),
+     *         an empty list if no range is satisfiable
+     */
+    private static List<ByteRegion> requestedRegions(String rangeHeader, long length) {
+        if (rangeHeader == null || rangeHeader.isBlank()) {
+            return null;
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring Range header '{}': {}", rangeHeader, e.getMessage());
+            return null;
+        }
+
+        List<ByteRegion> satisfiable = new ArrayList<>(ranges.size());
+        for (HttpRange range : ranges) {
+            if (length == 0) {
+                break;
+            }
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start < length && start <= end) {
+                satisfiable.add(new ByteRegion(start, end));
+            }
+        }
+        satisfiable.sort(Comparator.comparingLong(ByteRegion::start));
+
+        List<ByteRegion> merged = new ArrayList<>(satisfiable.size());
+        for (ByteRegion region : satisfiable) {
+            ByteRegion last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && region.start() <= last.end() + 1) {
+                merged.set(merged.size() - 1, new ByteRegion(last.start(), Math.max(last.end(), region.end())));
+            } else {
+                merged.add(region);
+            }
+        }
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+
+    /**
+     * Stream the regions (ascending, non-overlapping) from one stream of the content
+     *
+     * @param boundary Multipart boundary, or null to write the single region as the whole body
+     */
+    private void writeRegions(ImageContent content, List<ByteRegion> regions, HttpServletRequest request,
+            HttpServletResponse response, String boundary) throws IOException {
+        if ("HEAD".equals(request.getMethod()) || content.length() == 0) {
+            return;
+        }
+        if (content.file() != null) {
+            writeFileRegions(content, regions, request, response, boundary);
+        } else {
+            OutputStream out = response.getOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = content.body().open()) {
+                long position = 0;
+                for (ByteRegion region : regions) {
+                    if (boundary != null) {
+                        out.write(partHeader(boundary, content.contentType(), region, content.length()));
+                    }
+                    skipFully(in, region.start() - position);
+                    copy(in, out, region.length(), buffer);
+                    position = region.end() + 1;
+                }
+            }
+            if (boundary != null) {
+                out.write(closingDelimiter(boundary));
+            }
+            out.flush();
+        }
+        servedBytes.computeIfAbsent(content.tier(), tier -> Counter.builder("geophoto.image.served.bytes")
+                .description("Image bytes sent in response bodies")
+                .tag("tier", tier)
+                .baseUnit("bytes")
+                .register(meterRegistry))
+                .increment(regions.stream().mapToLong(ByteRegion::length).sum());
+    }
+
+    /**
+     * Zero-copy send of a local file: a single region is handed to the container's sendfile
+     * (Tomcat writes it after the request returns, straight from the page cache); otherwise each
+     * region goes through FileChannel.transferTo, which avoids copying through a heap buffer
+     */
+    private void writeFileRegions(ImageContent content, List<ByteRegion> regions, HttpServletRequest request,
+            HttpServletResponse response, String boundary) throws IOException {
+        if (boundary == null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            ByteRegion region = regions.get(0);
+            request.setAttribute(SENDFILE_FILENAME, content.file().toString());
+            request.setAttribute(SENDFILE_START, region.start());
+            request.setAttribute(SENDFILE_END, region.end() + 1);
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(content.file(), StandardOpenOption.READ)) {
+            for (ByteRegion region : regions) {
+                if (boundary != null) {
+                    out.write(partHeader(boundary, content.contentType(), region, content.length()));
+                }
+                long position = region.start();
+                long remaining = region.length();
+                while (remaining > 0) {
+                    long sent = channel.transferTo(position, remaining, target);
+                    if (sent <= 0) {
+                        throw new EOFException("Image ended before the requested range");
+                    }
+                    position += sent;
+                    remaining -= sent;
+                }
+            }
+        }
+        if (boundary != null) {
+            out.write(closingDelimiter(boundary));
+        }
+        out.flush();
+    }
+
+    private static void skipFully(InputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                throw new EOFException("Image ended before the requested range");
+            }
+            bytes -= skipped;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, long bytes, byte[] buffer) throws IOException {
+        while (bytes > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, bytes));
+            if (read < 0) {
+                throw new EOFException("Image ended before the requested range");
+            }
+            out.write(buffer, 0, read);
+            bytes -= read;
+        }
+    }
+
+    private static byte[] partHeader(String boundary, String contentType, ByteRegion region, long total) {
+        return ("\r\n--" + boundary + "\r\n"
+                + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                + HttpHeaders.CONTENT_RANGE + ": " + region.contentRange(total) + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] closingDelimiter(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * If-Range: the Range header applies only if the validator still matches (strong comparison;
+     * an HTTP-date must equal Last-Modified exactly, RFC 7233 section 3.2), otherwise the whole file is sent
+     */
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals("\"" + etag + "\"");
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return lastModified / 1000 == date / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Strong validator: the content hash (SHA-256) when known, otherwise the GridFS file id
+     */
+    private static String etag(GridFSFile file) {
+        Document metadata = file.getMetadata();
+        String sha256 = metadata != null ? metadata.getString("sha256") : null;
+        if (sha256 != null) {
+            return sha256;
+        }
+        return file.getObjectId().toHexString();
+    }
+
+    private boolean offloadEnabled(HttpServletRequest request) {
+        return accelRedirectPrefix != null && !accelRedirectPrefix.isBlank()
+                && request.getHeader(X_IMAGE_OFFLOAD) != null;
+    }
+
+    /**
+     * Content type recorded when the file was stored (GridFsTemplate keeps it in metadata._contentType)
+     */
+    private static String contentType(GridFSFile file) {
+        Document metadata = file.getMetadata();
+        String contentType = metadata != null ? metadata.getString("_contentType") : null;
+        return contentType != null && contentType.startsWith("image/") ? contentType : DEFAULT_CONTENT_TYPE;
+    }
+}
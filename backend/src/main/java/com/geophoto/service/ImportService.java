@@ -0,0 +1,467 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.ImportJobDTO;
+import com.geophoto.entity.ImportJob;
+import com.geophoto.entity.Photo;
+import com.geophoto.entity.UploadJob.JobStatus;
+import com.geophoto.entity.User;
+import com.geophoto.repository.ImportJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Import Service
+ * Imports a ZIP archive of photos as a stream, without unpacking it:
+ * - the request body is spooled to a temporary file (at most app.import.max-archive-size bytes)
+ *   and the import runs on the import executor, so the request returns as soon as the archive
+ *   has arrived
+ * - entries are read one after another from a ZipInputStream over the spooled archive
+ * - each image entry is streamed straight into GridFS by the same store path as uploadPhoto
+ *   (hashing, dedup, header prefix capture)
+ * - metadata extraction runs on the upload executor while the next entries are being read
+ * - photos are saved with one bulk insert per batch; the job counters are saved every
+ *   app.import.progress-entries entries or app.import.progress-interval-ms, whichever comes
+ *   first, so clients see progress even through long runs of skipped or failed entries
+ */
+@Service
+@Slf4j
+public class ImportService {
+
+    /** Extensions imported from an archive; everything else is counted as skipped */
+    private static final Map<String, String> IMAGE_TYPES = Map.of(
+            "jpg", "image/jpeg",
+            "jpeg", "image/jpeg",
+            "png", "image/png",
+            "gif", "image/gif",
+            "webp", "image/webp",
+            "heic", "image/heic",
+            "heif", "image/heif");
+
+    /** Failures kept on the job; later ones are only counted */
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private final ImportJobRepository importJobRepository;
+    private final PhotoService photoService;
+    private final MongoTemplate mongoTemplate;
+    private final ThreadPoolTaskExecutor importExecutor;
+
+    private final int batchSize;
+    private final int maxEntries;
+    private final long maxEntrySize;
+    private final long maxArchiveSize;
+    private final int progressEntries;
+    private final long progressIntervalNanos;
+
+    public ImportService(
+            ImportJobRepository importJobRepository,
+            PhotoService photoService,
+            MongoTemplate mongoTemplate,
+            @Qualifier("importExecutor") ThreadPoolTaskExecutor importExecutor,
+            @Value("${app.import.batch-size:50}") int batchSize,
+            @Value("${app.import.max-entries:10000}") int maxEntries,
+            @Value("${app.import.max-entry-size:104857600}") long maxEntrySize,
+            @Value("${app.import.max-archive-size:2147483648}") long maxArchiveSize,
+            @Value("${app.import.progress-entries:100}") int progressEntries,
+            @Value("${app.import.progress-interval-ms:2000}") long progressIntervalMs) {
+        this.importJobRepository = importJobRepository;
+        this.photoService = photoService;
+        this.mongoTemplate = mongoTemplate;
+        this.importExecutor = importExecutor;
+        this.batchSize = batchSize;
+        this.maxEntries = maxEntries;
+        this.maxEntrySize = maxEntrySize;
+        this.maxArchiveSize = maxArchiveSize;
+        this.progressEntries = Math.max(1, progressEntries);
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMs);
+    }
+
+    /**
+     * Spooled archives do not survive a restart: fail the imports that were running
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedImports() {
+        long interrupted = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("status").is(JobStatus.PROCESSING)),
+                new Update().set("status", JobStatus.FAILED)
+                        .set("error", "Import was interrupted by a server restart")
+                        .set("updatedAt", LocalDateTime.now()),
+                ImportJob.class).getModifiedCount();
+        if (interrupted > 0) {
+            log.warn("Marked {} interrupted import jobs as failed", interrupted);
+        }
+    }
+
+    /**
+     * Stored entry whose Photo is being prepared on the upload executor
+     */
+    private record PendingEntry(String entryName, StoredUpload upload, CompletableFuture<Photo> photo) {
+    }
+
+    /**
+     * Create an import job; the archive is sent separately to importArchive
+     */
+    public ImportJobDTO createJob(String fileName, User user) {
+        ImportJob job = new ImportJob();
+        job.setUserId(user.getId());
+        job.setFileName(fileName);
+        return convertToDTO(importJobRepository.save(job));
+    }
+
+    /**
+     * Get job status for the owner
+     *
+     * @throws RuntimeException if the job does not exist or belongs to another user
+     */
+    public ImportJobDTO getJob(String id, String userId) {
+        return convertToDTO(findJob(id, userId));
+    }
+
+    /**
+     * Spool the archive to a temporary file and queue its import.
+     * Returns once the archive has been received; progress is visible through getJob.
+     *
+     * @param in ZIP archive stream (not closed)
+     * @return Job state (PROCESSING)
+     * @throws ArchiveTooLargeException if the archive exceeds app.import.max-archive-size; the job is marked FAILED
+     * @throws IOException if the archive cannot be received; the job is marked FAILED
+     * @throws UploadRejectedException if the import queue is full; the job can receive the archive again
+     * @throws RuntimeException if the job does not exist, belongs to another user or has already received an archive
+     */
+    public ImportJobDTO importArchive(String id, String userId, InputStream in) throws IOException {
+        ImportJob job = findJob(id, userId);
+        ImportJob claimed = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("id").is(job.getId()).and("status").is(JobStatus.QUEUED)),
+                new Update().set("status", JobStatus.PROCESSING).set("updatedAt", LocalDateTime.now()),
+                ImportJob.class);
+        if (claimed == null) {
+            throw new RuntimeException("Import job " + id + " has already received an archive");
+        }
+
+        Path archive = null;
+        try {
+            archive = Files.createTempFile("import-" + id + "-", ".zip");
+            long size = spool(in, archive);
+            log.info("Import job {} received archive: {} ({} bytes)", id, job.getFileName(), size);
+            Path spooled = archive;
+            importExecutor.execute(() -> runImport(id, userId, job.getFileName(), spooled));
+        } catch (IOException e) {
+            deleteArchive(archive);
+            Progress progress = new Progress();
+            progress.status = JobStatus.FAILED;
+            progress.error = "Could not receive archive: " + e.getMessage();
+            saveProgress(id, progress);
+            throw e;
+        } catch (TaskRejectedException e) {
+            deleteArchive(archive);
+            mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)),
+                    new Update().set("status", JobStatus.QUEUED).set("updatedAt", LocalDateTime.now()),
+                    ImportJob.class);
+            throw new UploadRejectedException("Import queue is full", 30);
+        }
+        return getJob(id, userId);
+    }
+
+    /**
+     * Copy the request body to the temporary file, stopping as soon as it exceeds the size limit
+     *
+     * @return Number of bytes written
+     */
+    private long spool(InputStream in, Path archive) throws IOException {
+        try (OutputStream out = Files.newOutputStream(archive)) {
+            byte[] buffer = new byte[64 * 1024];
+            long written = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                written += n;
+                if (written > maxArchiveSize) {
+                    throw new ArchiveTooLargeException(maxArchiveSize);
+                }
+                out.write(buffer, 0, n);
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Import the image entries of a spooled archive (runs on the import executor), then delete it
+     */
+    private void runImport(String id, String userId, String archiveName, Path archive) {
+        log.info("Import job {} started for archive: {}", id, archiveName);
+        Progress progress = new Progress();
+        List<PendingEntry> pending = new ArrayList<>(batchSize);
+        long lastSave = System.nanoTime();
+        int entriesAtLastSave = 0;
+        try (InputStream in = Files.newInputStream(archive)) {
+            ZipInputStream zip = new ZipInputStream(in);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (progress.entries - entriesAtLastSave >= progressEntries
+                        || System.nanoTime() - lastSave >= progressIntervalNanos) {
+                    saveProgress(id, progress);
+                    lastSave = System.nanoTime();
+                    entriesAtLastSave = progress.entries;
+                }
+                if (progress.entries >= maxEntries) {
+                    throw new IllegalStateException("Archive has more than " + maxEntries + " entries");
+                }
+                progress.entries++;
+                String fileName = fileName(entry);
+                String contentType = fileName == null ? null : contentType(fileName);
+                if (contentType == null) {
+                    progress.skipped++;
+                    continue;
+                }
+                StoredUpload upload;
+                try {
+                    upload = photoService.storeOriginal(
+                            new EntryInputStream(zip, maxEntrySize), fileName, contentType, userId);
+                } catch (Exception e) {
+                    if (causedBy(e, ZipException.class)) {
+                        throw e;
+                    }
+                    // The rest of the entry is skipped by the next getNextEntry()
+                    log.warn("Import: failed to store entry {}: {}", entry.getName(), e.getMessage());
+                    progress.fail(entry.getName(), causedBy(e, EntryTooLargeException.class)
+                            ? "Entry is larger than " + maxEntrySize + " bytes" : e.getMessage());
+                    continue;
+                }
+                pending.add(new PendingEntry(entry.getName(), upload, photoService.prepareAsync(upload)));
+                if (pending.size() >= batchSize) {
+                    flush(pending, progress);
+                }
+            }
+            flush(pending, progress);
+            progress.status = JobStatus.COMPLETED;
+            log.info("Import job {} completed: {} entries, {} imported, {} skipped, {} failed",
+                    id, progress.entries, progress.imported, progress.skipped, progress.failed);
+        } catch (Exception e) {
+            // Corrupt or truncated archive, entry limit, storage failure: keep what was imported so far
+            log.error("Import job {} failed after {} entries", id, progress.entries, e);
+            try {
+                flush(pending, progress);
+            } catch (RuntimeException flushError) {
+                log.error("Import job {}: could not save the last batch", id, flushError);
+            }
+            progress.status = JobStatus.FAILED;
+            progress.error = e instanceof ZipException ? "Corrupt archive: " + e.getMessage() : e.getMessage();
+        } finally {
+            deleteArchive(archive);
+        }
+        saveProgress(id, progress);
+    }
+
+    private static void deleteArchive(Path archive) {
+        if (archive == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(archive);
+        } catch (IOException e) {
+            log.warn("Could not delete spooled archive {}: {}", archive, e.getMessage());
+        }
+    }
+
+    /**
+     * Wait for the prepared photos of the batch and save them with one bulk insert
+     */
+    private void flush(List<PendingEntry> pending, Progress progress) {
+        List<Photo> photos = new ArrayList<>(pending.size());
+        List<PendingEntry> prepared = new ArrayList<>(pending.size());
+        for (PendingEntry entry : pending) {
+            try {
+                photos.add(entry.photo().join());
+                prepared.add(entry);
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Import: failed to process entry {}", entry.entryName(), cause);
+                photoService.discardStoredUpload(entry.upload());
+                progress.fail(entry.entryName(), cause.getMessage());
+            }
+        }
+        pending.clear();
+        if (photos.isEmpty()) {
+            return;
+        }
+        Map<Integer, String> failed = photoService.insertPrepared(photos);
+        for (int i = 0; i < prepared.size(); i++) {
+            PendingEntry entry = prepared.get(i);
+            if (failed.containsKey(i)) {
+                photoService.discardStoredUpload(entry.upload());
+                progress.fail(entry.entryName(), "Failed to save photo: " + failed.get(i));
+            } else {
+                progress.imported++;
+            }
+        }
+    }
+
+    private void saveProgress(String id, Progress progress) {
+        Update update = new Update()
+                .set("entriesProcessed", progress.entries)
+                .set("imported", progress.imported)
+                .set("skipped", progress.skipped)
+                .set("failed", progress.failed)
+                .set("errors", progress.errors)
+                .set("updatedAt", LocalDateTime.now());
+        if (progress.status != null) {
+            update.set("status", progress.status).set("error", progress.error);
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(id)), update, ImportJob.class);
+    }
+
+    private ImportJob findJob(String id, String userId) {
+        return importJobRepository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new RuntimeException("Import job not found with id: " + id));
+    }
+
+    private static boolean causedBy(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Last path segment of an importable entry, or null for directories and OS metadata files
+     */
+    private static String fileName(ZipEntry entry) {
+        if (entry.isDirectory()) {
+            return null;
+        }
+        String name = entry.getName().replace('\\', '/');
+        if (name.startsWith("__MACOSX/")) {
+            return null;
+        }
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        if (fileName.isEmpty() || fileName.startsWith(".")) {
+            return null;
+        }
+        return fileName;
+    }
+
+    private static String contentType(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        return IMAGE_TYPES.get(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private ImportJobDTO convertToDTO(ImportJob job) {
+        ImportJobDTO dto = new ImportJobDTO();
+        dto.setId(job.getId());
+        dto.setStatus(job.getStatus());
+        dto.setFileName(job.getFileName());
+        dto.setEntriesProcessed(job.getEntriesProcessed());
+        dto.setImported(job.getImported());
+        dto.setSkipped(job.getSkipped());
+        dto.setFailed(job.getFailed());
+        dto.setErrors(job.getErrors());
+        dto.setError(job.getError());
+        dto.setCreatedAt(job.getCreatedAt());
+        dto.setUpdatedAt(job.getUpdatedAt());
+        return dto;
+    }
+
+    /**
+     * Counters of a running import (only touched by its import thread)
+     */
+    private static class Progress {
+        int entries;
+        int imported;
+        int skipped;
+        int failed;
+        final List<String> errors = new ArrayList<>();
+        JobStatus status;
+        String error;
+
+        void fail(String entryName, String reason) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(entryName + ": " + reason);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a single entry inflates past app.import.max-entry-size
+     */
+    private static class EntryTooLargeException extends IOException {
+        EntryTooLargeException(long maxBytes) {
+            super("Entry is larger than " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * View of the current ZIP entry: close() does not close the archive stream,
+     * and inflating past the size limit fails the entry (zip bombs)
+     */
+    private static class EntryInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long bytesRead;
+
+        EntryInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // the archive stream stays open for the next entry
+        }
+
+        private void count(int n) throws EntryTooLargeException {
+            bytesRead += n;
+            if (bytesRead > maxBytes) {
+                throw new EntryTooLargeException(maxBytes);
+            }
+        }
+    }
+}
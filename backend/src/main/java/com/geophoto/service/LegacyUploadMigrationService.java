@@ -0,0 +1,330 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.JobCheckpoint;
+import com.geophoto.entity.Photo;
+import com.geophoto.repository.JobCheckpointRepository;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Legacy Upload Migration Service
+ * Moves originals that still live in the upload directory (served from /uploads/**) into GridFS:
+ * - walks the directory in file name order, in batches, checkpointing the last file name
+ * - streams each referenced file into content-addressed GridFS storage, several files at a time
+ *   on the backfill executor
+ * - verifies the copy: the GridFS file is read back and its SHA-256 and length must match the
+ *   digest computed while streaming from disk
+ * - rewrites Photo.url / thumbnailUrl for the whole batch with one bulk write, then settles the
+ *   blob references against the photos that were actually rewritten (a failed write or a photo
+ *   deleted meanwhile gives its reference back)
+ * - files that fail are kept in the checkpoint and retried once the walk reaches the end, so a
+ *   resumed run does not need a reset to pick them up again
+ * Files are left on disk; once the job has completed, app.upload.legacy-static.enabled=false
+ * turns off the /uploads/** handler.
+ */
+@Service
+@Slf4j
+public class LegacyUploadMigrationService extends CheckpointedJob {
+
+    public static final String JOB_NAME = "legacy-upload-migration";
+    private static final String LEGACY_URL_PREFIX = "/uploads/";
+
+    private final MongoTemplate mongoTemplate;
+    private final GridFsTemplate gridFsTemplate;
+    private final PhotoService photoService;
+    private final BlobService blobService;
+    private final OriginalFileResolver originalFileResolver;
+    private final ThreadPoolTaskExecutor backfillExecutor;
+
+    private final Path uploadDir;
+    private final int batchSize;
+    private final double ratePerSecond;
+
+    /** Sorted file names of the upload directory, listed once per run */
+    private List<String> pendingFiles = List.of();
+
+    /** Failed files still to retry in this run, taken from the checkpoint once the walk is done */
+    private Deque<String> retryFiles;
+
+    public LegacyUploadMigrationService(
+            MongoTemplate mongoTemplate,
+            GridFsTemplate gridFsTemplate,
+            JobCheckpointRepository checkpointRepository,
+            PhotoService photoService,
+            BlobService blobService,
+            OriginalFileResolver originalFileResolver,
+            @Qualifier("backfillExecutor") ThreadPoolTaskExecutor backfillExecutor,
+            @Value("${app.upload.dir}") String uploadDir,
+            @Value("${app.migration.batch-size:50}") int batchSize,
+            @Value("${app.migration.rate-per-second:20}") double ratePerSecond) {
+        super(JOB_NAME, checkpointRepository);
+        this.mongoTemplate = mongoTemplate;
+        this.gridFsTemplate = gridFsTemplate;
+        this.photoService = photoService;
+        this.blobService = blobService;
+        this.originalFileResolver = originalFileResolver;
+        this.backfillExecutor = backfillExecutor;
+        this.uploadDir = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.batchSize = batchSize;
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    /**
+     * Outcome of migrating one file
+     *
+     * @param newUrls Photo id -> its GridFS URL (one blob reference each) for every photo whose url
+     *                pointed at the file; empty if the file was skipped or failed
+     */
+    private record MigratedFile(String filename, Map<String, String> newUrls, String contentHash, boolean failed) {
+        static MigratedFile skipped(String filename) {
+            return new MigratedFile(filename, Map.of(), null, false);
+        }
+
+        static MigratedFile failed(String filename) {
+            return new MigratedFile(filename, Map.of(), null, true);
+        }
+    }
+
+    @Override
+    protected void beforeRun(JobCheckpoint checkpoint) throws IOException {
+        retryFiles = null;
+        if (!Files.isDirectory(uploadDir)) {
+            pendingFiles = List.of();
+            return;
+        }
+        try (Stream<Path> files = Files.list(uploadDir)) {
+            pendingFiles = files.filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .sorted()
+                    .toList();
+        }
+        log.info("Legacy migration: {} files in {}", pendingFiles.size(), uploadDir);
+    }
+
+    @Override
+    protected boolean processNextBatch(JobCheckpoint checkpoint) throws InterruptedException {
+        List<String> batch = nextBatch(checkpoint.getLastId());
+        boolean retry = batch.isEmpty();
+        if (retry) {
+            if (retryFiles == null) {
+                retryFiles = new ArrayDeque<>(checkpoint.getFailedKeys());
+            }
+            batch = new ArrayList<>();
+            while (batch.size() < batchSize && !retryFiles.isEmpty()) {
+                batch.add(retryFiles.poll());
+            }
+            if (batch.isEmpty()) {
+                return false;
+            }
+            log.info("Legacy migration: retrying {} failed files", batch.size());
+        }
+        long batchStart = System.nanoTime();
+
+        List<CompletableFuture<MigratedFile>> futures = batch.stream()
+                .map(filename -> CompletableFuture.supplyAsync(() -> migrate(filename), backfillExecutor))
+                .toList();
+        List<MigratedFile> results = new ArrayList<>(batch.size());
+        for (CompletableFuture<MigratedFile> future : futures) {
+            results.add(future.join());
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Photo.class);
+        int migrated = 0;
+        int failed = 0;
+        int recovered = 0;
+        for (MigratedFile result : results) {
+            if (result.failed()) {
+                if (!checkpoint.getFailedKeys().contains(result.filename())) {
+                    checkpoint.getFailedKeys().add(result.filename());
+                    failed++;
+                }
+                continue;
+            }
+            if (checkpoint.getFailedKeys().remove(result.filename())) {
+                recovered++;
+            }
+            if (result.newUrls().isEmpty()) {
+                continue;
+            }
+            String legacyUrl = LEGACY_URL_PREFIX + result.filename();
+            result.newUrls().forEach((photoId, newUrl) -> {
+                bulk.updateOne(Query.query(Criteria.where("id").is(photoId).and("url").is(legacyUrl)),
+                        new Update().set("url", newUrl).set("contentHash", result.contentHash()));
+                bulk.updateOne(Query.query(Criteria.where("id").is(photoId).and("thumbnailUrl").is(legacyUrl)),
+                        new Update().set("thumbnailUrl", newUrl));
+            });
+            bulk.updateMulti(Query.query(Criteria.where("thumbnailUrl").is(legacyUrl)),
+                    new Update().set("thumbnailUrl", result.newUrls().values().iterator().next()));
+            migrated++;
+        }
+        if (migrated > 0) {
+            try {
+                bulk.execute();
+            } catch (RuntimeException e) {
+                log.error("Legacy migration: rewriting photo urls failed for a batch of {} files", migrated, e);
+            } finally {
+                results.stream().filter(result -> !result.newUrls().isEmpty()).forEach(this::settleReferences);
+            }
+        }
+
+        if (!retry) {
+            checkpoint.setProcessed(checkpoint.getProcessed() + batch.size());
+            checkpoint.setLastId(batch.get(batch.size() - 1));
+        }
+        checkpoint.setUpdated(checkpoint.getUpdated() + migrated);
+        checkpoint.setFailed(checkpoint.getFailed() + failed - recovered);
+        throttle(batch.size(), batchStart, ratePerSecond);
+        return true;
+    }
+
+    /**
+     * The blob was referenced once per photo found before the copy; give back the references of
+     * photos whose url was not rewritten (bulk write failed, or the photo was deleted meanwhile)
+     */
+    private void settleReferences(MigratedFile result) {
+        Query query = Query.query(Criteria.where("url").in(result.newUrls().values()));
+        query.fields().include("url");
+        Set<String> rewritten = mongoTemplate.find(query, Photo.class).stream()
+                .map(Photo::getUrl)
+                .collect(Collectors.toSet());
+        for (String newUrl : result.newUrls().values()) {
+            if (!rewritten.contains(newUrl)) {
+                blobService.release(result.contentHash(), ThumbnailService.filenameFromUrl(newUrl));
+            }
+        }
+        if (rewritten.size() < result.newUrls().size()) {
+            log.warn("Legacy migration: {} of {} photos of {} were not rewritten, released their blob references",
+                    result.newUrls().size() - rewritten.size(), result.newUrls().size(), result.filename());
+        }
+    }
+
+    private List<String> nextBatch(String lastFilename) {
+        return pendingFiles.stream()
+                .filter(name -> lastFilename == null || name.compareTo(lastFilename) > 0)
+                .limit(batchSize)
+                .toList();
+    }
+
+    /**
+     * Copy one file into GridFS and verify it (runs on the backfill executor)
+     */
+    private MigratedFile migrate(String filename) {
+        String legacyUrl = LEGACY_URL_PREFIX + filename;
+        Query query = Query.query(Criteria.where("url").is(legacyUrl));
+        query.fields().include("id", "userId");
+        List<Photo> photos = mongoTemplate.find(query, Photo.class);
+        if (photos.isEmpty()) {
+            // Not referenced (or already migrated by an interrupted run)
+            return MigratedFile.skipped(filename);
+        }
+
+        Path path = uploadDir.resolve(filename);
+        StoredUpload upload = null;
+        try {
+            long size = Files.size(path);
+            try (InputStream in = Files.newInputStream(path)) {
+                upload = photoService.storeOriginal(in, filename, contentType(path), owner(photos));
+            }
+            verify(upload, size);
+            // One reference, and so one URL, per photo
+            List<String> filenames = new ArrayList<>(List.of(upload.filename()));
+            if (photos.size() > 1) {
+                filenames.addAll(blobService.retain(upload.contentHash(), extension(upload.filename()), photos.size() - 1));
+            }
+            Map<String, String> newUrls = new LinkedHashMap<>();
+            for (int i = 0; i < photos.size(); i++) {
+                newUrls.put(photos.get(i).getId(), ThumbnailService.IMAGE_URL_PREFIX + filenames.get(i));
+            }
+            return new MigratedFile(filename, newUrls, upload.contentHash(), false);
+        } catch (Exception e) {
+            log.error("Legacy migration failed for {}", path, e);
+            if (upload != null) {
+                photoService.discardStoredUpload(upload);
+            }
+            return MigratedFile.failed(filename);
+        }
+    }
+
+    /**
+     * Read the stored blob back and compare it with the digest taken while streaming from disk
+     */
+    private void verify(StoredUpload upload, long expectedSize) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        long size;
+        GridFSFile stored = originalFileResolver.find(upload.filename());
+        if (stored == null) {
+            throw new IOException("Stored file not found: " + upload.filename());
+        }
+        try (InputStream in = new DigestInputStream(gridFsTemplate.getResource(stored).getInputStream(), digest)) {
+            size = in.transferTo(OutputStream.nullOutputStream());
+        }
+        String storedHash = HexFormat.of().formatHex(digest.digest());
+        if (size != expectedSize || !storedHash.equals(upload.contentHash())) {
+            throw new IOException("Checksum mismatch for " + upload.originalFilename()
+                    + ": disk " + upload.contentHash() + " (" + expectedSize + " bytes), GridFS "
+                    + storedHash + " (" + size + " bytes)");
+        }
+    }
+
+    /**
+     * Uploader recorded on the GridFS file: the user owning every photo of the file, or null if
+     * photos of several users share it
+     */
+    private static String owner(List<Photo> photos) {
+        String userId = photos.get(0).getUserId();
+        return photos.stream().allMatch(photo -> userId != null && userId.equals(photo.getUserId())) ? userId : null;
+    }
+
+    private static String extension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot);
+    }
+
+    private static String contentType(Path path) {
+        try {
+            String type = Files.probeContentType(path);
+            if (type != null) {
+                return type;
+            }
+        } catch (IOException e) {
+            // fall through
+        }
+        return "image/jpeg";
+    }
+}
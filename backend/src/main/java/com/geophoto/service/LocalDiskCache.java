@@ -0,0 +1,400 @@
+package com.geophoto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local Disk Cache
+ * Node-local, size-bounded LRU cache of image files (GridFS originals and renditions):
+ * - fills are atomic: bytes go to a temporary file in the cache directory that is then renamed
+ *   into place, so a reader never sees a partial file
+ * - originals are copied from GridFS in the background (cacheFillExecutor) after a miss, one fill
+ *   per key at a time; the request that missed is served from GridFS as before
+ * - the least recently used files are deleted once the total size exceeds app.image.cache.disk-max-bytes
+ * - the index is rebuilt from the directory on startup (oldest modification first) and trimmed to
+ *   the size limit, so a lowered limit takes effect immediately
+ * Entries are immutable: a key is written once and only removed by eviction or remove().
+ * A removed file stays on disk for app.image.cache.disk-delete-delay-ms before it is deleted:
+ * callers use the path after the lookup returns (Tomcat sendfile and nginx open it once the
+ * response is handed over), and an open file survives the delete, so only that window matters.
+ * Hits are served with zero-copy file transfers by ImageDeliveryService, or by nginx
+ * (X-Accel-Redirect) when the directory is shared with it.
+ *
+ * Metrics: geophoto.image.cache.requests{tier=disk,result=hit|miss}, geophoto.image.cache.evictions{tier=disk},
+ * geophoto.image.cache.size{tier=disk} (bytes), geophoto.image.cache.entries{tier=disk}
+ */
+@Component
+@Slf4j
+public class LocalDiskCache {
+
+    private static final String TIER = "disk";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Temporary files are created owner-only; entries must be readable by nginx (X-Accel-Redirect) */
+    private static final Set<PosixFilePermission> ENTRY_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+    private static final Pattern SAFE_NAME = Pattern.compile("^[A-Za-z0-9_-][A-Za-z0-9._-]{0,199}$");
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long deleteDelayMs;
+    private final ThreadPoolTaskExecutor cacheFillExecutor;
+
+    /** File name -> entry, in access order */
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    /** Files dropped from the index and not deleted yet (guarded by this) */
+    private final Map<String, PendingDelete> pendingDeletes = new HashMap<>();
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    /**
+     * Cached file
+     *
+     * @param lastModified Epoch milliseconds (upload date of the GridFS source for originals)
+     */
+    public record Entry(Path path, long size, long lastModified) {
+    }
+
+    private record PendingDelete(Path path, long deleteAfter) {
+    }
+
+    public LocalDiskCache(
+            MeterRegistry meterRegistry,
+            @Qualifier("cacheFillExecutor") ThreadPoolTaskExecutor cacheFillExecutor,
+            @Value("${app.image.cache.disk-dir:cache}") String directory,
+            @Value("${app.image.cache.disk-max-bytes:2147483648}") long maxBytes,
+            @Value("${app.image.cache.disk-max-entry-bytes:67108864}") long maxEntryBytes,
+            @Value("${app.image.cache.disk-delete-delay-ms:60000}") long deleteDelayMs) throws IOException {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.deleteDelayMs = deleteDelayMs;
+        this.cacheFillExecutor = cacheFillExecutor;
+        Files.createDirectories(this.directory);
+        loadIndex();
+
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.evictions = Counter.builder("geophoto.image.cache.evictions")
+                .description("Entries evicted from an image cache")
+                .tag("tier", TIER)
+                .register(meterRegistry);
+        Gauge.builder("geophoto.image.cache.size", this, LocalDiskCache::totalBytes)
+                .description("Bytes held by an image cache")
+                .tag("tier", TIER)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("geophoto.image.cache.entries", this, LocalDiskCache::entryCount)
+                .description("Entries held by an image cache")
+                .tag("tier", TIER)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Look up a key and mark it as recently used
+     *
+     * @return Entry, or null on a miss
+     */
+    public Entry get(String key) {
+        String name = fileName(key);
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(name);
+        }
+        (entry != null ? hits : misses).increment();
+        return entry;
+    }
+
+    /**
+     * Look up a key without counting a hit or miss (re-check after a counted lookup)
+     */
+    public synchronized Entry peek(String key) {
+        return index.get(fileName(key));
+    }
+
+    /**
+     * Store bytes under a key (atomic fill); an existing entry is kept as is
+     */
+    public Entry put(String key, byte[] data) throws IOException {
+        String name = fileName(key);
+        synchronized (this) {
+            Entry existing = index.get(name);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        Path temp = Files.createTempFile(directory, name + ".", TEMP_SUFFIX);
+        try {
+            Files.write(temp, data);
+            return commit(name, temp, data.length, System.currentTimeMillis());
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Copy a file into the cache in the background, unless it is too large, already cached or
+     * already being copied. Never throws: when the fill queue is full the fill is skipped.
+     *
+     * @param size Expected size in bytes; a copy of a different size is discarded
+     * @param lastModified Modification time recorded for the entry
+     * @param source Opens the file to copy (on the fill thread)
+     */
+    public void fillAsync(String key, long size, long lastModified, ImageContent.Body source) {
+        String name = fileName(key);
+        if (size > maxEntryBytes || contains(name) || !filling.add(name)) {
+            return;
+        }
+        try {
+            cacheFillExecutor.execute(() -> {
+                try {
+                    copyIn(name, size, lastModified, source);
+                } finally {
+                    filling.remove(name);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            filling.remove(name);
+            log.debug("Cache fill queue is full, {} stays uncached", key);
+        }
+    }
+
+    /**
+     * Drop one entry
+     */
+    public synchronized void remove(String key) {
+        String name = fileName(key);
+        Entry removed = index.remove(name);
+        if (removed != null) {
+            totalBytes -= removed.size();
+            deleteLater(name, removed);
+        }
+    }
+
+    /**
+     * Drop every entry whose key starts with the prefix (e.g. all renditions of a deleted original)
+     */
+    public synchronized void removeByPrefix(String keyPrefix) {
+        Iterator<Map.Entry<String, Entry>> entries = index.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Entry> entry = entries.next();
+            if (entry.getKey().startsWith(keyPrefix)) {
+                totalBytes -= entry.getValue().size();
+                deleteLater(entry.getKey(), entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Delete the removed files whose delay has passed. Runs under the lock so a file is never
+     * deleted after commit() has moved a new copy into its place.
+     */
+    @Scheduled(fixedDelayString = "${app.image.cache.disk-delete-sweep-ms:10000}")
+    public synchronized void deleteRemoved() {
+        long now = System.currentTimeMillis();
+        Iterator<PendingDelete> pending = pendingDeletes.values().iterator();
+        while (pending.hasNext()) {
+            PendingDelete file = pending.next();
+            if (file.deleteAfter() <= now) {
+                delete(file.path());
+                pending.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The new entry, or null if the copy failed (logged)
+     */
+    private Entry copyIn(String name, long size, long lastModified, ImageContent.Body source) {
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, name + ".", TEMP_SUFFIX);
+            long copied;
+            try (InputStream in = source.open()) {
+                copied = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (copied != size) {
+                throw new IOException("Copied " + copied + " bytes, expected " + size);
+            }
+            Entry entry = commit(name, temp, copied, lastModified);
+            log.debug("Cached {} ({} bytes) on local disk", name, copied);
+            return entry;
+        } catch (Exception e) {
+            log.warn("Could not cache {} on local disk: {}", name, e.getMessage());
+            if (temp != null) {
+                delete(temp);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Move a completely written temporary file into place, index it and evict down to the size limit
+     */
+    private Entry commit(String name, Path temp, long size, long lastModified) throws IOException {
+        Files.setLastModifiedTime(temp, FileTime.fromMillis(lastModified));
+        if (Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.setPosixFilePermissions(temp, ENTRY_PERMISSIONS);
+        }
+        Path target = directory.resolve(name);
+        synchronized (this) {
+            // The file about to be moved in must not be deleted as the previous copy
+            pendingDeletes.remove(name);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Entry entry = new Entry(target, size, lastModified);
+        int evicted = 0;
+        synchronized (this) {
+            Entry previous = index.put(name, entry);
+            if (previous != null) {
+                totalBytes -= previous.size();
+            }
+            totalBytes += entry.size();
+            Iterator<Map.Entry<String, Entry>> eldest = index.entrySet().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> candidate = eldest.next();
+                if (candidate.getKey().equals(name)) {
+                    continue;
+                }
+                totalBytes -= candidate.getValue().size();
+                deleteLater(candidate.getKey(), candidate.getValue());
+                eldest.remove();
+                evicted++;
+            }
+        }
+        evictions.increment(evicted);
+        return entry;
+    }
+
+    /**
+     * Look up without touching the LRU order or the hit/miss counters
+     */
+    private synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    private synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    private synchronized int entryCount() {
+        return index.size();
+    }
+
+    private void loadIndex() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+        List<Entry> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                // Interrupted fill
+                delete(file);
+                continue;
+            }
+            entries.add(new Entry(file, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+        }
+        entries.sort(Comparator.comparingLong(Entry::lastModified));
+        List<Path> trimmed = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entries) {
+                index.put(entry.path().getFileName().toString(), entry);
+                totalBytes += entry.size();
+            }
+            Iterator<Entry> eldest = index.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                Entry entry = eldest.next();
+                totalBytes -= entry.size();
+                trimmed.add(entry.path());
+                eldest.remove();
+            }
+        }
+        trimmed.forEach(this::delete);
+        log.info("Local image cache at {}: {} files, {} bytes (limit {}), {} files trimmed on startup",
+                directory, index.size(), totalBytes, maxBytes, trimmed.size());
+    }
+
+    /**
+     * Called under the lock for an entry just dropped from the index
+     */
+    private void deleteLater(String name, Entry entry) {
+        pendingDeletes.put(name, new PendingDelete(entry.path(), System.currentTimeMillis() + deleteDelayMs));
+    }
+
+    private void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached file {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("geophoto.image.cache.requests")
+                .description("Image cache lookups")
+                .tag("tier", TIER)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Keys that are safe file names (GridFS filenames) are used as is, anything else is hashed
+     */
+    private static String fileName(String key) {
+        if (SAFE_NAME.matcher(key).matches() && !key.endsWith(TEMP_SUFFIX)) {
+            return key;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.JobCheckpoint;
+import com.geophoto.entity.Photo;
+import com.geophoto.repository.JobCheckpointRepository;
+import com.geophoto.util.GridCells;
+import com.geophoto.util.PhotoMetadata;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Metadata Backfill Service
+ * Resumable background job that fills latitude/longitude, takenAt and orientation for photos
+ * whose extraction failed or predates it:
+ * - walks photos in _id order (keyset cursor) in batches, checkpointing after each batch
+ * - re-reads only the metadata prefix of each GridFS original
+ * - extracts a batch in parallel on the backfill executor; parsing is time-boxed by
+ *   MetadataExtractionService on backfillMetadataExecutor, never on the pool live uploads use
+ * - a transient failure (timeout, open circuit, full queue, read error) stops the cursor before
+ *   that photo so the next batch retries it, up to app.backfill.max-attempts times before it is
+ *   counted as failed and skipped
+ * - writes one unordered bulk update per batch that only sets fields that are still null,
+ *   so values entered by users in the meantime are never overwritten
+ * - paced to app.backfill.rate-per-second
+ * Start / pause / checkpointing are handled by CheckpointedJob.
+ */
+@Service
+@Slf4j
+public class MetadataBackfillService extends CheckpointedJob {
+
+    public static final String JOB_NAME = "metadata-backfill";
+
+    private static final Pattern GRIDFS_URL = Pattern.compile("^" + Pattern.quote(ThumbnailService.IMAGE_URL_PREFIX));
+
+    private final MongoTemplate mongoTemplate;
+    private final GridFsTemplate gridFsTemplate;
+    private final OriginalFileResolver originalFileResolver;
+    private final MetadataExtractionService metadataExtractionService;
+    private final ThreadPoolTaskExecutor backfillExecutor;
+    private final ThreadPoolTaskExecutor backfillMetadataExecutor;
+
+    private final int batchSize;
+    private final double ratePerSecond;
+    private final int metadataPrefixBytes;
+    private final int maxAttempts;
+    private final long retryDelayMs;
+
+    /** Transient failures per photo id during this run */
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+
+    public MetadataBackfillService(
+            MongoTemplate mongoTemplate,
+            GridFsTemplate gridFsTemplate,
+            OriginalFileResolver originalFileResolver,
+            JobCheckpointRepository checkpointRepository,
+            MetadataExtractionService metadataExtractionService,
+            @Qualifier("backfillExecutor") ThreadPoolTaskExecutor backfillExecutor,
+            @Qualifier("backfillMetadataExecutor") ThreadPoolTaskExecutor backfillMetadataExecutor,
+            @Value("${app.backfill.batch-size:100}") int batchSize,
+            @Value("${app.backfill.rate-per-second:50}") double ratePerSecond,
+            @Value("${app.upload.metadata-prefix-bytes:262144}") int metadataPrefixBytes,
+            @Value("${app.backfill.max-attempts:5}") int maxAttempts,
+            @Value("${app.backfill.retry-delay-ms:5000}") long retryDelayMs) {
+        super(JOB_NAME, checkpointRepository);
+        this.mongoTemplate = mongoTemplate;
+        this.gridFsTemplate = gridFsTemplate;
+        this.originalFileResolver = originalFileResolver;
+        this.metadataExtractionService = metadataExtractionService;
+        this.backfillExecutor = backfillExecutor;
+        this.backfillMetadataExecutor = backfillMetadataExecutor;
+        this.batchSize = batchSize;
+        this.ratePerSecond = ratePerSecond;
+        this.metadataPrefixBytes = metadataPrefixBytes;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    @Override
+    protected void beforeRun(JobCheckpoint checkpoint) {
+        attempts.clear();
+    }
+
+    @Override
+    protected boolean processNextBatch(JobCheckpoint checkpoint) throws InterruptedException {
+        List<Photo> batch = nextBatch(checkpoint.getLastId());
+        if (batch.isEmpty()) {
+            return false;
+        }
+        long batchStart = System.nanoTime();
+        int settled = processBatch(batch, checkpoint);
+        if (settled > 0) {
+            checkpoint.setLastId(batch.get(settled - 1).getId());
+        } else {
+            // The first photo failed transiently again: give the parser pool time to recover
+            TimeUnit.MILLISECONDS.sleep(retryDelayMs);
+        }
+        throttle(batch.size(), batchStart, ratePerSecond);
+        return true;
+    }
+
+    /**
+     * GridFS photos after the checkpoint that still miss GPS or date
+     */
+    private List<Photo> nextBatch(String lastId) {
+        Criteria criteria = Criteria.where("url").regex(GRIDFS_URL)
+                .orOperator(
+                        Criteria.where("latitude").is(null),
+                        Criteria.where("longitude").is(null),
+                        Criteria.where("takenAt").is(null));
+        if (lastId != null) {
+            criteria = Criteria.where("id").gt(new ObjectId(lastId)).andOperator(criteria);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "id"))
+                .limit(batchSize);
+        query.fields().include("id", "url", "fileName", "latitude", "longitude", "takenAt", "orientation");
+        return mongoTemplate.find(query, Photo.class);
+    }
+
+    /**
+     * Extract and write the batch up to the first photo that failed transiently
+     *
+     * @return Number of leading photos that are settled, i.e. how far the cursor may move
+     */
+    private int processBatch(List<Photo> batch, JobCheckpoint checkpoint) {
+        List<CompletableFuture<Extraction>> extracted = batch.stream()
+                .map(photo -> CompletableFuture.supplyAsync(() -> extract(photo), backfillExecutor))
+                .toList();
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Photo.class);
+        int settled = batch.size();
+        int updated = 0;
+        int failed = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Photo photo = batch.get(i);
+            Extraction extraction = extracted.get(i).join();
+            if (extraction.retry()) {
+                int attempt = attempts.merge(photo.getId(), 1, Integer::sum);
+                if (attempt < maxAttempts) {
+                    settled = i;
+                    break;
+                }
+                log.warn("Backfill: giving up on photo {} after {} transient failures", photo.getId(), attempt);
+            }
+            attempts.remove(photo.getId());
+            PhotoMetadata metadata = extraction.metadata();
+            if (metadata == null) {
+                failed++;
+                continue;
+            }
+            int operations = 0;
+            if (metadata.hasGps() && (photo.getLatitude() == null || photo.getLongitude() == null)) {
+                bulk.updateOne(Query.query(Criteria.where("id").is(photo.getId())
+                                .and("latitude").is(null).and("longitude").is(null)),
+                        new Update().set("latitude", metadata.latitude()).set("longitude", metadata.longitude())
+                                .set("location", Photo.point(metadata.latitude(), metadata.longitude()))
+                                .set("gridCell", GridCells.cell(metadata.latitude(), metadata.longitude())));
+                operations++;
+            }
+            if (metadata.takenAt() != null && photo.getTakenAt() == null) {
+                bulk.updateOne(Query.query(Criteria.where("id").is(photo.getId()).and("takenAt").is(null)),
+                        new Update().set("takenAt", metadata.takenAt()));
+                operations++;
+            }
+            if (metadata.orientation() != null && photo.getOrientation() == null) {
+                bulk.updateOne(Query.query(Criteria.where("id").is(photo.getId()).and("orientation").is(null)),
+                        new Update().set("orientation", metadata.orientation()));
+                operations++;
+            }
+            if (operations > 0) {
+                updated++;
+            }
+        }
+        if (updated > 0) {
+            bulk.execute();
+        }
+
+        checkpoint.setProcessed(checkpoint.getProcessed() + settled);
+        checkpoint.setUpdated(checkpoint.getUpdated() + updated);
+        checkpoint.setFailed(checkpoint.getFailed() + failed);
+        log.debug("Backfill batch of {} photos: {} settled, {} updated, {} failed",
+                batch.size(), settled, updated, failed);
+        return settled;
+    }
+
+    /**
+     * Read the metadata prefix of the original and parse it
+     */
+    private Extraction extract(Photo photo) {
+        String filename = ThumbnailService.filenameFromUrl(photo.getUrl());
+        try {
+            GridFSFile stored = originalFileResolver.find(filename);
+            if (stored == null) {
+                log.warn("Backfill: original {} of photo {} is missing", filename, photo.getId());
+                return Extraction.FAILED;
+            }
+            byte[] prefix;
+            try (InputStream in = gridFsTemplate.getResource(stored).getInputStream()) {
+                prefix = in.readNBytes(metadataPrefixBytes);
+            }
+            PhotoMetadata metadata = metadataExtractionService.tryExtract(
+                    prefix, photo.getFileName(), backfillMetadataExecutor);
+            return metadata != null ? new Extraction(metadata, false) : Extraction.RETRY;
+        } catch (Exception e) {
+            log.warn("Backfill: could not read original {} of photo {}: {}", filename, photo.getId(), e.getMessage());
+            return Extraction.RETRY;
+        }
+    }
+
+    /**
+     * Outcome for one photo: metadata (possibly empty), a permanent failure (null metadata),
+     * or a transient failure to retry
+     */
+    private record Extraction(PhotoMetadata metadata, boolean retry) {
+        static final Extraction FAILED = new Extraction(null, false);
+        static final Extraction RETRY = new Extraction(null, true);
+    }
+}
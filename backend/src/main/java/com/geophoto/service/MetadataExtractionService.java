@@ -0,0 +1,282 @@
+package com.geophoto.service;
+
+import com.drew.imaging.FileType;
+import com.drew.imaging.FileTypeDetector;
+import com.drew.imaging.ImageProcessingException;
+import com.geophoto.util.GpsExtractor;
+import com.geophoto.util.PhotoMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metadata Extraction Service
+ * Runs EXIF/metadata parsing on a dedicated bounded pool so a malformed or huge file
+ * cannot pin a request thread or the upload pipeline:
+ * - only the header prefix captured in memory is parsed, never the stored file, so the input
+ *   (and with it the work of a parse) is bounded by app.upload.metadata-prefix-bytes
+ * - every file gets a time budget; on timeout the caller continues without metadata.
+ *   A parse does not stop on interruption, so a timed-out task keeps its worker until it ends;
+ *   while every worker of a pool is held by such a task nothing more is submitted to it
+ * - a circuit breaker per file type stops parsing a format after repeated failures
+ *   and retries it with a single trial parse after a cool-down
+ * - never throws: {@link #extract} yields {@link PhotoMetadata#EMPTY} on any failure;
+ *   {@link #tryExtract} tells transient failures (worth retrying) apart from files without metadata
+ *
+ * Metrics: geophoto.metadata.parse{type} (latency),
+ * geophoto.metadata.failures{type,reason} (timeout, parse_error, io_error, error, rejected, stuck, circuit_open)
+ */
+@Service
+@Slf4j
+public class MetadataExtractionService {
+
+    private final ThreadPoolTaskExecutor metadataExecutor;
+    private final MeterRegistry meterRegistry;
+
+    private final long timeoutMs;
+    private final int failureThreshold;
+    private final long openMs;
+
+    private final Map<FileType, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Per pool: tasks still running after their caller gave up on them
+     */
+    private final Map<ThreadPoolTaskExecutor, AtomicInteger> stuckTasks = new ConcurrentHashMap<>();
+
+    public MetadataExtractionService(
+            @Qualifier("metadataExecutor") ThreadPoolTaskExecutor metadataExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${app.metadata.timeout-ms:5000}") long timeoutMs,
+            @Value("${app.metadata.breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${app.metadata.breaker.open-ms:60000}") long openMs) {
+        this.metadataExecutor = metadataExecutor;
+        this.meterRegistry = meterRegistry;
+        this.timeoutMs = timeoutMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+    }
+
+    /**
+     * Extract metadata from a header prefix; metadata extending past the prefix is not found
+     *
+     * @param headerPrefix Leading bytes of the file
+     * @param filename Original filename (for logging)
+     * @return Extracted metadata, or PhotoMetadata.EMPTY on failure, timeout or open circuit
+     */
+    public PhotoMetadata extract(byte[] headerPrefix, String filename) {
+        PhotoMetadata metadata = tryExtract(headerPrefix, filename, metadataExecutor);
+        return metadata != null ? metadata : PhotoMetadata.EMPTY;
+    }
+
+    /**
+     * Extract metadata on the given pool (maintenance jobs use their own so they never
+     * compete with live uploads), distinguishing transient failures
+     *
+     * @return Extracted metadata, PhotoMetadata.EMPTY if the file has none or cannot be parsed,
+     *         or null after a transient failure (timeout, open circuit, full or stuck pool, I/O error,
+     *         interruption) that a later attempt may not hit
+     */
+    public PhotoMetadata tryExtract(byte[] headerPrefix, String filename, ThreadPoolTaskExecutor executor) {
+        FileType fileType = detectFileType(headerPrefix);
+        String type = fileType.name().toLowerCase(Locale.ROOT);
+        CircuitBreaker breaker = breakers.computeIfAbsent(fileType, t -> new CircuitBreaker());
+        if (!breaker.allowRequest()) {
+            failure(type, "circuit_open");
+            log.debug("Metadata parsing for {} files is suspended, skipping {}", type, filename);
+            return null;
+        }
+
+        AtomicInteger stuck = stuckTasks.computeIfAbsent(executor, e -> new AtomicInteger());
+        if (stuck.get() >= executor.getMaxPoolSize()) {
+            // Queued work would only wait for workers that may never come back
+            breaker.release();
+            failure(type, "stuck");
+            log.warn("All metadata workers are busy with timed-out parses, no metadata for {}", filename);
+            return null;
+        }
+
+        ParseTask task = new ParseTask(headerPrefix, filename, stuck);
+        Future<PhotoMetadata> future;
+        try {
+            future = executor.submit(task);
+        } catch (TaskRejectedException e) {
+            // Pool saturated: not the format's fault, so the breaker is left alone
+            breaker.release();
+            failure(type, "rejected");
+            log.warn("Metadata queue is full, no metadata for {}", filename);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        try {
+            PhotoMetadata metadata = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            breaker.onSuccess();
+            return metadata;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            task.abandon();
+            onFailure(breaker, type, "timeout");
+            log.warn("Metadata extraction for {} timed out after {} ms", filename, timeoutMs);
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            String reason = cause instanceof ImageProcessingException ? "parse_error"
+                    : cause instanceof IOException ? "io_error"
+                    : "error";
+            onFailure(breaker, type, reason);
+            log.error("Error extracting metadata from image: {} ({})", filename, reason, cause);
+            // A file that cannot be parsed stays that way; reading it may work next time
+            return cause instanceof IOException ? null : PhotoMetadata.EMPTY;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            task.abandon();
+            breaker.release();
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            Timer.builder("geophoto.metadata.parse")
+                    .description("Metadata extraction latency")
+                    .tag("type", type)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * One parse on the metadata executor; counts itself as stuck from the moment its caller
+     * abandons it until it actually ends
+     */
+    private static class ParseTask implements Callable<PhotoMetadata> {
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
+        private final byte[] headerPrefix;
+        private final String filename;
+        private final AtomicInteger stuck;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+        ParseTask(byte[] headerPrefix, String filename, AtomicInteger stuck) {
+            this.headerPrefix = headerPrefix;
+            this.filename = filename;
+            this.stuck = stuck;
+        }
+
+        @Override
+        public PhotoMetadata call() throws ImageProcessingException, IOException {
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                return null;
+            }
+            try {
+                return GpsExtractor.extract(headerPrefix, filename);
+            } finally {
+                if (state.getAndSet(DONE) == ABANDONED) {
+                    stuck.decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * The caller stopped waiting: a queued task is dropped, a running one now holds its worker
+         */
+        void abandon() {
+            if (!state.compareAndSet(QUEUED, DONE) && state.compareAndSet(RUNNING, ABANDONED)) {
+                stuck.incrementAndGet();
+            }
+        }
+    }
+
+    private void onFailure(CircuitBreaker breaker, String type, String reason) {
+        failure(type, reason);
+        if (breaker.onFailure()) {
+            log.error("Metadata parsing for {} files suspended for {} ms after {} consecutive failures",
+                    type, openMs, failureThreshold);
+        }
+    }
+
+    private void failure(String type, String reason) {
+        Counter.builder("geophoto.metadata.failures")
+                .description("Metadata extractions that produced no result")
+                .tag("type", type)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static FileType detectFileType(byte[] headerPrefix) {
+        try {
+            return FileTypeDetector.detectFileType(new BufferedInputStream(new ByteArrayInputStream(headerPrefix)));
+        } catch (IOException e) {
+            return FileType.Unknown;
+        }
+    }
+
+    /**
+     * Consecutive-failure circuit breaker.
+     * Closed: every parse runs. Open: parses are skipped until the cool-down ends.
+     * Half-open: one trial parse decides whether to close or re-open.
+     */
+    private class CircuitBreaker {
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean trialInFlight;
+
+        synchronized boolean allowRequest() {
+            if (consecutiveFailures < failureThreshold) {
+                return true;
+            }
+            if (System.currentTimeMillis() < openUntil || trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+
+        /**
+         * @return true if this failure opened the circuit
+         */
+        synchronized boolean onFailure() {
+            boolean wasClosed = consecutiveFailures < failureThreshold;
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (consecutiveFailures >= failureThreshold) {
+                openUntil = System.currentTimeMillis() + openMs;
+                return wasClosed;
+            }
+            return false;
+        }
+
+        /**
+         * The request ended without a verdict on the format
+         */
+        synchronized void release() {
+            trialInFlight = false;
+        }
+    }
+}
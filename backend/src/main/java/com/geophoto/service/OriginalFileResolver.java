@@ -0,0 +1,103 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Blob;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Original File Resolver
+ * Maps an image filename as it appears in URLs (/api/photos/image/{filename}) to its GridFS file.
+ * - each upload of an original gets its own random name, recorded on its blob (Blob.aliases); the
+ *   shared content-addressed GridFS file is only reachable through such a name, so nobody can
+ *   probe whether some user stored a given file by requesting a name derived from its content
+ * - any other name (originals stored before blobs, thumbnails, renditions, sprite atlases) is a
+ *   GridFS file of its own
+ * {@link #exists} backs responses served without reading the file (cached renditions, 304s): a name
+ * found to exist is trusted for app.image.source-check-ttl-ms, so a deletion made on another node
+ * stops being served within that time
+ */
+@Component
+@RequiredArgsConstructor
+public class OriginalFileResolver {
+
+    private static final String FILES_COLLECTION = "fs.files";
+
+    private final MongoTemplate mongoTemplate;
+    private final GridFsTemplate gridFsTemplate;
+
+    /** How long a name found to exist is trusted without asking the database again */
+    @Value("${app.image.source-check-ttl-ms:5000}")
+    private long existsTtlMs;
+
+    /** Entries kept before expired ones are swept */
+    private static final int MAX_CONFIRMED = 10_000;
+
+    /** Names found to exist, with the time until which that answer is trusted */
+    private final Map<String, Long> confirmed = new ConcurrentHashMap<>();
+
+    /**
+     * GridFS file served under a filename
+     *
+     * @return File, or null if the name does not exist (or is a blob's own content-addressed name)
+     */
+    public GridFSFile find(String filename) {
+        Blob blob = findBlob(filename);
+        if (blob != null) {
+            return gridFsTemplate.findOne(Query.query(
+                    Criteria.where("_id").is(new ObjectId(blob.getGridFsFileId()))));
+        }
+        // Blob files carry their hash in metadata.sha256 and are never served by their own name
+        return gridFsTemplate.findOne(Query.query(Criteria.where("filename").is(filename)
+                .and("metadata.sha256").exists(false)));
+    }
+
+    /**
+     * Whether a filename is still served, answered from indexed lookups only (blobs.aliases,
+     * fs.files filename) and trusted for a short while once true
+     */
+    public boolean exists(String filename) {
+        long now = System.currentTimeMillis();
+        Long until = confirmed.get(filename);
+        if (until != null && until > now) {
+            return true;
+        }
+        boolean exists = mongoTemplate.exists(Query.query(Criteria.where("aliases").is(filename)), Blob.class)
+                || mongoTemplate.exists(Query.query(Criteria.where("filename").is(filename)
+                        .and("metadata.sha256").exists(false)), FILES_COLLECTION);
+        if (!exists) {
+            confirmed.remove(filename);
+            return false;
+        }
+        if (confirmed.size() >= MAX_CONFIRMED) {
+            confirmed.values().removeIf(expiry -> expiry <= now);
+        }
+        confirmed.put(filename, now + existsTtlMs);
+        return true;
+    }
+
+    /**
+     * Stop trusting an earlier {@link #exists} answer (the name has just been deleted on this node)
+     */
+    public void forget(String filename) {
+        confirmed.remove(filename);
+    }
+
+    /**
+     * Blob an upload's filename refers to, or null for names that are not blob aliases
+     */
+    public Blob findBlob(String filename) {
+        Query query = Query.query(Criteria.where("aliases").is(filename));
+        query.fields().include("id", "filename", "gridFsFileId", "contentType");
+        return mongoTemplate.findOne(query, Blob.class);
+    }
+}
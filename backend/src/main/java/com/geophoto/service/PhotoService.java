@@ -1,15 +1,33 @@
 package com.geophoto.service;
 
 import com.drew.imaging.ImageProcessingException;
-import com.drew.lang.GeoLocation;
+import com.geophoto.dto.BatchUploadResultDTO;
+import com.geophoto.dto.PhotoClustersDTO;
 import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.ViewportPhotosDTO;
 import com.geophoto.entity.Photo;
 import com.geophoto.entity.User;
 import com.geophoto.repository.PhotoRepository;
-import com.geophoto.util.GpsExtractor;
+import com.geophoto.util.EmbeddedThumbnailExtractor;
+import com.geophoto.util.GeoQueries;
+import com.geophoto.util.GridCells;
+import com.geophoto.util.PhotoMetadata;
+import com.geophoto.util.PrefixCapturingInputStream;
+import com.mongodb.bulk.BulkWriteError;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.StringOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
@@ -17,13 +35,27 @@ import org.springframework.lang.NonNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -37,11 +69,39 @@ import java.util.stream.Collectors;
 public class PhotoService {
     
     private final PhotoRepository photoRepository;
+    private final MongoTemplate mongoTemplate;
     private final org.springframework.data.mongodb.gridfs.GridFsTemplate gridFsTemplate;
+    private final ThumbnailService thumbnailService;
+    private final BlobService blobService;
+    private final RenditionService renditionService;
+    private final MetadataExtractionService metadataExtractionService;
+    
+    @Qualifier("uploadExecutor")
+    private final ThreadPoolTaskExecutor uploadExecutor;
     
     @Value("${app.upload.dir}")
     private String uploadDir;
     
+    /**
+     * Number of leading bytes kept in memory during upload for metadata parsing
+     * (JPEG EXIF lives in an APP1 segment of at most 64 KB, but it can follow other APPn
+     * segments such as JFIF, ICC profiles or XMP, so the default leaves room for several)
+     */
+    @Value("${app.upload.metadata-prefix-bytes:262144}")
+    private int metadataPrefixBytes;
+    
+    @Value("${app.photos.within.max-results:5000}")
+    private int withinMaxResults;
+    
+    /** Clusters are cells this many levels below the map zoom (4x4 cells per 256px tile) */
+    private static final int CLUSTER_LEVELS_BELOW_ZOOM = 2;
+    
+    @Value("${app.photos.clusters.points-threshold:300}")
+    private int clusterPointsThreshold;
+    
+    @Value("${app.photos.clusters.max-clusters:1000}")
+    private int maxClusters;
+    
     /**
      * Get all photos with GPS coordinates for a specific user
      */
@@ -52,6 +112,114 @@ public class PhotoService {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Get a user's photos inside a map viewport (2dsphere index on location), newest first
+     * 
+     * @param polygon [longitude, latitude] vertices further restricting the result, or null
+     * @throws IllegalArgumentException if the polygon is malformed
+     */
+    public ViewportPhotosDTO getPhotosWithin(String userId, double south, double west, double north, double east,
+                                             List<double[]> polygon) {
+        List<Criteria> area = new ArrayList<>();
+        area.add(GeoQueries.viewport(south, west, north, east));
+        if (polygon != null) {
+            area.add(GeoQueries.polygon(polygon));
+        }
+        Query query = Query.query(Criteria.where("userId").is(userId).andOperator(area));
+        query.with(Sort.by(Sort.Direction.DESC, "id")).limit(withinMaxResults + 1);
+        
+        List<Photo> photos = mongoTemplate.find(query, Photo.class);
+        boolean truncated = photos.size() > withinMaxResults;
+        return new ViewportPhotosDTO(
+                photos.stream().limit(withinMaxResults).map(this::convertToDTO).collect(Collectors.toList()),
+                truncated);
+    }
+    
+    /**
+     * Get a user's photos inside a map viewport for display at the given zoom: the photos themselves
+     * when there are at most app.photos.clusters.points-threshold, otherwise one cluster per grid
+     * cell (prefix of Photo.gridCell), grouped by MongoDB. The cell level follows the zoom but is
+     * lowered until the viewport spans at most app.photos.clusters.max-clusters cells, so the
+     * response size does not depend on the size of the library. Photos without a grid cell yet
+     * (GeoLocationMigrationService still running) are left out of the clusters.
+     * Each cluster carries the marker thumbnail URL of its newest photo, an immutable image the
+     * browser and nginx cache per photo, whatever the viewport.
+     */
+    public PhotoClustersDTO getPhotoClusters(String userId, double south, double west, double north, double east,
+                                             int zoom) {
+        Criteria area = Criteria.where("userId").is(userId)
+                .andOperator(GeoQueries.viewport(south, west, north, east));
+        long total = mongoTemplate.count(Query.query(area), Photo.class);
+        if (total <= clusterPointsThreshold) {
+            Query query = Query.query(area).with(Sort.by(Sort.Direction.DESC, "id")).limit(clusterPointsThreshold);
+            List<PhotoDTO> points = mongoTemplate.find(query, Photo.class).stream()
+                    .map(this::convertToDTO)
+                    .collect(Collectors.toList());
+            return new PhotoClustersDTO(total, 0, List.of(), points);
+        }
+        
+        int level = GridCells.level(zoom + CLUSTER_LEVELS_BELOW_ZOOM, south, west, north, east, maxClusters);
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(area),
+                Aggregation.match(Criteria.where("gridCell").exists(true)),
+                Aggregation.project("latitude", "longitude")
+                        .and("id").as("photoId")
+                        .and(StringOperators.valueOf("gridCell").substring(0, level)).as("cell"),
+                Aggregation.group("cell")
+                        .count().as("count")
+                        .avg("latitude").as("latitude")
+                        .avg("longitude").as("longitude")
+                        .max("photoId").as("photoId")
+                        .min("latitude").as("south")
+                        .min("longitude").as("west")
+                        .max("latitude").as("north")
+                        .max("longitude").as("east"));
+        List<Document> cells = mongoTemplate.aggregate(aggregation, Photo.class, Document.class).getMappedResults();
+        Map<String, String> thumbnails = markerThumbnails(cells.stream()
+                .map(cell -> cell.getObjectId("photoId").toHexString())
+                .toList());
+        List<PhotoClustersDTO.Cluster> clusters = cells.stream()
+                .map(cell -> new PhotoClustersDTO.Cluster(
+                        cell.getString("_id"),
+                        cell.getDouble("latitude"),
+                        cell.getDouble("longitude"),
+                        ((Number) cell.get("count")).longValue(),
+                        cell.getObjectId("photoId").toHexString(),
+                        thumbnails.get(cell.getObjectId("photoId").toHexString()),
+                        cell.getDouble("south"),
+                        cell.getDouble("west"),
+                        cell.getDouble("north"),
+                        cell.getDouble("east")))
+                .collect(Collectors.toList());
+        return new PhotoClustersDTO(total, level, clusters, null);
+    }
+    
+    /**
+     * Photo ID -> marker rendition URL, falling back to the thumbnail or the image itself
+     */
+    private Map<String, String> markerThumbnails(List<String> photoIds) {
+        Query query = Query.query(Criteria.where("id").in(photoIds));
+        query.fields().include("url").include("thumbnailUrl").include("renditions");
+        Map<String, String> thumbnails = new HashMap<>();
+        for (Photo photo : mongoTemplate.find(query, Photo.class)) {
+            String marker = photo.getRenditions() != null
+                    ? photo.getRenditions().get(ThumbnailService.Rendition.MARKER.key())
+                    : null;
+            thumbnails.put(photo.getId(), marker != null ? marker
+                    : photo.getThumbnailUrl() != null ? photo.getThumbnailUrl() : photo.getUrl());
+        }
+        return thumbnails;
+    }
+    
+    /**
+     * Photo counts of a user: all photos and photos with GPS
+     */
+    public Map<String, Long> getPhotoStats(String userId) {
+        return Map.of(
+                "total", photoRepository.countByUserId(userId),
+                "withGps", photoRepository.countByUserIdAndLocationIsNotNull(userId));
+    }
+    
     /**
      * Get all photos for a specific user
      */
@@ -93,7 +261,7 @@ public class PhotoService {
     
     /**
      * Upload and process photo
-     * Saves file to GridFS and extracts GPS metadata
+     * Streams file to GridFS once and extracts GPS metadata from the captured header prefix
      * 
      * @param file MultipartFile uploaded from client
      * @param description Optional description for the photo
@@ -107,80 +275,170 @@ public class PhotoService {
             throw new RuntimeException("File is empty");
         }
         
-        String originalFilename = file.getOriginalFilename();
-        log.info("Starting upload process for file: {}", originalFilename);
-        
+        StoredUpload upload = storeOriginal(file, user);
         try {
-            // Generate unique filename to avoid conflicts
-            String fileExtension = getFileExtension(originalFilename);
-            String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
-            
-            // Store file in GridFS
-            // We need to read input stream twice: once for GPS, once for GridFS.
-            // Since we can't always reset MultipartFile stream reliably if it's not disk-backed, 
-            // and we want to avoid memory issues with large files, we can:
-            // 1. Store in GridFS first.
-            // 2. Read from GridFS to extract GPS.
-            
-            org.bson.types.ObjectId gridFsFileId = gridFsTemplate.store(
-                    file.getInputStream(), 
-                    uniqueFilename, 
-                    file.getContentType(),
-                    new com.mongodb.BasicDBObject("userId", user.getId())
-            );
-            
-            log.info("File saved to GridFS with ID: {}", gridFsFileId);
-            
-            // Create Photo document
-            Photo photo = new Photo();
-            photo.setFileName(originalFilename);
-            // URL format: /api/photos/image/{uniqueFilename}
-            photo.setUrl("/api/photos/image/" + uniqueFilename);
-            photo.setDescription(description);
-            photo.setUserId(user.getId());
-            
-            // logic for GPS
-            if (latitude != null && longitude != null) {
-                // Use provided GPS
-                photo.setLatitude(latitude);
-                photo.setLongitude(longitude);
-                log.info("Using provided GPS coordinates - Lat: {}, Lon: {}", latitude, longitude);
+            return processStoredUpload(upload, description, latitude, longitude);
+        } catch (RuntimeException e) {
+            discardStoredUpload(upload);
+            throw e;
+        }
+    }
+    
+    /**
+     * Upload several photos in one request
+     * Each file is streamed to GridFS on the calling thread, metadata for all files is
+     * extracted in parallel on the upload executor, and the Photo documents are written
+     * with a single bulk insert.
+     * 
+     * @param files Uploaded files
+     * @param user The user uploading the photos
+     * @return One result per file, in request order
+     */
+    public List<BatchUploadResultDTO> uploadPhotos(List<MultipartFile> files, User user) {
+        BatchUploadResultDTO[] results = new BatchUploadResultDTO[files.size()];
+        List<CompletableFuture<Photo>> prepared = new ArrayList<>(files.size());
+        List<StoredUpload> uploads = new ArrayList<>(files.size());
+        
+        // Stage 1: store originals (multipart parts can only be read on the request thread)
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String contentType = file.getContentType();
+            StoredUpload upload = null;
+            if (file.isEmpty()) {
+                results[i] = BatchUploadResultDTO.failure(file.getOriginalFilename(), "File is empty");
+            } else if (contentType == null || !contentType.startsWith("image/")) {
+                results[i] = BatchUploadResultDTO.failure(file.getOriginalFilename(), "Not an image: " + contentType);
             } else {
-                // Extract GPS coordinates from GridFS stream
-                try (java.io.InputStream gridFsStream = gridFsTemplate.getResource(uniqueFilename).getInputStream()) {
-                    GeoLocation geoLocation = GpsExtractor.extractGpsCoordinates(gridFsStream, originalFilename);
-                    
-                    if (geoLocation != null) {
-                        photo.setLatitude(geoLocation.getLatitude());
-                        photo.setLongitude(geoLocation.getLongitude());
-                        log.info("GPS coordinates extracted - Lat: {}, Lon: {}", 
-                                geoLocation.getLatitude(), geoLocation.getLongitude());
-                    } else {
-                        log.warn("No GPS coordinates found in image: {}", originalFilename);
-                    }
-                } catch (Exception e) {
-                    log.error("Error extracting metadata from image: {}", originalFilename, e);
+                try {
+                    upload = storeOriginal(file, user);
+                } catch (RuntimeException e) {
+                    results[i] = BatchUploadResultDTO.failure(file.getOriginalFilename(), e.getMessage());
                 }
             }
+            uploads.add(upload);
             
-            // Extract date taken (always try to get from EXIF)
-            try (java.io.InputStream dateStream = gridFsTemplate.getResource(uniqueFilename).getInputStream()) {
-                 LocalDateTime dateTaken = GpsExtractor.extractDateTaken(dateStream, originalFilename);
-                 photo.setTakenAt(dateTaken);
-            } catch (Exception e) {
-                log.warn("Could not extract date taken from image: {}", e.getMessage());
+            // Stage 2: metadata extraction starts as soon as each file is stored
+            StoredUpload stored = upload;
+            prepared.add(stored == null ? null : prepareAsync(stored));
+        }
+        
+        List<Photo> photos = new ArrayList<>();
+        List<Integer> photoIndexes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (prepared.get(i) == null) {
+                continue;
             }
-            
-            // TODO: Generate thumbnail for map markers
-            // For now, use the same URL as the full image
-            photo.setThumbnailUrl(photo.getUrl());
-            
-            // Save to database
-            Photo savedPhoto = photoRepository.save(photo);
-            log.info("Photo saved to database with ID: {}", savedPhoto.getId());
-            
-            return convertToDTO(savedPhoto);
-            
+            try {
+                photos.add(prepared.get(i).join());
+                photoIndexes.add(i);
+            } catch (CompletionException e) {
+                log.error("Error processing batch file: {}", files.get(i).getOriginalFilename(), e.getCause());
+                discardStoredUpload(uploads.get(i));
+                results[i] = BatchUploadResultDTO.failure(files.get(i).getOriginalFilename(), e.getCause().getMessage());
+            }
+        }
+        
+        // Stage 3: one bulk insert for the whole batch; only the photos that were not written are rolled back
+        if (!photos.isEmpty()) {
+            Map<Integer, String> failed = insertPrepared(photos);
+            for (int j = 0; j < photos.size(); j++) {
+                int index = photoIndexes.get(j);
+                if (failed.containsKey(j)) {
+                    discardStoredUpload(uploads.get(index));
+                    results[index] = BatchUploadResultDTO.failure(
+                            files.get(index).getOriginalFilename(), "Failed to save photo: " + failed.get(j));
+                } else {
+                    Photo savedPhoto = photos.get(j);
+                    results[index] = BatchUploadResultDTO.success(savedPhoto.getFileName(), convertToDTO(savedPhoto));
+                }
+            }
+            log.info("Batch upload saved {} of {} photos for user {}",
+                    photos.size() - failed.size(), photos.size(), user.getId());
+        }
+        
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Build the Photo for a stored upload on the upload executor (metadata, embedded thumbnail).
+     * When the executor is saturated the calling thread does the work, which throttles the producer.
+     */
+    public CompletableFuture<Photo> prepareAsync(StoredUpload upload) {
+        try {
+            return CompletableFuture.supplyAsync(() -> preparePhoto(upload, null, null, null), uploadExecutor);
+        } catch (RejectedExecutionException e) {
+            // Executor saturated: prepare on the caller, which waits for the result anyway
+            CompletableFuture<Photo> photo = new CompletableFuture<>();
+            try {
+                photo.complete(preparePhoto(upload, null, null, null));
+            } catch (RuntimeException failure) {
+                photo.completeExceptionally(failure);
+            }
+            return photo;
+        }
+    }
+    
+    /**
+     * Save prepared photos with one unordered bulk insert and queue renditions for the saved ones.
+     * A failed write does not stop the others, so a batch can be partly saved: the photos that were
+     * not written are reported by index and their renditions deleted (their stored uploads are left
+     * to the caller). When the bulk write fails as a whole (e.g. connection lost), the photos that
+     * did reach the database are looked up by id.
+     * 
+     * @return Index in photos -> error message of every photo that was not saved (empty if all were)
+     */
+    public Map<Integer, String> insertPrepared(List<Photo> photos) {
+        Map<Integer, String> failed = new HashMap<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Photo.class).insert(photos).execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failed.put(error.getIndex(), error.getMessage());
+            }
+            log.error("Bulk insert: {} of {} photos not saved", failed.size(), photos.size());
+        } catch (RuntimeException e) {
+            log.error("Bulk insert of {} photos failed", photos.size(), e);
+            Set<String> saved = savedPhotoIds(photos);
+            for (int i = 0; i < photos.size(); i++) {
+                if (!saved.contains(photos.get(i).getId())) {
+                    failed.put(i, e.getMessage());
+                }
+            }
+        }
+        for (int i = 0; i < photos.size(); i++) {
+            Photo photo = photos.get(i);
+            if (failed.containsKey(i)) {
+                thumbnailService.deleteRenditions(photo.getId());
+            } else {
+                thumbnailService.generateAsync(photo);
+            }
+        }
+        return failed;
+    }
+    
+    /**
+     * Ids of the given photos that exist in the database
+     */
+    private Set<String> savedPhotoIds(List<Photo> photos) {
+        Query query = Query.query(Criteria.where("id").in(photos.stream().map(Photo::getId).toList()));
+        query.fields().include("id");
+        return mongoTemplate.find(query, Photo.class).stream()
+                .map(Photo::getId)
+                .collect(Collectors.toSet());
+    }
+    
+    /**
+     * Store an uploaded file in GridFS (first stage of the upload pipeline)
+     * 
+     * @return StoredUpload to pass to processStoredUpload
+     * @throws RuntimeException if the file cannot be stored
+     */
+    public StoredUpload storeOriginal(MultipartFile file, User user) {
+        String originalFilename = file.getOriginalFilename();
+        log.info("Starting upload process for file: {}", originalFilename);
+        
+        try (InputStream in = file.getInputStream()) {
+            return storeOriginal(in, originalFilename, file.getContentType(), user.getId());
         } catch (IOException e) {
              log.error("Error uploading file: {}", originalFilename, e);
              throw new RuntimeException("Failed to upload file: " + e.getMessage(), e);
@@ -188,12 +446,185 @@ public class PhotoService {
     }
     
     /**
-     * Get file resource from GridFS
+     * Store a file stream in GridFS in a single pass.
+     * The first bytes are captured while streaming so EXIF can be parsed
+     * from memory instead of reading the stored file back from GridFS,
+     * and the SHA-256 is computed on the fly so identical content is kept only once.
+     * The stream is read to the end but not closed.
      */
-    public org.springframework.core.io.Resource getPhotoResource(String filename) {
-        return gridFsTemplate.getResource(filename);
+    public StoredUpload storeOriginal(InputStream in, String originalFilename, String contentType, String userId) 
+            throws IOException {
+        // Stored under a temporary unique name until the content hash is known
+        String uniqueFilename = newGridFsFilename(originalFilename);
+        
+        MessageDigest digest = newSha256();
+        PrefixCapturingInputStream uploadStream = new PrefixCapturingInputStream(
+                new DigestInputStream(in, digest), metadataPrefixBytes);
+        org.bson.types.ObjectId gridFsFileId = gridFsTemplate.store(
+                uploadStream,
+                uniqueFilename,
+                contentType,
+                new com.mongodb.BasicDBObject("userId", userId)
+        );
+        log.info("File saved to GridFS with ID: {}", gridFsFileId);
+        
+        return toStoredUpload(gridFsFileId, originalFilename, contentType, userId,
+                uploadStream.getPrefix(), HexFormat.of().formatHex(digest.digest()));
     }
-
+    
+    /**
+     * Take over a complete file that was written to GridFS by another path (e.g. chunked upload).
+     * The file is read back once to compute its hash and capture the header prefix.
+     * 
+     * @param gridFsFileId Id of the complete GridFS file
+     */
+    public StoredUpload adoptStoredFile(org.bson.types.ObjectId gridFsFileId, String originalFilename, 
+            String contentType, String userId) throws IOException {
+        com.mongodb.client.gridfs.model.GridFSFile file = gridFsTemplate.findOne(
+                new org.springframework.data.mongodb.core.query.Query(
+                        org.springframework.data.mongodb.core.query.Criteria.where("_id").is(gridFsFileId)));
+        if (file == null) {
+            throw new RuntimeException("Stored file not found: " + gridFsFileId);
+        }
+        
+        MessageDigest digest = newSha256();
+        try (InputStream stored = gridFsTemplate.getResource(file).getInputStream()) {
+            PrefixCapturingInputStream in = new PrefixCapturingInputStream(
+                    new DigestInputStream(stored, digest), metadataPrefixBytes);
+            in.transferTo(OutputStream.nullOutputStream());
+            return toStoredUpload(gridFsFileId, originalFilename, contentType, userId,
+                    in.getPrefix(), HexFormat.of().formatHex(digest.digest()));
+        }
+    }
+    
+    /**
+     * Generate a temporary GridFS filename for a new original: random UUID + original extension
+     */
+    public String newGridFsFilename(String originalFilename) {
+        return UUID.randomUUID().toString() + getFileExtension(originalFilename);
+    }
+    
+    /**
+     * Get the hashes (SHA-256, hex) of the given list that the user already has photos for,
+     * so clients can skip transferring them
+     */
+    public List<String> findExistingHashes(List<String> hashes, String userId) {
+        List<String> normalized = hashes.stream()
+                .map(hash -> hash.toLowerCase(java.util.Locale.ROOT))
+                .distinct()
+                .collect(Collectors.toList());
+        return photoRepository.findByUserIdAndContentHashIn(userId, normalized).stream()
+                .map(Photo::getContentHash)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Point the stored file at its content-addressed blob (reusing an existing one for duplicates)
+     */
+    private StoredUpload toStoredUpload(org.bson.types.ObjectId gridFsFileId, String originalFilename, 
+            String contentType, String userId, byte[] headerPrefix, String contentHash) {
+        String filename = blobService.claim(contentHash, gridFsFileId, getFileExtension(originalFilename), contentType);
+        return new StoredUpload(filename, originalFilename, contentType, userId,
+                headerPrefix, contentHash);
+    }
+    
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /**
+     * Turn a stored upload into a saved Photo (second stage of the upload pipeline):
+     * metadata extraction, embedded thumbnail fast path, insert, background renditions
+     * 
+     * @param latitude Client-provided GPS (overrides EXIF), or null
+     * @param longitude Client-provided GPS (overrides EXIF), or null
+     * @return PhotoDTO of the saved photo
+     */
+    public PhotoDTO processStoredUpload(StoredUpload upload, String description, Double latitude, Double longitude) {
+        Photo photo = preparePhoto(upload, description, latitude, longitude);
+        
+        // Save to database
+        Photo savedPhoto;
+        try {
+            savedPhoto = photoRepository.insert(photo);
+        } catch (RuntimeException e) {
+            thumbnailService.deleteRenditions(photo.getId());
+            throw e;
+        }
+        log.info("Photo saved to database with ID: {}", savedPhoto.getId());
+        
+        thumbnailService.generateAsync(savedPhoto);
+        
+        return convertToDTO(savedPhoto);
+    }
+    
+    /**
+     * Release the blob reference of an upload that will not become a Photo
+     */
+    public void discardStoredUpload(StoredUpload upload) {
+        blobService.release(upload.contentHash(), upload.filename());
+        log.info("Discarded stored upload: {}", upload.filename());
+    }
+    
+    /**
+     * Build the (unsaved) Photo document for a stored upload
+     */
+    private Photo preparePhoto(StoredUpload upload, String description, Double latitude, Double longitude) {
+        String originalFilename = upload.originalFilename();
+        String uniqueFilename = upload.filename();
+        
+        // Create Photo document
+        // The id is assigned up front so renditions stored before the insert can reference it
+        Photo photo = new Photo();
+        photo.setId(new org.bson.types.ObjectId().toHexString());
+        photo.setFileName(originalFilename);
+        // URL format: /api/photos/image/{uniqueFilename}
+        photo.setUrl("/api/photos/image/" + uniqueFilename);
+        photo.setDescription(description);
+        photo.setUserId(upload.userId());
+        photo.setContentHash(upload.contentHash());
+        
+        // Parse metadata once from the captured header prefix (isolated, time-boxed)
+        byte[] headerPrefix = upload.headerPrefix();
+        PhotoMetadata metadata = metadataExtractionService.extract(headerPrefix, originalFilename);
+        
+        // logic for GPS
+        if (latitude != null && longitude != null) {
+            // Use provided GPS
+            photo.setCoordinates(latitude, longitude);
+            log.info("Using provided GPS coordinates - Lat: {}, Lon: {}", latitude, longitude);
+        } else if (metadata.hasGps()) {
+            photo.setCoordinates(metadata.latitude(), metadata.longitude());
+            log.info("GPS coordinates extracted - Lat: {}, Lon: {}", 
+                    metadata.latitude(), metadata.longitude());
+        } else {
+            log.warn("No GPS coordinates found in image: {}", originalFilename);
+        }
+        
+        // Date taken and orientation always come from EXIF
+        photo.setTakenAt(metadata.takenAt());
+        photo.setOrientation(metadata.orientation());
+        
+        // Fast path: the camera's embedded EXIF preview becomes the marker right away
+        byte[] embeddedThumbnail = EmbeddedThumbnailExtractor.extract(headerPrefix, metadata);
+        if (embeddedThumbnail != null) {
+            photo.getRenditions().putAll(thumbnailService.storeEmbeddedThumbnail(
+                    photo.getId(), upload.userId(), embeddedThumbnail, metadata.orientation()));
+            photo.setBlurHash(thumbnailService.blurHash(embeddedThumbnail, metadata.orientation()));
+        }
+        
+        // Original serves as thumbnail until ThumbnailService has generated the renditions
+        photo.setThumbnailUrl(photo.getRenditions().getOrDefault(
+                ThumbnailService.Rendition.MARKER.key(), photo.getUrl()));
+        
+        return photo;
+    }
+    
     /**
      * Get file extension from filename
      */
@@ -219,9 +650,16 @@ public class PhotoService {
         String url = photo.getUrl();
         if (url != null && url.startsWith("/api/photos/image/")) {
             String filename = url.substring("/api/photos/image/".length());
-            gridFsTemplate.delete(new org.springframework.data.mongodb.core.query.Query(
-                    org.springframework.data.mongodb.core.query.Criteria.where("filename").is(filename)));
-            log.info("Deleted file from GridFS: {}", filename);
+            if (photo.getContentHash() != null) {
+                // Shared blob: the GridFS file goes away with its last reference
+                blobService.release(photo.getContentHash(), filename);
+            } else {
+                gridFsTemplate.delete(new org.springframework.data.mongodb.core.query.Query(
+                        org.springframework.data.mongodb.core.query.Criteria.where("filename").is(filename)));
+                renditionService.deleteRenditions(filename);
+                log.info("Deleted file from GridFS: {}", filename);
+            }
+            thumbnailService.deleteRenditions(id);
         } else if (url != null && url.startsWith("/uploads/")) {
              // Legacy deletion for local files (best effort)
              try {
@@ -249,8 +687,7 @@ public class PhotoService {
         Photo photo = photoRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Photo not found with id: " + id));
         
-        photo.setLatitude(latitude);
-        photo.setLongitude(longitude);
+        photo.setCoordinates(latitude, longitude);
         
         Photo updatedPhoto = photoRepository.save(photo);
         log.info("Updated location for photo {}: ({}, {})", id, latitude, longitude);
@@ -267,6 +704,9 @@ public class PhotoService {
         dto.setFileName(photo.getFileName());
         dto.setUrl(photo.getUrl());
         dto.setThumbnailUrl(photo.getThumbnailUrl());
+        dto.setContentHash(photo.getContentHash());
+        dto.setRenditions(photo.getRenditions());
+        dto.setBlurHash(photo.getBlurHash());
         dto.setLatitude(photo.getLatitude());
         dto.setLongitude(photo.getLongitude());
         dto.setTakenAt(photo.getTakenAt());
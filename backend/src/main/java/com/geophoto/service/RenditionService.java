@@ -0,0 +1,415 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Photo;
+import com.geophoto.util.ImageResizer;
+import com.mongodb.BasicDBObject;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Rendition Service
+ * Resized renditions of stored images, generated on demand for /api/photos/image/{filename}?w=&h=&fit=&q=
+ * - sizes and qualities are limited to allow-lists (app.image.renditions.*), so the number of
+ *   variants per image is bounded
+ * - lookups go memory -> local disk -> GridFS -> generate; a generated rendition is written to GridFS
+ *   (shared by all nodes) and to the memory cache when it is small, the local disk cache otherwise
+ * - concurrent requests for the same rendition wait for a single generation
+ * - renditions are named after their source and parameters and never change, so the name doubles as ETag;
+ *   the source is the filename of the URL (for originals, the upload's own name, see OriginalFileResolver)
+ * - only originals are rendered: renditions, thumbnails and sprite atlases are not valid sources
+ */
+@Service
+@Slf4j
+public class RenditionService {
+
+    private static final String CONTENT_TYPE = "image/jpeg";
+
+    private final GridFsTemplate gridFsTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final BoundedImageDecoder imageDecoder;
+    private final LocalDiskCache diskCache;
+    private final OriginalFileResolver originalFileResolver;
+
+    private final Set<Integer> allowedSizes;
+    private final Set<Integer> allowedQualities;
+    private final int defaultQuality;
+    private final int memoryEntryMaxBytes;
+
+    private final MemoryCache memoryCache;
+    private final Map<String, CompletableFuture<ImageContent>> inFlight = new ConcurrentHashMap<>();
+
+    public RenditionService(
+            GridFsTemplate gridFsTemplate,
+            MongoTemplate mongoTemplate,
+            BoundedImageDecoder imageDecoder,
+            LocalDiskCache diskCache,
+            OriginalFileResolver originalFileResolver,
+            MeterRegistry meterRegistry,
+            @Value("${app.image.renditions.sizes:64,112,200,400,800,1280,1920}") String allowedSizes,
+            @Value("${app.image.renditions.qualities:60,75,80,90}") String allowedQualities,
+            @Value("${app.image.renditions.default-quality:80}") int defaultQuality,
+            @Value("${app.image.cache.memory-max-bytes:67108864}") long memoryMaxBytes,
+            @Value("${app.image.cache.memory-entry-max-bytes:262144}") int memoryEntryMaxBytes) {
+        this.gridFsTemplate = gridFsTemplate;
+        this.mongoTemplate = mongoTemplate;
+        this.imageDecoder = imageDecoder;
+        this.diskCache = diskCache;
+        this.originalFileResolver = originalFileResolver;
+        this.allowedSizes = parseList(allowedSizes);
+        this.allowedQualities = parseList(allowedQualities);
+        this.defaultQuality = defaultQuality;
+        this.memoryEntryMaxBytes = memoryEntryMaxBytes;
+        this.memoryCache = new MemoryCache(memoryMaxBytes, meterRegistry);
+    }
+
+    /**
+     * Requested rendition
+     *
+     * @param width Box width, 0 if unconstrained
+     * @param height Box height, 0 if unconstrained
+     * @param cover Fill the box and crop (otherwise fit inside it)
+     * @param quality JPEG quality in percent
+     */
+    public record RenditionSpec(int width, int height, boolean cover, int quality) {
+        String key() {
+            return "w" + width + "_h" + height + "_" + (cover ? "cover" : "contain") + "_q" + quality;
+        }
+    }
+
+    /**
+     * Validate rendition parameters against the allow-lists
+     *
+     * @param fit "cover" or "contain" (default)
+     * @throws IllegalArgumentException if a parameter is not allowed
+     */
+    public RenditionSpec spec(Integer width, Integer height, String fit, Integer quality) {
+        if (width == null && height == null) {
+            throw new IllegalArgumentException("Width or height is required");
+        }
+        if (width != null && !allowedSizes.contains(width)) {
+            throw new IllegalArgumentException("Width must be one of " + allowedSizes);
+        }
+        if (height != null && !allowedSizes.contains(height)) {
+            throw new IllegalArgumentException("Height must be one of " + allowedSizes);
+        }
+        int q = quality != null ? quality : defaultQuality;
+        if (!allowedQualities.contains(q)) {
+            throw new IllegalArgumentException("Quality must be one of " + allowedQualities);
+        }
+        boolean cover;
+        String mode = fit == null ? "contain" : fit.toLowerCase(Locale.ROOT);
+        switch (mode) {
+            case "cover" -> cover = width != null && height != null;
+            case "contain" -> cover = false;
+            default -> throw new IllegalArgumentException("Fit must be cover or contain");
+        }
+        return new RenditionSpec(width != null ? width : 0, height != null ? height : 0, cover, q);
+    }
+
+    /**
+     * ETag of a rendition (known without any lookup)
+     */
+    public String etag(String sourceFilename, RenditionSpec spec) {
+        return renditionFilename(sourceFilename, spec);
+    }
+
+    /**
+     * Get a rendition, generating it if no tier has it
+     *
+     * @return Rendition, or null if the source image does not exist or is not an original
+     * @throws RuntimeException if the source cannot be decoded
+     */
+    public ImageContent get(String sourceFilename, RenditionSpec spec) {
+        String filename = renditionFilename(sourceFilename, spec);
+        ImageContent cached = fromLocalCaches(filename, true);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<ImageContent> mine = new CompletableFuture<>();
+        CompletableFuture<ImageContent> running = inFlight.putIfAbsent(filename, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            ImageContent content = load(sourceFilename, spec, filename);
+            mine.complete(content);
+            return content;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(filename, mine);
+        }
+    }
+
+    /**
+     * Delete every rendition (and sprite atlas) generated from a source, and this node's cached
+     * copies of them and of the source (called when the source is deleted)
+     */
+    public void deleteRenditions(String sourceFilename) {
+        Query derived = Query.query(Criteria.where("metadata.derivedFrom").is(sourceFilename));
+        gridFsTemplate.find(derived).forEach(file -> diskCache.remove(file.getFilename()));
+        gridFsTemplate.delete(derived);
+        evictCached(sourceFilename);
+    }
+
+    /**
+     * Drop this node's cached copies of a source and its renditions (the source was deleted,
+     * possibly on another node)
+     */
+    public void evictCached(String sourceFilename) {
+        String prefix = baseName(sourceFilename) + "_w";
+        memoryCache.removeByPrefix(prefix);
+        diskCache.removeByPrefix(prefix);
+        diskCache.remove(sourceFilename);
+        originalFileResolver.forget(sourceFilename);
+    }
+
+    /**
+     * @param count Count the lookup as a cache hit or miss (false for the re-check before loading)
+     */
+    private ImageContent fromLocalCaches(String filename, boolean count) {
+        MemoryCache.Cached bytes = count ? memoryCache.get(filename) : memoryCache.peek(filename);
+        if (bytes != null) {
+            return ImageContent.ofBytes(filename, CONTENT_TYPE, bytes.data(), filename, bytes.createdAt(), "memory");
+        }
+        LocalDiskCache.Entry entry = count ? diskCache.get(filename) : diskCache.peek(filename);
+        if (entry != null) {
+            return ImageContent.ofFile(filename, CONTENT_TYPE, entry, filename);
+        }
+        return null;
+    }
+
+    /**
+     * GridFS or generation; runs once per rendition at a time
+     */
+    private ImageContent load(String sourceFilename, RenditionSpec spec, String filename) {
+        // Another generation may have finished since get() missed
+        ImageContent cached = fromLocalCaches(filename, false);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] jpeg;
+        long createdAt;
+        String tier;
+        GridFSFile stored = gridFsTemplate.findOne(Query.query(Criteria.where("filename").is(filename)));
+        try {
+            if (stored != null) {
+                try (InputStream in = gridFsTemplate.getResource(stored).getInputStream()) {
+                    jpeg = in.readAllBytes();
+                }
+                createdAt = stored.getUploadDate().getTime();
+                tier = "gridfs";
+            } else {
+                GridFSFile source = originalFileResolver.find(sourceFilename);
+                if (source == null || !isOriginal(source)) {
+                    return null;
+                }
+                jpeg = generate(source, spec);
+                createdAt = System.currentTimeMillis();
+                tier = "generated";
+                store(sourceFilename, spec, filename, jpeg);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not render " + filename + ": " + e.getMessage(), e);
+        }
+
+        if (jpeg.length <= memoryEntryMaxBytes) {
+            memoryCache.put(filename, new MemoryCache.Cached(jpeg, createdAt));
+        } else {
+            try {
+                return ImageContent.ofFile(filename, CONTENT_TYPE, diskCache.put(filename, jpeg), filename);
+            } catch (IOException e) {
+                log.warn("Could not cache rendition {} on disk: {}", filename, e.getMessage());
+            }
+        }
+        return ImageContent.ofBytes(filename, CONTENT_TYPE, jpeg, filename, createdAt, tier);
+    }
+
+    private byte[] generate(GridFSFile source, RenditionSpec spec) throws IOException {
+        long start = System.currentTimeMillis();
+        Integer orientation = orientation(source.getFilename());
+        // Orientations 5-8 swap the axes: decode against the box as seen in the stored pixels
+        boolean swap = orientation != null && orientation >= 5 && orientation <= 8;
+        int decodeWidth = swap ? spec.height() : spec.width();
+        int decodeHeight = swap ? spec.width() : spec.height();
+
+        BufferedImage image;
+        try (InputStream in = gridFsTemplate.getResource(source).getInputStream();
+             BoundedImageDecoder.DecodedImage decoded = imageDecoder.decodeForBox(
+                     in, decodeWidth, decodeHeight, spec.cover())) {
+            if (decoded == null) {
+                throw new IOException("Unsupported image format");
+            }
+            image = ImageResizer.resizeToBox(ImageResizer.applyOrientation(decoded.getImage(), orientation),
+                    spec.width(), spec.height(), spec.cover());
+        }
+        byte[] jpeg = ImageResizer.encodeJpeg(image, spec.quality() / 100f);
+        log.debug("Rendered {} {} as {}x{} ({} bytes) in {} ms", source.getFilename(), spec.key(),
+                image.getWidth(), image.getHeight(), jpeg.length, System.currentTimeMillis() - start);
+        return jpeg;
+    }
+
+    private static boolean isOriginal(GridFSFile file) {
+        Document metadata = file.getMetadata();
+        return metadata == null || (!metadata.containsKey("rendition") && !metadata.containsKey("atlas"));
+    }
+
+    private void store(String sourceFilename, RenditionSpec spec, String filename, byte[] jpeg) {
+        // Two nodes rendering at once may both store it; lookups take either copy
+        gridFsTemplate.store(
+                new ByteArrayInputStream(jpeg),
+                filename,
+                CONTENT_TYPE,
+                new BasicDBObject("derivedFrom", sourceFilename).append("rendition", spec.key()));
+    }
+
+    /**
+     * EXIF orientation recorded on the photo that uses the source (identical content shares the value)
+     */
+    private Integer orientation(String sourceFilename) {
+        Query query = Query.query(Criteria.where("url").is(ThumbnailService.IMAGE_URL_PREFIX + sourceFilename));
+        query.fields().include("orientation");
+        Photo photo = mongoTemplate.findOne(query, Photo.class);
+        return photo != null ? photo.getOrientation() : null;
+    }
+
+    private static String renditionFilename(String sourceFilename, RenditionSpec spec) {
+        return baseName(sourceFilename) + "_" + spec.key() + ".jpg";
+    }
+
+    private static String baseName(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 ? filename.substring(0, dot) : filename;
+    }
+
+    private static Set<Integer> parseList(String values) {
+        return Arrays.stream(values.split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .map(Integer::valueOf)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Byte-bounded LRU of small renditions.
+     * Metrics: geophoto.image.cache.requests{tier=memory,result}, geophoto.image.cache.evictions{tier=memory},
+     * geophoto.image.cache.size{tier=memory}, geophoto.image.cache.entries{tier=memory}
+     */
+    private static class MemoryCache {
+        record Cached(byte[] data, long createdAt) {
+        }
+
+        private final long maxBytes;
+        private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(256, 0.75f, true);
+        private long totalBytes;
+
+        private final Counter hits;
+        private final Counter misses;
+        private final Counter evictions;
+
+        MemoryCache(long maxBytes, MeterRegistry meterRegistry) {
+            this.maxBytes = maxBytes;
+            this.hits = requests(meterRegistry, "hit");
+            this.misses = requests(meterRegistry, "miss");
+            this.evictions = Counter.builder("geophoto.image.cache.evictions")
+                    .description("Entries evicted from an image cache")
+                    .tag("tier", "memory")
+                    .register(meterRegistry);
+            Gauge.builder("geophoto.image.cache.size", this, MemoryCache::totalBytes)
+                    .description("Bytes held by an image cache")
+                    .tag("tier", "memory")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            Gauge.builder("geophoto.image.cache.entries", this, MemoryCache::size)
+                    .description("Entries held by an image cache")
+                    .tag("tier", "memory")
+                    .register(meterRegistry);
+        }
+
+        private static Counter requests(MeterRegistry meterRegistry, String result) {
+            return Counter.builder("geophoto.image.cache.requests")
+                    .description("Image cache lookups")
+                    .tag("tier", "memory")
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+
+        Cached get(String key) {
+            Cached cached;
+            synchronized (this) {
+                cached = entries.get(key);
+            }
+            (cached != null ? hits : misses).increment();
+            return cached;
+        }
+
+        synchronized Cached peek(String key) {
+            return entries.get(key);
+        }
+
+        synchronized long totalBytes() {
+            return totalBytes;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void put(String key, Cached value) {
+            Cached previous = entries.put(key, value);
+            if (previous != null) {
+                totalBytes -= previous.data().length;
+            }
+            totalBytes += value.data().length;
+            Iterator<Cached> eldest = entries.values().iterator();
+            while (totalBytes > maxBytes && eldest.hasNext()) {
+                totalBytes -= eldest.next().data().length;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void removeByPrefix(String prefix) {
+            Iterator<Map.Entry<String, Cached>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Cached> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    totalBytes -= entry.getValue().data().length;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
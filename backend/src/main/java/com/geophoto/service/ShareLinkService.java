@@ -352,6 +352,7 @@ public class ShareLinkService {
                 photoDTO.setId(photo.getId());
                 photoDTO.setFileName(photo.getFileName());
                 photoDTO.setUrl(photo.getUrl());
+                photoDTO.setBlurHash(photo.getBlurHash());
                 photoDTO.setLatitude(photo.getLatitude());
                 photoDTO.setLongitude(photo.getLongitude());
                 photoDTO.setTakenAt(photo.getTakenAt());
@@ -379,6 +380,7 @@ public class ShareLinkService {
                                 p.setId(photo.getId());
                                 p.setFileName(photo.getFileName());
                                 p.setUrl(photo.getUrl());
+                                p.setBlurHash(photo.getBlurHash());
                                 p.setLatitude(photo.getLatitude());
                                 p.setLongitude(photo.getLongitude());
                                 p.setTakenAt(photo.getTakenAt());
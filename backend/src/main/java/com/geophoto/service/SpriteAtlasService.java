@@ -0,0 +1,406 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.SpriteAtlasDTO;
+import com.geophoto.entity.Photo;
+import com.geophoto.util.GeoQueries;
+import com.geophoto.util.ImageResizer;
+import com.mongodb.BasicDBObject;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Sprite Atlas Service
+ * Packs the map marker thumbnails of many photos into a few JPEG atlases, so a map view loads
+ * a handful of images instead of one per marker.
+ * - tiles are the marker rendition (112px square) when the photo has one, otherwise an on-demand
+ *   rendition of the original (RenditionService)
+ * - photos are grouped by source image, ordered by photo _id and cut into atlases of at most
+ *   app.image.atlas.max-tiles tiles; the layout follows from the list of sources alone, and new
+ *   uploads only change the last atlas of a set
+ * - an atlas is named after the SHA-256 of its source list (content key) and stored in GridFS once;
+ *   it is served, cached and revalidated like any other stored image (/api/photos/image/atlas_{key}.jpg)
+ * - missing atlases are generated in the background (atlasExecutor); until then their photos are
+ *   reported as missing and the response is marked pending so clients ask again
+ * - an atlas with a tile that could not be drawn is not stored; its sources are left out of atlases
+ *   for app.image.atlas.failure-retry-ms and then tried again
+ * - metadata.derivedFrom lists the sources, so deleting a source deletes the atlases that contain it
+ *   (RenditionService.deleteRenditions); metadata.lastUsed is refreshed at most daily and atlases
+ *   unused for app.image.atlas.retention-days are deleted
+ */
+@Service
+@Slf4j
+public class SpriteAtlasService {
+
+    public static final int TILE_SIZE = ThumbnailService.Rendition.MARKER.getSize();
+    private static final String FILENAME_PREFIX = "atlas_";
+    private static final String CONTENT_TYPE = "image/jpeg";
+    private static final String FILES_COLLECTION = "fs.files";
+    private static final long TOUCH_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private final GridFsTemplate gridFsTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final RenditionService renditionService;
+    private final LocalDiskCache diskCache;
+    private final ThreadPoolTaskExecutor atlasExecutor;
+
+    private final int maxTiles;
+    private final int maxPhotos;
+    private final float jpegQuality;
+    private final long failureRetryMs;
+    private final long retentionMs;
+
+    /** Atlas filenames being generated on this node */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    /** Source filename -> time until which it is left out of atlases after its tile failed */
+    private final Map<String, Long> failedUntil = new ConcurrentHashMap<>();
+
+    public SpriteAtlasService(
+            GridFsTemplate gridFsTemplate,
+            MongoTemplate mongoTemplate,
+            RenditionService renditionService,
+            LocalDiskCache diskCache,
+            @Qualifier("atlasExecutor") ThreadPoolTaskExecutor atlasExecutor,
+            @Value("${app.image.atlas.max-tiles:256}") int maxTiles,
+            @Value("${app.image.atlas.max-photos:2048}") int maxPhotos,
+            @Value("${app.image.atlas.jpeg-quality:0.8}") float jpegQuality,
+            @Value("${app.image.atlas.failure-retry-ms:300000}") long failureRetryMs,
+            @Value("${app.image.atlas.retention-days:30}") int retentionDays) {
+        this.gridFsTemplate = gridFsTemplate;
+        this.mongoTemplate = mongoTemplate;
+        this.renditionService = renditionService;
+        this.diskCache = diskCache;
+        this.atlasExecutor = atlasExecutor;
+        this.maxTiles = maxTiles;
+        this.maxPhotos = maxPhotos;
+        this.jpegQuality = jpegQuality;
+        this.failureRetryMs = failureRetryMs;
+        this.retentionMs = TimeUnit.DAYS.toMillis(retentionDays);
+    }
+
+    /**
+     * Atlases for the given photos of a user (IDs of other users' photos are reported as missing)
+     */
+    public SpriteAtlasDTO forPhotos(String userId, Collection<String> photoIds) {
+        List<String> ids = photoIds.stream().distinct().limit(maxPhotos).toList();
+        Query query = Query.query(Criteria.where("_id").in(ids).and("userId").is(userId));
+        List<Photo> photos = mongoTemplate.find(withTileFields(query), Photo.class);
+
+        Set<String> found = photos.stream().map(Photo::getId).collect(Collectors.toSet());
+        List<String> missing = ids.stream().filter(id -> !found.contains(id)).toList();
+        return build(photos, missing, ids.size() < photoIds.stream().distinct().count());
+    }
+
+    /**
+     * Atlases for a user's photos inside a bounding box; west > east crosses the antimeridian
+     */
+    public SpriteAtlasDTO forViewport(String userId, double south, double west, double north, double east) {
+        Query query = Query.query(Criteria.where("userId").is(userId)
+                .andOperator(GeoQueries.viewport(south, west, north, east)));
+        query.with(Sort.by("_id")).limit(maxPhotos + 1);
+        List<Photo> photos = mongoTemplate.find(withTileFields(query), Photo.class);
+
+        boolean truncated = photos.size() > maxPhotos;
+        return build(truncated ? photos.subList(0, maxPhotos) : photos, List.of(), truncated);
+    }
+
+    private SpriteAtlasDTO build(List<Photo> photos, List<String> missingIds, boolean truncated) {
+        List<String> missing = new ArrayList<>(missingIds);
+        // Source filename -> photos showing it (identical content shares one tile), in photo _id order
+        Map<String, List<Photo>> bySource = new LinkedHashMap<>();
+        photos.stream().sorted(Comparator.comparing(Photo::getId)).forEach(photo -> {
+            String source = sourceFilename(photo);
+            if (source == null || recentlyFailed(source)) {
+                missing.add(photo.getId());
+            } else {
+                bySource.computeIfAbsent(source, key -> new ArrayList<>()).add(photo);
+            }
+        });
+
+        List<String> sources = new ArrayList<>(bySource.keySet());
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < sources.size(); from += maxTiles) {
+            chunks.add(List.copyOf(sources.subList(from, Math.min(from + maxTiles, sources.size()))));
+        }
+        Map<String, GridFSFile> stored = storedAtlases(chunks.stream().map(SpriteAtlasService::atlasFilename).toList());
+
+        List<SpriteAtlasDTO.Atlas> atlases = new ArrayList<>(chunks.size());
+        boolean pending = false;
+        for (List<String> chunk : chunks) {
+            String filename = atlasFilename(chunk);
+            GridFSFile file = stored.get(filename);
+            if (file == null) {
+                generateAsync(filename, chunk, bySource);
+                pending = true;
+                chunk.forEach(source -> bySource.get(source).forEach(photo -> missing.add(photo.getId())));
+                continue;
+            }
+            touch(file);
+
+            int columns = columns(chunk.size());
+            Map<String, SpriteAtlasDTO.Sprite> sprites = new LinkedHashMap<>();
+            for (int i = 0; i < chunk.size(); i++) {
+                for (Photo photo : bySource.get(chunk.get(i))) {
+                    sprites.put(photo.getId(),
+                            new SpriteAtlasDTO.Sprite((i % columns) * TILE_SIZE, (i / columns) * TILE_SIZE));
+                }
+            }
+            atlases.add(new SpriteAtlasDTO.Atlas(ThumbnailService.IMAGE_URL_PREFIX + filename,
+                    columns * TILE_SIZE, rows(chunk.size()) * TILE_SIZE, sprites));
+        }
+        return new SpriteAtlasDTO(TILE_SIZE, atlases, missing, truncated, pending);
+    }
+
+    /**
+     * Delete atlases no response has used for app.image.atlas.retention-days (superseded
+     * layouts, viewports nobody looks at anymore)
+     */
+    @Scheduled(fixedDelayString = "${app.image.atlas.cleanup-interval-ms:3600000}")
+    public void deleteUnusedAtlases() {
+        Date cutoff = new Date(System.currentTimeMillis() - retentionMs);
+        Query unused = Query.query(Criteria.where("metadata.atlas").is(true).orOperator(
+                Criteria.where("metadata.lastUsed").lt(cutoff),
+                Criteria.where("metadata.lastUsed").exists(false).and("uploadDate").lt(cutoff)));
+        List<String> filenames = new ArrayList<>();
+        gridFsTemplate.find(unused).forEach(file -> filenames.add(file.getFilename()));
+        if (filenames.isEmpty()) {
+            return;
+        }
+        gridFsTemplate.delete(unused);
+        filenames.forEach(diskCache::remove);
+        log.info("Deleted {} sprite atlases unused for {} days", filenames.size(), TimeUnit.MILLISECONDS.toDays(retentionMs));
+    }
+
+    /**
+     * Queue generation of an atlas unless this node is already generating it; when the queue
+     * is full the next request tries again
+     */
+    private void generateAsync(String filename, List<String> sources, Map<String, List<Photo>> bySource) {
+        if (!inFlight.add(filename)) {
+            return;
+        }
+        Map<String, Photo> tiles = new HashMap<>();
+        sources.forEach(source -> tiles.put(source, bySource.get(source).get(0)));
+        try {
+            atlasExecutor.execute(() -> {
+                try {
+                    render(filename, sources, tiles);
+                } catch (RuntimeException e) {
+                    log.warn("Could not generate sprite atlas {}: {}", filename, e.getMessage());
+                } finally {
+                    inFlight.remove(filename);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            inFlight.remove(filename);
+            log.debug("Atlas queue is full, {} is generated on a later request", filename);
+        }
+    }
+
+    /**
+     * Draw and store an atlas; nothing is stored if a tile fails, and its source is left out of
+     * atlases for a while so the others can be built without it
+     */
+    private void render(String filename, List<String> sources, Map<String, Photo> tiles) {
+        long start = System.currentTimeMillis();
+        int columns = columns(sources.size());
+        BufferedImage atlas = new BufferedImage(columns * TILE_SIZE, rows(sources.size()) * TILE_SIZE,
+                BufferedImage.TYPE_INT_RGB);
+        List<String> failed = new ArrayList<>();
+        Graphics2D graphics = atlas.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, atlas.getWidth(), atlas.getHeight());
+            for (int i = 0; i < sources.size(); i++) {
+                String source = sources.get(i);
+                try {
+                    BufferedImage tile = tile(source, tiles.get(source));
+                    graphics.drawImage(tile, (i % columns) * TILE_SIZE, (i / columns) * TILE_SIZE, null);
+                } catch (Exception e) {
+                    log.debug("Atlas {}: no tile for {}: {}", filename, source, e.getMessage());
+                    failed.add(source);
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+        if (!failed.isEmpty()) {
+            long now = System.currentTimeMillis();
+            failedUntil.values().removeIf(until -> until <= now);
+            long retryAt = now + failureRetryMs;
+            failed.forEach(source -> failedUntil.put(source, retryAt));
+            log.info("Sprite atlas {} not stored: {} of {} tiles failed", filename, failed.size(), sources.size());
+            return;
+        }
+
+        byte[] jpeg;
+        try {
+            jpeg = ImageResizer.encodeJpeg(atlas, jpegQuality);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not encode sprite atlas: " + e.getMessage(), e);
+        }
+        // Two nodes generating at once may both store it; lookups take either copy
+        gridFsTemplate.store(
+                new ByteArrayInputStream(jpeg),
+                filename,
+                CONTENT_TYPE,
+                new BasicDBObject("derivedFrom", sources).append("atlas", true).append("lastUsed", new Date()));
+        log.info("Generated sprite atlas {} ({} tiles, {} bytes) in {} ms", filename, sources.size(),
+                jpeg.length, System.currentTimeMillis() - start);
+    }
+
+    private boolean recentlyFailed(String source) {
+        Long until = failedUntil.get(source);
+        if (until == null) {
+            return false;
+        }
+        if (until > System.currentTimeMillis()) {
+            return true;
+        }
+        failedUntil.remove(source, until);
+        return false;
+    }
+
+    /**
+     * Record that the atlas is still in use (at most once a day per atlas)
+     */
+    private void touch(GridFSFile file) {
+        Document metadata = file.getMetadata();
+        Date lastUsed = metadata != null ? metadata.getDate("lastUsed") : null;
+        if (lastUsed == null || System.currentTimeMillis() - lastUsed.getTime() > TOUCH_INTERVAL_MS) {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(file.getObjectId())),
+                    new Update().set("metadata.lastUsed", new Date()), FILES_COLLECTION);
+        }
+    }
+
+    /**
+     * Marker rendition of the photo, or a square rendition of the source
+     */
+    private BufferedImage tile(String source, Photo photo) throws IOException {
+        String marker = photo.getRenditions() != null
+                ? ThumbnailService.filenameFromUrl(photo.getRenditions().get(ThumbnailService.Rendition.MARKER.key()))
+                : null;
+        if (marker != null) {
+            GridFSFile file = gridFsTemplate.findOne(Query.query(Criteria.where("filename").is(marker)));
+            if (file != null) {
+                try (InputStream in = gridFsTemplate.getResource(file).getInputStream()) {
+                    BufferedImage image = ImageIO.read(in);
+                    if (image != null) {
+                        return toTile(image);
+                    }
+                }
+            }
+        }
+
+        ImageContent content = renditionService.get(source,
+                renditionService.spec(TILE_SIZE, TILE_SIZE, "cover", null));
+        if (content == null) {
+            throw new IOException("Source image not found");
+        }
+        try (InputStream in = content.body().open()) {
+            BufferedImage image = ImageIO.read(in);
+            if (image == null) {
+                throw new IOException("Unreadable rendition");
+            }
+            return toTile(image);
+        }
+    }
+
+    private static BufferedImage toTile(BufferedImage image) {
+        return image.getWidth() == TILE_SIZE && image.getHeight() == TILE_SIZE
+                ? image
+                : ImageResizer.resizeToBox(image, TILE_SIZE, TILE_SIZE, true);
+    }
+
+    /**
+     * Stored atlases by filename
+     */
+    private Map<String, GridFSFile> storedAtlases(List<String> filenames) {
+        Map<String, GridFSFile> stored = new HashMap<>();
+        if (!filenames.isEmpty()) {
+            gridFsTemplate.find(Query.query(Criteria.where("filename").in(filenames)))
+                    .forEach(file -> stored.putIfAbsent(file.getFilename(), file));
+        }
+        return stored;
+    }
+
+    /**
+     * GridFS image the tile is made from: the original, or the marker rendition for legacy
+     * (/uploads) photos; null when the photo has neither
+     */
+    private static String sourceFilename(Photo photo) {
+        String original = ThumbnailService.filenameFromUrl(photo.getUrl());
+        if (original != null) {
+            return original;
+        }
+        return photo.getRenditions() != null
+                ? ThumbnailService.filenameFromUrl(photo.getRenditions().get(ThumbnailService.Rendition.MARKER.key()))
+                : null;
+    }
+
+    private static Query withTileFields(Query query) {
+        query.fields().include("url").include("renditions");
+        return query;
+    }
+
+    private static int columns(int tiles) {
+        return (int) Math.ceil(Math.sqrt(tiles));
+    }
+
+    private static int rows(int tiles) {
+        int columns = columns(tiles);
+        return (tiles + columns - 1) / columns;
+    }
+
+    /**
+     * atlas_{sha256 of tile size and sources}.jpg
+     */
+    private static String atlasFilename(List<String> sources) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("v1:" + TILE_SIZE + "\n").getBytes(StandardCharsets.UTF_8));
+            for (String source : sources) {
+                digest.update((source + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return FILENAME_PREFIX + HexFormat.of().formatHex(digest.digest()) + ".jpg";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
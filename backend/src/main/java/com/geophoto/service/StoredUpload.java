@@ -0,0 +1,23 @@
+package com.geophoto.service;
+
+/**
+ * Stored Upload
+ * An original that has been durably written to GridFS but not yet turned into a Photo.
+ * Carries the header prefix captured while streaming so metadata can be parsed without
+ * reading the file back.
+ *
+ * @param filename Public filename of this upload's blob reference (served at /api/photos/image/{filename})
+ * @param originalFilename Filename sent by the client
+ * @param contentType Content type sent by the client
+ * @param userId Owner of the upload
+ * @param headerPrefix First bytes of the file (up to app.upload.metadata-prefix-bytes)
+ * @param contentHash SHA-256 of the file (lowercase hex); the upload holds one reference to that blob
+ */
+public record StoredUpload(
+        String filename,
+        String originalFilename,
+        String contentType,
+        String userId,
+        byte[] headerPrefix,
+        String contentHash) {
+}
@@ -0,0 +1,319 @@
+package com.geophoto.service;
+
+import com.geophoto.entity.Photo;
+import com.geophoto.util.BlurHash;
+import com.geophoto.util.ImageResizer;
+import com.mongodb.BasicDBObject;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.result.UpdateResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thumbnail Service
+ * Generates fixed-size renditions (marker, grid, preview) in the background after upload,
+ * stores them in GridFS and links them to the Photo document.
+ * Small renditions come straight from the embedded EXIF thumbnail when it is large enough.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ThumbnailService {
+
+    public static final String IMAGE_URL_PREFIX = "/api/photos/image/";
+
+    /**
+     * Rendition sizes (longest edge in pixels)
+     */
+    public enum Rendition {
+        /** Circular map marker (56px CSS, 2x for high-DPI screens), center-cropped to a square */
+        MARKER(112, true),
+        /** Library and album grid tiles */
+        GRID(400, false),
+        /** Detail and shared views */
+        PREVIEW(1280, false);
+
+        private final int size;
+        private final boolean squareCrop;
+
+        Rendition(int size, boolean squareCrop) {
+            this.size = size;
+            this.squareCrop = squareCrop;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isSquareCrop() {
+            return squareCrop;
+        }
+
+        /**
+         * Key used in Photo.renditions and in GridFS metadata
+         */
+        public String key() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final GridFsTemplate gridFsTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final BoundedImageDecoder imageDecoder;
+    private final OriginalFileResolver originalFileResolver;
+
+    @Qualifier("thumbnailExecutor")
+    private final ThreadPoolTaskExecutor thumbnailExecutor;
+
+    @Value("${app.thumbnail.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    /**
+     * Store the camera's embedded EXIF preview as every small rendition it is large enough for.
+     * Runs on the upload thread: it only reads the JPEG header of the preview, and decodes the
+     * (~160px) preview itself only when the photo needs rotating or a rendition is square-cropped
+     * (MARKER is stored cropped and scaled exactly like a generated one, since it is never regenerated).
+     *
+     * @param thumbnail Embedded JPEG bytes (see EmbeddedThumbnailExtractor)
+     * @return rendition key -> URL of the stored renditions, empty when the preview is unusable
+     */
+    public Map<String, String> storeEmbeddedThumbnail(String photoId, String userId,
+                                                      byte[] thumbnail, Integer orientation) {
+        Map<String, String> urls = new LinkedHashMap<>();
+        try {
+            int[] size = readDimensions(thumbnail);
+            if (size == null) {
+                return urls;
+            }
+            boolean upright = orientation == null || orientation == 1;
+            BufferedImage oriented = null;
+            for (Rendition rendition : new Rendition[] {Rendition.MARKER, Rendition.GRID}) {
+                int available = rendition.isSquareCrop() ? Math.min(size[0], size[1]) : Math.max(size[0], size[1]);
+                if (available < rendition.getSize()) {
+                    continue;
+                }
+                byte[] jpeg;
+                if (upright && !rendition.isSquareCrop()) {
+                    jpeg = thumbnail;
+                } else {
+                    if (oriented == null) {
+                        oriented = ImageResizer.applyOrientation(
+                                ImageIO.read(new ByteArrayInputStream(thumbnail)), orientation);
+                    }
+                    BufferedImage image = rendition.isSquareCrop()
+                            ? ImageResizer.resize(oriented, rendition.getSize(), true)
+                            : oriented;
+                    jpeg = ImageResizer.encodeJpeg(image, jpegQuality);
+                }
+                urls.put(rendition.key(), store(photoId, userId, rendition, jpeg));
+            }
+            if (!urls.isEmpty()) {
+                log.info("Using embedded {}x{} EXIF thumbnail for photo {}: {}", size[0], size[1], photoId, urls.keySet());
+            }
+        } catch (Exception e) {
+            log.warn("Could not use embedded thumbnail for photo {}: {}", photoId, e.getMessage());
+        }
+        return urls;
+    }
+
+    /**
+     * BlurHash placeholder from the camera's embedded EXIF preview (upload thread: the preview is ~160px)
+     *
+     * @return BlurHash, or null when the preview cannot be decoded
+     */
+    public String blurHash(byte[] thumbnail, Integer orientation) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(thumbnail));
+            return image != null ? BlurHash.encode(ImageResizer.applyOrientation(image, orientation)) : null;
+        } catch (Exception e) {
+            log.debug("Could not compute placeholder from embedded thumbnail: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Queue rendition generation for a saved photo.
+     * Renditions already present in photo.renditions (e.g. from the embedded thumbnail) are skipped;
+     * the BlurHash placeholder is computed from the preview when the photo has none yet.
+     * Never throws: if the queue is full the photo keeps its current thumbnail.
+     *
+     * @param photo Saved photo (must have id and url)
+     */
+    public void generateAsync(Photo photo) {
+        String sourceFilename = filenameFromUrl(photo.getUrl());
+        if (sourceFilename == null) {
+            log.warn("Photo {} is not stored in GridFS, skipping thumbnails", photo.getId());
+            return;
+        }
+        String photoId = photo.getId();
+        String userId = photo.getUserId();
+        Integer orientation = photo.getOrientation();
+        Set<String> existing = photo.getRenditions() != null
+                ? Set.copyOf(photo.getRenditions().keySet())
+                : Set.of();
+        boolean needsBlurHash = photo.getBlurHash() == null;
+        if (existing.size() == Rendition.values().length && !needsBlurHash) {
+            return;
+        }
+        try {
+            thumbnailExecutor.execute(() -> generate(photoId, userId, sourceFilename, orientation, existing, needsBlurHash));
+        } catch (TaskRejectedException e) {
+            log.warn("Thumbnail queue is full, photo {} keeps its current thumbnail", photoId);
+        }
+    }
+
+    /**
+     * Generate the missing renditions for one photo (runs on the thumbnail executor)
+     */
+    void generate(String photoId, String userId, String sourceFilename, Integer orientation, Set<String> existing,
+                  boolean needsBlurHash) {
+        long start = System.currentTimeMillis();
+
+        // Largest first, smaller renditions are scaled from the preview instead of the original.
+        // The decoder's pixel budget is held only until the preview has been produced.
+        GridFSFile source = originalFileResolver.find(sourceFilename);
+        if (source == null) {
+            log.warn("Original {} of photo {} is missing, no renditions generated", sourceFilename, photoId);
+            return;
+        }
+        BufferedImage preview;
+        try (InputStream in = gridFsTemplate.getResource(source).getInputStream();
+             BoundedImageDecoder.DecodedImage decoded = imageDecoder.decode(in, Rendition.PREVIEW.getSize(), false)) {
+            if (decoded == null) {
+                log.warn("No image decoder for {}, photo {} keeps its current thumbnail", sourceFilename, photoId);
+                return;
+            }
+            preview = ImageResizer.applyOrientation(
+                    ImageResizer.resize(decoded.getImage(), Rendition.PREVIEW.getSize(), false), orientation);
+        } catch (Exception e) {
+            log.error("Could not decode original {} for photo {}", sourceFilename, photoId, e);
+            return;
+        }
+
+        Map<String, String> urls = new LinkedHashMap<>();
+        try {
+            for (Rendition rendition : new Rendition[] {Rendition.PREVIEW, Rendition.GRID, Rendition.MARKER}) {
+                if (existing.contains(rendition.key())) {
+                    continue;
+                }
+                BufferedImage image = rendition == Rendition.PREVIEW
+                        ? preview
+                        : ImageResizer.resize(preview, rendition.getSize(), rendition.isSquareCrop());
+                urls.put(rendition.key(), store(photoId, userId, rendition,
+                        ImageResizer.encodeJpeg(image, jpegQuality)));
+            }
+        } catch (Exception e) {
+            log.error("Error generating thumbnails for photo {}", photoId, e);
+            deleteRenditions(photoId, urls.keySet());
+            return;
+        }
+
+        Update update = new Update();
+        if (needsBlurHash) {
+            update.set("blurHash", BlurHash.encode(preview));
+        }
+        if (urls.containsKey(Rendition.MARKER.key())) {
+            update.set("thumbnailUrl", urls.get(Rendition.MARKER.key()));
+        }
+        urls.forEach((key, url) -> update.set("renditions." + key, url));
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("id").is(photoId)), update, Photo.class);
+
+        if (result.getMatchedCount() == 0) {
+            // Photo was deleted while its renditions were being generated
+            deleteRenditions(photoId);
+            return;
+        }
+        log.info("Generated {} renditions for photo {} in {} ms", urls.size(), photoId, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Delete all renditions stored for a photo
+     */
+    public void deleteRenditions(String photoId) {
+        gridFsTemplate.delete(Query.query(Criteria.where("metadata.photoId").is(photoId)));
+    }
+
+    private void deleteRenditions(String photoId, Collection<String> renditionKeys) {
+        if (!renditionKeys.isEmpty()) {
+            gridFsTemplate.delete(Query.query(Criteria.where("metadata.photoId").is(photoId)
+                    .and("metadata.rendition").in(renditionKeys)));
+        }
+    }
+
+    /**
+     * Extract the GridFS filename from an image URL, or null for non-GridFS (legacy) URLs
+     */
+    public static String filenameFromUrl(String url) {
+        if (url == null || !url.startsWith(IMAGE_URL_PREFIX)) {
+            return null;
+        }
+        return url.substring(IMAGE_URL_PREFIX.length());
+    }
+
+    private String store(String photoId, String userId, Rendition rendition, byte[] jpeg) {
+        String filename = renditionFilename(photoId, rendition);
+        gridFsTemplate.store(
+                new ByteArrayInputStream(jpeg),
+                filename,
+                "image/jpeg",
+                new BasicDBObject("userId", userId)
+                        .append("photoId", photoId)
+                        .append("rendition", rendition.key())
+        );
+        return IMAGE_URL_PREFIX + filename;
+    }
+
+    /**
+     * Read width/height from the image header without decoding pixels
+     * @return {width, height} or null if no reader understands the data
+     */
+    private static int[] readDimensions(byte[] image) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                return new int[] {reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * {photoId}_marker.jpg
+     * Named after the photo, not the original: photos with identical content share one original blob
+     * but own their renditions (orientation and deletion are per photo)
+     */
+    static String renditionFilename(String photoId, Rendition rendition) {
+        return photoId + "_" + rendition.key() + ".jpg";
+    }
+}
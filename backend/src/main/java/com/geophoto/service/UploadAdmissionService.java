@@ -0,0 +1,167 @@
+package com.geophoto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upload Admission Service
+ * Limits how many ingest requests run at once so a burst of uploads cannot exhaust
+ * the Mongo connection pool and starve map/list reads:
+ * - a per-user limit, exceeded requests are rejected immediately (one user's bulk import
+ *   never occupies the shared wait queue); only users with a request in flight are tracked
+ * - a global limit with a short, bounded wait queue in front of it
+ *
+ * Metrics: geophoto.upload.admission.wait, geophoto.upload.admission.rejected{reason},
+ * geophoto.upload.admission.active, geophoto.upload.admission.waiting
+ */
+@Service
+@Slf4j
+public class UploadAdmissionService {
+
+    private final int maxPerUser;
+    private final int queueCapacity;
+    private final long maxWaitMs;
+    private final long retryAfterSeconds;
+
+    private final Semaphore globalPermits;
+    /** Admitted requests per user; the entry is removed when its last request completes */
+    private final Map<String, Integer> activePerUser = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final Timer waitTimer;
+    private final Counter rejectedUserLimit;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public UploadAdmissionService(
+            MeterRegistry meterRegistry,
+            @Value("${app.upload.admission.max-concurrent:8}") int maxConcurrent,
+            @Value("${app.upload.admission.max-per-user:2}") int maxPerUser,
+            @Value("${app.upload.admission.queue-capacity:16}") int queueCapacity,
+            @Value("${app.upload.admission.max-wait-ms:5000}") long maxWaitMs,
+            @Value("${app.upload.admission.retry-after-seconds:5}") long retryAfterSeconds) {
+        this.maxPerUser = maxPerUser;
+        this.queueCapacity = queueCapacity;
+        this.maxWaitMs = maxWaitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.globalPermits = new Semaphore(maxConcurrent, true);
+
+        Gauge.builder("geophoto.upload.admission.active", globalPermits, p -> maxConcurrent - p.availablePermits())
+                .description("Ingest requests currently admitted")
+                .register(meterRegistry);
+        Gauge.builder("geophoto.upload.admission.waiting", waiting, AtomicInteger::get)
+                .description("Ingest requests waiting for admission")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("geophoto.upload.admission.wait")
+                .description("Time ingest requests spent waiting for admission")
+                .register(meterRegistry);
+        this.rejectedUserLimit = rejectedCounter(meterRegistry, "user_limit");
+        this.rejectedQueueFull = rejectedCounter(meterRegistry, "queue_full");
+        this.rejectedTimeout = rejectedCounter(meterRegistry, "timeout");
+    }
+
+    /**
+     * Admission held by one ingest request; must be closed when the request completes
+     */
+    public final class Permit implements AutoCloseable {
+        private final String userId;
+        private boolean released;
+
+        private Permit(String userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                globalPermits.release();
+                releaseUser(userId);
+            }
+        }
+    }
+
+    /**
+     * Admit one ingest request for the user, waiting briefly for a global slot
+     *
+     * @throws UploadRejectedException when the user is at their limit, the wait queue is full,
+     *         or no slot frees up within the maximum wait
+     */
+    public Permit acquire(String userId) {
+        if (!tryAcquireUser(userId)) {
+            rejectedUserLimit.increment();
+            throw new UploadRejectedException("Too many concurrent uploads for this user", retryAfterSeconds);
+        }
+
+        boolean admitted = false;
+        try {
+            admitted = globalPermits.tryAcquire();
+            if (!admitted) {
+                admitted = awaitGlobal();
+            }
+            return new Permit(userId);
+        } finally {
+            if (!admitted) {
+                releaseUser(userId);
+            }
+        }
+    }
+
+    private boolean tryAcquireUser(String userId) {
+        boolean[] acquired = {false};
+        activePerUser.compute(userId, (id, active) -> {
+            int current = active != null ? active : 0;
+            if (current >= maxPerUser) {
+                return active;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private void releaseUser(String userId) {
+        activePerUser.computeIfPresent(userId, (id, active) -> active > 1 ? active - 1 : null);
+    }
+
+    private boolean awaitGlobal() {
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            rejectedQueueFull.increment();
+            log.warn("Upload admission queue full ({} waiting), rejecting request", queueCapacity);
+            throw new UploadRejectedException("Server is busy processing uploads", retryAfterSeconds);
+        }
+        long start = System.nanoTime();
+        try {
+            if (!globalPermits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                rejectedTimeout.increment();
+                throw new UploadRejectedException("Server is busy processing uploads", retryAfterSeconds);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadRejectedException("Interrupted while waiting for upload admission", retryAfterSeconds);
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("geophoto.upload.admission.rejected")
+                .description("Ingest requests rejected by admission control")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
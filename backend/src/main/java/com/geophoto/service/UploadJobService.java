@@ -0,0 +1,193 @@
+package com.geophoto.service;
+
+import com.geophoto.dto.PhotoDTO;
+import com.geophoto.dto.UploadJobDTO;
+import com.geophoto.entity.Photo;
+import com.geophoto.entity.UploadJob;
+import com.geophoto.entity.UploadJob.JobStatus;
+import com.geophoto.entity.User;
+import com.geophoto.repository.UploadJobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Upload Job Service
+ * Asynchronous upload mode: the request returns once the bytes are stored in GridFS,
+ * metadata extraction, thumbnails and the Photo insert run on the upload executor
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadJobService {
+    
+    /** Progress once the original is durably stored */
+    private static final int PROGRESS_STORED = 30;
+    /** Progress while metadata is extracted and the photo is saved */
+    private static final int PROGRESS_PROCESSING = 60;
+    
+    private final UploadJobRepository uploadJobRepository;
+    private final PhotoService photoService;
+    private final MongoTemplate mongoTemplate;
+    
+    @Qualifier("uploadExecutor")
+    private final ThreadPoolTaskExecutor uploadExecutor;
+    
+    /** Jobs created before this instant cannot be running in this process */
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    
+    /**
+     * Store the file and queue the rest of the upload pipeline
+     * 
+     * @return UploadJobDTO with the job id to poll
+     * @throws UploadRejectedException if the upload executor is saturated
+     * @throws RuntimeException if the file is empty or cannot be stored
+     */
+    public UploadJobDTO submitUpload(MultipartFile file, String description, Double latitude, Double longitude, User user) {
+        if (file.isEmpty()) {
+            throw new RuntimeException("File is empty");
+        }
+        
+        StoredUpload upload = photoService.storeOriginal(file, user);
+        
+        UploadJob job = new UploadJob();
+        job.setUserId(user.getId());
+        job.setFileName(upload.originalFilename());
+        job.setImageFilename(upload.filename());
+        job.setContentHash(upload.contentHash());
+        job.setProgress(PROGRESS_STORED);
+        UploadJob savedJob;
+        try {
+            savedJob = uploadJobRepository.save(job);
+        } catch (RuntimeException e) {
+            photoService.discardStoredUpload(upload);
+            throw e;
+        }
+        log.info("Upload job {} queued for file: {}", savedJob.getId(), upload.originalFilename());
+        
+        String jobId = savedJob.getId();
+        try {
+            uploadExecutor.execute(() -> process(jobId, upload, description, latitude, longitude));
+        } catch (TaskRejectedException e) {
+            // Running the pipeline here would hold the request thread exactly when the server is saturated
+            log.warn("Upload queue is full, refusing job {}", jobId);
+            photoService.discardStoredUpload(upload);
+            uploadJobRepository.deleteById(jobId);
+            throw new UploadRejectedException("Upload queue is full", 30);
+        }
+        
+        return convertToDTO(savedJob, null);
+    }
+    
+    /**
+     * Queued jobs only live in the executor queue: fail the ones a restart interrupted and release
+     * their stored uploads. A job whose photo was saved before the restart is completed instead.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedJobs() {
+        List<UploadJob> interrupted = mongoTemplate.find(Query.query(
+                Criteria.where("status").in(JobStatus.QUEUED, JobStatus.PROCESSING)
+                        .and("createdAt").lt(startedAt)), UploadJob.class);
+        for (UploadJob job : interrupted) {
+            Photo photo = job.getImageFilename() == null ? null : mongoTemplate.findOne(Query.query(
+                    Criteria.where("url").is(ThumbnailService.IMAGE_URL_PREFIX + job.getImageFilename())), Photo.class);
+            // Conditional on the status, so two nodes starting together release the reference once
+            Query unchanged = Query.query(Criteria.where("id").is(job.getId()).and("status").is(job.getStatus()));
+            if (photo != null) {
+                mongoTemplate.updateFirst(unchanged, new Update()
+                        .set("status", JobStatus.COMPLETED)
+                        .set("progress", 100)
+                        .set("photoId", photo.getId())
+                        .set("updatedAt", LocalDateTime.now()), UploadJob.class);
+                continue;
+            }
+            long failed = mongoTemplate.updateFirst(unchanged, new Update()
+                    .set("status", JobStatus.FAILED)
+                    .set("progress", 100)
+                    .set("error", "Upload was interrupted by a server restart")
+                    .set("updatedAt", LocalDateTime.now()), UploadJob.class).getModifiedCount();
+            if (failed > 0 && job.getImageFilename() != null) {
+                photoService.discardStoredUpload(new StoredUpload(job.getImageFilename(), job.getFileName(),
+                        null, job.getUserId(), null, job.getContentHash()));
+            }
+        }
+        if (!interrupted.isEmpty()) {
+            log.warn("Settled {} upload jobs interrupted by a restart", interrupted.size());
+        }
+    }
+    
+    /**
+     * Get job status for the owner
+     * 
+     * @throws RuntimeException if the job does not exist or belongs to another user
+     */
+    public UploadJobDTO getJob(String id, String userId) {
+        UploadJob job = uploadJobRepository.findByIdAndUserId(id, userId)
+                .orElseThrow(() -> new RuntimeException("Upload job not found with id: " + id));
+        
+        PhotoDTO photo = null;
+        if (job.getPhotoId() != null) {
+            try {
+                photo = photoService.getPhotoById(job.getPhotoId());
+            } catch (RuntimeException e) {
+                log.debug("Photo {} of job {} no longer exists", job.getPhotoId(), id);
+            }
+        }
+        return convertToDTO(job, photo);
+    }
+    
+    /**
+     * Second stage of the upload (runs on the upload executor)
+     */
+    void process(String jobId, StoredUpload upload, String description, Double latitude, Double longitude) {
+        updateJob(jobId, new Update()
+                .set("status", JobStatus.PROCESSING)
+                .set("progress", PROGRESS_PROCESSING));
+        try {
+            PhotoDTO photo = photoService.processStoredUpload(upload, description, latitude, longitude);
+            updateJob(jobId, new Update()
+                    .set("status", JobStatus.COMPLETED)
+                    .set("progress", 100)
+                    .set("photoId", photo.getId()));
+            log.info("Upload job {} completed, photo {}", jobId, photo.getId());
+        } catch (Exception e) {
+            log.error("Upload job {} failed for file: {}", jobId, upload.originalFilename(), e);
+            photoService.discardStoredUpload(upload);
+            updateJob(jobId, new Update()
+                    .set("status", JobStatus.FAILED)
+                    .set("progress", 100)
+                    .set("error", e.getMessage()));
+        }
+    }
+    
+    private void updateJob(String jobId, Update update) {
+        update.set("updatedAt", LocalDateTime.now());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("id").is(jobId)), update, UploadJob.class);
+    }
+    
+    private UploadJobDTO convertToDTO(UploadJob job, PhotoDTO photo) {
+        UploadJobDTO dto = new UploadJobDTO();
+        dto.setId(job.getId());
+        dto.setStatus(job.getStatus());
+        dto.setProgress(job.getProgress());
+        dto.setFileName(job.getFileName());
+        dto.setPhoto(photo);
+        dto.setError(job.getError());
+        dto.setCreatedAt(job.getCreatedAt());
+        dto.setUpdatedAt(job.getUpdatedAt());
+        return dto;
+    }
+}
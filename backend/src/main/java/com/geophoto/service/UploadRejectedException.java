@@ -0,0 +1,21 @@
+package com.geophoto.service;
+
+/**
+ * Thrown when the upload admission control turns a request away (mapped to 429 Too Many Requests)
+ */
+public class UploadRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public UploadRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Suggested delay for the Retry-After header
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,93 @@
+package com.geophoto.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Embedded Thumbnail Extractor
+ * Copies the JPEG preview that cameras store in the EXIF IFD1 out of a file header,
+ * using the offset/length reported by ExifThumbnailDirectory. No pixel decoding.
+ */
+public class EmbeddedThumbnailExtractor {
+
+    private static final byte[] EXIF_PREAMBLE = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * @param header Leading bytes of a JPEG file (must contain the APP1 segment)
+     * @param metadata Metadata parsed from the same header
+     * @return Embedded JPEG thumbnail bytes, or null if there is none or it lies outside the header
+     */
+    public static byte[] extract(byte[] header, PhotoMetadata metadata) {
+        if (header == null || !metadata.hasEmbeddedThumbnail()) {
+            return null;
+        }
+        long offset = metadata.thumbnailOffset();
+        int length = metadata.thumbnailLength();
+
+        // EXIF offsets are relative to the TIFF header inside APP1
+        int tiffStart = findTiffHeader(header);
+        if (tiffStart >= 0) {
+            byte[] thumbnail = copyJpeg(header, tiffStart + offset, length);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+        // Some readers report the offset from the start of the file
+        return copyJpeg(header, offset, length);
+    }
+
+    /**
+     * Walk JPEG segments up to start-of-scan looking for the APP1 Exif segment
+     * @return index of the TIFF header, or -1
+     */
+    private static int findTiffHeader(byte[] data) {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+            return -1;
+        }
+        int pos = 2;
+        while (pos + 4 <= data.length) {
+            if ((data[pos] & 0xFF) != 0xFF) {
+                return -1;
+            }
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++; // fill byte
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                return -1; // start of scan / end of image
+            }
+            int segmentLength = ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            int segmentStart = pos + 4;
+            if (marker == 0xE1 && startsWith(data, segmentStart, EXIF_PREAMBLE)) {
+                return segmentStart + EXIF_PREAMBLE.length;
+            }
+            pos += 2 + segmentLength;
+        }
+        return -1;
+    }
+
+    private static byte[] copyJpeg(byte[] data, long start, int length) {
+        if (start < 0 || start + length > data.length || length < 4) {
+            return null;
+        }
+        int from = (int) start;
+        // Must begin with SOI, otherwise the offset interpretation is wrong
+        if ((data[from] & 0xFF) != 0xFF || (data[from + 1] & 0xFF) != 0xD8) {
+            return null;
+        }
+        return Arrays.copyOfRange(data, from, from + length);
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (offset + prefix.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+package com.geophoto.util;
+
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Geo Queries Utility
+ * Criteria on Photo.location (2dsphere index) for map viewports
+ */
+public class GeoQueries {
+
+    /** Widest longitude span of one polygon; keeps every ring well under a hemisphere */
+    private static final double MAX_PART_SPAN = 90;
+    /** Corners exactly on a pole would collapse two vertices into one */
+    private static final double MAX_LATITUDE = 89.999999;
+
+    /**
+     * Whether a latitude/longitude box is within range and has an area; west > east crosses the
+     * antimeridian, so west = 180 / east = -180 is as empty as west == east
+     */
+    public static boolean isValidBox(double south, double west, double north, double east) {
+        return south < north && south >= -90 && north <= 90
+                && west >= -180 && west <= 180 && east >= -180 && east <= 180
+                && longitudeSpan(west, east) > 0;
+    }
+
+    /**
+     * Photos inside a latitude/longitude box; west > east crosses the antimeridian.
+     * @throws IllegalArgumentException if the box is out of range or has no area (see isValidBox)
+     * The $geoWithin part uses the index; its edges are geodesics, so the plain latitude/longitude
+     * ranges are added to keep exactly the box a map shows.
+     */
+    public static Criteria viewport(double south, double west, double north, double east) {
+        if (!isValidBox(south, west, north, east)) {
+            throw new IllegalArgumentException("Invalid viewport");
+        }
+        Criteria longitude = west <= east
+                ? Criteria.where("longitude").gte(west).lte(east)
+                : new Criteria().orOperator(Criteria.where("longitude").gte(west), Criteria.where("longitude").lte(east));
+        List<Criteria> parts = box(south, west, north, east).stream()
+                .map(part -> Criteria.where("location").within(part))
+                .toList();
+        Criteria location = parts.size() == 1 ? parts.get(0) : new Criteria().orOperator(parts);
+        return new Criteria().andOperator(
+                location,
+                Criteria.where("latitude").gte(south).lte(north),
+                longitude);
+    }
+
+    /**
+     * Photos inside a polygon
+     *
+     * @param vertices [longitude, latitude] pairs, at least 3; the ring is closed if needed
+     * @throws IllegalArgumentException if the polygon is malformed
+     */
+    public static Criteria polygon(List<double[]> vertices) {
+        if (vertices == null || vertices.size() < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 points");
+        }
+        List<Point> ring = new ArrayList<>(vertices.size() + 1);
+        for (double[] vertex : vertices) {
+            if (vertex.length != 2 || Math.abs(vertex[0]) > 180 || Math.abs(vertex[1]) > 90) {
+                throw new IllegalArgumentException("Polygon points must be [longitude, latitude]");
+            }
+            ring.add(new Point(vertex[0], vertex[1]));
+        }
+        if (!ring.get(0).equals(ring.get(ring.size() - 1))) {
+            ring.add(ring.get(0));
+        }
+        return Criteria.where("location").within(new GeoJsonPolygon(ring));
+    }
+
+    /**
+     * Box as polygons of at most MAX_PART_SPAN degrees of longitude each, so even a whole-world
+     * viewport is made of valid GeoJSON polygons. The polygons cover the box; the extra area is
+     * removed by the latitude range in viewport().
+     */
+    static List<GeoJsonPolygon> box(double south, double west, double north, double east) {
+        double span = longitudeSpan(west, east);
+        int parts = Math.max(1, (int) Math.ceil(span / MAX_PART_SPAN));
+        // An edge between two points of equal latitude bends towards the pole, reaching
+        // atan(tan(lat) / cos(dLon / 2)) halfway; move the edges that bend into the box outwards
+        double halfPartCos = Math.cos(Math.toRadians(span / parts / 2));
+        double bottom = Math.max(-MAX_LATITUDE, south > 0 ? widen(south, halfPartCos) : south);
+        double top = Math.min(MAX_LATITUDE, north < 0 ? widen(north, halfPartCos) : north);
+
+        List<GeoJsonPolygon> polygons = new ArrayList<>(parts);
+        for (int k = 0; k < parts; k++) {
+            double from = normalizeLongitude(west + span * k / parts);
+            double to = normalizeLongitude(west + span * (k + 1) / parts);
+            polygons.add(new GeoJsonPolygon(
+                    new Point(from, bottom), new Point(to, bottom), new Point(to, top),
+                    new Point(from, top), new Point(from, bottom)));
+        }
+        return polygons;
+    }
+
+    private static double longitudeSpan(double west, double east) {
+        return west <= east ? east - west : east + 360 - west;
+    }
+
+    private static double widen(double latitude, double halfPartCos) {
+        return Math.toDegrees(Math.atan(Math.tan(Math.toRadians(latitude)) * halfPartCos));
+    }
+
+    private static double normalizeLongitude(double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude;
+    }
+}
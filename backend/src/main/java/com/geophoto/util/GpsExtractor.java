@@ -3,16 +3,27 @@ package com.geophoto.util;
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
 import com.drew.lang.GeoLocation;
+import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.exif.ExifThumbnailDirectory;
 import com.drew.metadata.exif.GpsDirectory;
+import com.drew.metadata.jpeg.JpegDirectory;
+import com.drew.metadata.png.PngDirectory;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.Date;
+import java.util.TimeZone;
 
 /**
  * GPS Extractor Utility
@@ -20,9 +31,123 @@ import java.util.Date;
  */
 @Slf4j
 public class GpsExtractor {
-    
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * Extract all supported metadata from an image file with a single header-only parse
+     * @return PhotoMetadata (never null, fields are null when not available)
+     */
+    public static PhotoMetadata extract(File imageFile) throws ImageProcessingException, IOException {
+        try (InputStream in = new FileInputStream(imageFile)) {
+            return extract(in, imageFile.getName());
+        }
+    }
+
+    /**
+     * Extract all supported metadata from an input stream with a single header-only parse
+     * (reads at most {@link HeaderMetadataReader#DEFAULT_MAX_BYTES})
+     * @return PhotoMetadata (never null, fields are null when not available)
+     */
+    public static PhotoMetadata extract(InputStream inputStream, String filename) throws ImageProcessingException, IOException {
+        return extract(inputStream, filename, HeaderMetadataReader.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Extract all supported metadata from an input stream, reading at most maxBytes
+     * @return PhotoMetadata (never null, fields are null when not available)
+     */
+    public static PhotoMetadata extract(InputStream inputStream, String filename, long maxBytes) 
+            throws ImageProcessingException, IOException {
+        Metadata metadata = HeaderMetadataReader.readMetadata(inputStream, maxBytes);
+        return extract(metadata, filename);
+    }
+
+    /**
+     * Extract all supported metadata from an in-memory header prefix (e.g. captured during upload)
+     * @return PhotoMetadata (never null, fields are null when not available)
+     */
+    public static PhotoMetadata extract(byte[] headerBytes, String filename) throws ImageProcessingException, IOException {
+        Metadata metadata = HeaderMetadataReader.readMetadata(new ByteArrayInputStream(headerBytes), headerBytes.length);
+        return extract(metadata, filename);
+    }
+
+    /**
+     * Build PhotoMetadata from already parsed metadata
+     */
+    public static PhotoMetadata extract(Metadata metadata, String filename) {
+        Double latitude = null;
+        Double longitude = null;
+        Double altitude = null;
+        GpsDirectory gps = metadata.getFirstDirectoryOfType(GpsDirectory.class);
+        if (gps != null) {
+            GeoLocation location = gps.getGeoLocation();
+            if (location != null) {
+                latitude = location.getLatitude();
+                longitude = location.getLongitude();
+            }
+            altitude = gps.getDoubleObject(GpsDirectory.TAG_ALTITUDE);
+            Integer altitudeRef = gps.getInteger(GpsDirectory.TAG_ALTITUDE_REF);
+            if (altitude != null && altitudeRef != null && altitudeRef == 1) {
+                altitude = -altitude;
+            }
+        }
+
+        LocalDateTime takenAt = null;
+        ZoneOffset takenAtOffset = null;
+        Integer width = null;
+        Integer height = null;
+        ExifSubIFDDirectory exif = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+        if (exif != null) {
+            // Read as UTC so the LocalDateTime is exactly the camera wall-clock time
+            Date date = exif.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL,
+                    exif.getString(ExifSubIFDDirectory.TAG_SUBSECOND_TIME_ORIGINAL), UTC);
+            if (date != null) {
+                takenAt = LocalDateTime.ofInstant(date.toInstant(), ZoneOffset.UTC);
+            }
+            takenAtOffset = parseOffset(exif.getString(ExifSubIFDDirectory.TAG_TIME_ZONE_ORIGINAL));
+            width = exif.getInteger(ExifSubIFDDirectory.TAG_EXIF_IMAGE_WIDTH);
+            height = exif.getInteger(ExifSubIFDDirectory.TAG_EXIF_IMAGE_HEIGHT);
+        }
+
+        // Frame header dimensions are authoritative over the EXIF copy
+        JpegDirectory jpeg = metadata.getFirstDirectoryOfType(JpegDirectory.class);
+        PngDirectory png = metadata.getFirstDirectoryOfType(PngDirectory.class);
+        if (jpeg != null && jpeg.containsTag(JpegDirectory.TAG_IMAGE_WIDTH)) {
+            width = jpeg.getInteger(JpegDirectory.TAG_IMAGE_WIDTH);
+            height = jpeg.getInteger(JpegDirectory.TAG_IMAGE_HEIGHT);
+        } else if (png != null && png.containsTag(PngDirectory.TAG_IMAGE_WIDTH)) {
+            width = png.getInteger(PngDirectory.TAG_IMAGE_WIDTH);
+            height = png.getInteger(PngDirectory.TAG_IMAGE_HEIGHT);
+        }
+
+        Integer orientation = null;
+        String cameraMake = null;
+        String cameraModel = null;
+        ExifIFD0Directory ifd0 = metadata.getFirstDirectoryOfType(ExifIFD0Directory.class);
+        if (ifd0 != null) {
+            orientation = ifd0.getInteger(ExifIFD0Directory.TAG_ORIENTATION);
+            cameraMake = trimToNull(ifd0.getString(ExifIFD0Directory.TAG_MAKE));
+            cameraModel = trimToNull(ifd0.getString(ExifIFD0Directory.TAG_MODEL));
+        }
+
+        Long thumbnailOffset = null;
+        Integer thumbnailLength = null;
+        ExifThumbnailDirectory thumbnail = metadata.getFirstDirectoryOfType(ExifThumbnailDirectory.class);
+        if (thumbnail != null) {
+            thumbnailOffset = getLong(thumbnail, ExifThumbnailDirectory.TAG_THUMBNAIL_OFFSET);
+            thumbnailLength = thumbnail.getInteger(ExifThumbnailDirectory.TAG_THUMBNAIL_LENGTH);
+        }
+
+        PhotoMetadata result = new PhotoMetadata(latitude, longitude, altitude, takenAt, takenAtOffset,
+                orientation, width, height, cameraMake, cameraModel, thumbnailOffset, thumbnailLength);
+        log.debug("Extracted metadata from {}: {}", filename, result);
+        return result;
+    }
+
     /**
      * Extract GPS coordinates from image file
+     * Prefer {@link #extract(File)} when more than one field is needed
      * @return GeoLocation object containing latitude and longitude, or null if not available
      */
     public static GeoLocation extractGpsCoordinates(File imageFile) throws ImageProcessingException, IOException {
@@ -32,28 +157,30 @@ public class GpsExtractor {
 
     /**
      * Extract GPS coordinates from input stream
+     * Prefer {@link #extract(InputStream, String)} when more than one field is needed
      * @return GeoLocation object containing latitude and longitude, or null if not available
      */
-    public static GeoLocation extractGpsCoordinates(java.io.InputStream inputStream, String filename) throws ImageProcessingException, IOException {
+    public static GeoLocation extractGpsCoordinates(InputStream inputStream, String filename) throws ImageProcessingException, IOException {
         Metadata metadata = ImageMetadataReader.readMetadata(inputStream);
         return extractGpsFromMetadata(metadata, filename);
     }
 
     private static GeoLocation extractGpsFromMetadata(Metadata metadata, String filename) {
         GpsDirectory gpsDirectory = metadata.getFirstDirectoryOfType(GpsDirectory.class);
-        
+
         if (gpsDirectory != null && gpsDirectory.getGeoLocation() != null) {
             GeoLocation location = gpsDirectory.getGeoLocation();
             log.info("Extracted GPS coordinates: Lat={}, Lon={}", location.getLatitude(), location.getLongitude());
             return location;
         }
-        
+
         log.warn("No GPS coordinates found in image: {}", filename);
         return null;
     }
-    
+
     /**
      * Extract date/time when photo was taken
+     * Prefer {@link #extract(File)} when more than one field is needed
      * @return LocalDateTime object or null if not available
      */
     public static LocalDateTime extractDateTaken(File imageFile) throws ImageProcessingException, IOException {
@@ -63,16 +190,17 @@ public class GpsExtractor {
 
     /**
      * Extract date/time when photo was taken from input stream
+     * Prefer {@link #extract(InputStream, String)} when more than one field is needed
      * @return LocalDateTime object or null if not available
      */
-    public static LocalDateTime extractDateTaken(java.io.InputStream inputStream, String filename) throws ImageProcessingException, IOException {
+    public static LocalDateTime extractDateTaken(InputStream inputStream, String filename) throws ImageProcessingException, IOException {
         Metadata metadata = ImageMetadataReader.readMetadata(inputStream);
         return extractDateTakenFromMetadata(metadata, filename);
     }
 
     private static LocalDateTime extractDateTakenFromMetadata(Metadata metadata, String filename) {
         ExifSubIFDDirectory directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-        
+
         if (directory != null) {
             Date date = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
             if (date != null) {
@@ -83,9 +211,33 @@ public class GpsExtractor {
                 return dateTime;
             }
         }
-        
+
         log.warn("No date taken found in image: {}", filename);
         return null;
     }
-}
 
+    private static ZoneOffset parseOffset(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return ZoneOffset.of(value.trim());
+        } catch (DateTimeException e) {
+            log.debug("Ignoring invalid EXIF offset: {}", value);
+            return null;
+        }
+    }
+
+    private static Long getLong(Directory directory, int tagType) {
+        Integer value = directory.getInteger(tagType);
+        return value != null ? Long.valueOf(value & 0xFFFFFFFFL) : null;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
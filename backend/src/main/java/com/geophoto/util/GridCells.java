@@ -0,0 +1,65 @@
+package com.geophoto.util;
+
+/**
+ * Grid Cells Utility
+ * Web Mercator quadkeys stored on Photo.gridCell: one digit (0-3) per zoom level, so the first z
+ * characters name the map tile containing the photo at zoom z and photos can be grouped per
+ * cell at any zoom by a prefix of the key.
+ */
+public class GridCells {
+
+    /** Zoom level of the stored keys (cells of about 2 cm at the equator) */
+    public static final int MAX_LEVEL = 24;
+
+    /** Web Mercator stops at this latitude; photos beyond it fall into the edge row */
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * Quadkey of a point at MAX_LEVEL, or null if the coordinates are missing or out of range
+     */
+    public static String cell(Double latitude, Double longitude) {
+        if (latitude == null || longitude == null || Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            return null;
+        }
+        long size = 1L << MAX_LEVEL;
+        long x = clamp((long) Math.floor(longitudeToX(longitude) * size), size - 1);
+        long y = clamp((long) Math.floor(latitudeToY(latitude) * size), size - 1);
+
+        char[] key = new char[MAX_LEVEL];
+        for (int level = 0; level < MAX_LEVEL; level++) {
+            int shift = MAX_LEVEL - 1 - level;
+            key[level] = (char) ('0' + ((x >> shift) & 1) + 2 * ((y >> shift) & 1));
+        }
+        return new String(key);
+    }
+
+    /**
+     * Deepest level, at most maxLevel, at which a latitude/longitude box spans no more than
+     * maxCells cells; west > east crosses the antimeridian
+     */
+    public static int level(int maxLevel, double south, double west, double north, double east, int maxCells) {
+        double width = west <= east ? (east - west) / 360 : (east + 360 - west) / 360;
+        double height = Math.abs(latitudeToY(south) - latitudeToY(north));
+        int level = Math.max(0, Math.min(maxLevel, MAX_LEVEL));
+        // A box that does not line up with the grid touches one more cell on each axis
+        while (level > 0 && (Math.ceil(width * (1L << level)) + 1) * (Math.ceil(height * (1L << level)) + 1) > maxCells) {
+            level--;
+        }
+        return level;
+    }
+
+    /** Longitude as a fraction of the map width, from the west edge */
+    private static double longitudeToX(double longitude) {
+        return (longitude + 180) / 360;
+    }
+
+    /** Latitude as a fraction of the Web Mercator map height, from the north edge */
+    private static double latitudeToY(double latitude) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private static long clamp(long value, long max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
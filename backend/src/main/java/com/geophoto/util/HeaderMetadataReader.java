@@ -0,0 +1,106 @@
+package com.geophoto.util;
+
+import com.drew.imaging.FileType;
+import com.drew.imaging.FileTypeDetector;
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.imaging.heif.HeifMetadataReader;
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.imaging.jpeg.JpegSegmentMetadataReader;
+import com.drew.imaging.png.PngMetadataReader;
+import com.drew.imaging.webp.WebpMetadataReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifReader;
+import com.drew.metadata.jpeg.JpegReader;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Header Metadata Reader
+ * Reads only the metadata we use instead of letting ImageMetadataReader walk the whole file:
+ * - the file type is sniffed from the magic bytes and the type-specific reader is called directly
+ * - JPEG: only APP1 (Exif) and SOF segments are read, other segments are skipped,
+ *   and reading stops at start-of-scan
+ * - HEIF / PNG / WebP: the container reader walks the header boxes/chunks
+ * - every read goes through a hard byte ceiling so a pathological file fails fast
+ *   instead of being read to the end
+ */
+public class HeaderMetadataReader {
+
+    /** Ceiling used when the caller does not pass one */
+    public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    /** Exif (APP1) for GPS/date/orientation/thumbnail, JpegReader (SOFn) for dimensions */
+    private static final List<JpegSegmentMetadataReader> JPEG_READERS = List.of(new ExifReader(), new JpegReader());
+
+    /**
+     * Read metadata from the start of a stream, reading at most {@link #DEFAULT_MAX_BYTES}
+     */
+    public static Metadata readMetadata(InputStream in) throws ImageProcessingException, IOException {
+        return readMetadata(in, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Read metadata from the start of a stream
+     *
+     * @param in Image stream (not closed; left positioned wherever parsing stopped)
+     * @param maxBytes Maximum number of bytes read from {@code in}; skipped bytes do not count
+     * @throws IOException if the metadata does not end within maxBytes
+     */
+    public static Metadata readMetadata(InputStream in, long maxBytes) throws ImageProcessingException, IOException {
+        BufferedInputStream stream = new BufferedInputStream(new CeilingInputStream(in, maxBytes));
+        FileType fileType = FileTypeDetector.detectFileType(stream);
+        return switch (fileType) {
+            case Jpeg -> JpegMetadataReader.readMetadata(stream, JPEG_READERS);
+            case Heif -> HeifMetadataReader.readMetadata(stream);
+            case Png -> PngMetadataReader.readMetadata(stream);
+            case WebP -> WebpMetadataReader.readMetadata(stream);
+            // TIFF-based raw formats and the rest: generic reader, still bounded by the ceiling
+            default -> ImageMetadataReader.readMetadata(stream);
+        };
+    }
+
+    /**
+     * Fails reads past a byte ceiling. Skips are passed through (GridFS streams seek
+     * without fetching the skipped chunks) and do not count toward the ceiling.
+     */
+    private static class CeilingInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long bytesRead;
+
+        CeilingInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkCeiling();
+            int b = super.read();
+            if (b != -1) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkCeiling();
+            int n = super.read(b, off, (int) Math.min(len, maxBytes - bytesRead));
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
+
+        private void checkCeiling() throws IOException {
+            if (bytesRead >= maxBytes) {
+                throw new IOException("Metadata not found within the first " + maxBytes + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.geophoto.util;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Image Resizer Utility
+ * Scaling, EXIF orientation and JPEG encoding for generated renditions
+ */
+public class ImageResizer {
+
+    /**
+     * Scale an image so it fits inside a {@code maxSize} square.
+     * With {@code squareCrop} the image is center-cropped to a square first (for circular map markers).
+     * Images are never upscaled. The result is always TYPE_INT_RGB so it can be JPEG encoded.
+     */
+    public static BufferedImage resize(BufferedImage source, int maxSize, boolean squareCrop) {
+        BufferedImage image = source;
+        if (squareCrop && image.getWidth() != image.getHeight()) {
+            int side = Math.min(image.getWidth(), image.getHeight());
+            image = image.getSubimage((image.getWidth() - side) / 2, (image.getHeight() - side) / 2, side, side);
+        }
+
+        double scale = Math.min(1.0, (double) maxSize / Math.max(image.getWidth(), image.getHeight()));
+        return scale(image, scale);
+    }
+
+    /**
+     * Scale an image for a width x height box.
+     * {@code cover} fills the box, center-cropping the overflowing side; otherwise the image fits inside it.
+     * A box side of 0 leaves that side unconstrained. Images are never upscaled (a cover rendition of a
+     * small source keeps the box's aspect ratio at the source's resolution).
+     */
+    public static BufferedImage resizeToBox(BufferedImage source, int boxWidth, int boxHeight, boolean cover) {
+        BufferedImage image = source;
+        double scale;
+        if (cover && boxWidth > 0 && boxHeight > 0) {
+            double boxRatio = (double) boxWidth / boxHeight;
+            int cropWidth = image.getWidth();
+            int cropHeight = image.getHeight();
+            if ((double) cropWidth / cropHeight > boxRatio) {
+                cropWidth = Math.max(1, (int) Math.round(cropHeight * boxRatio));
+            } else {
+                cropHeight = Math.max(1, (int) Math.round(cropWidth / boxRatio));
+            }
+            image = image.getSubimage((image.getWidth() - cropWidth) / 2, (image.getHeight() - cropHeight) / 2,
+                    cropWidth, cropHeight);
+            scale = (double) boxWidth / cropWidth;
+        } else {
+            double widthScale = boxWidth > 0 ? (double) boxWidth / image.getWidth() : Double.MAX_VALUE;
+            double heightScale = boxHeight > 0 ? (double) boxHeight / image.getHeight() : Double.MAX_VALUE;
+            scale = Math.min(widthScale, heightScale);
+        }
+        return scale(image, Math.min(1.0, scale));
+    }
+
+    private static BufferedImage scale(BufferedImage source, double scale) {
+        BufferedImage image = source;
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        // Halve repeatedly before the final step: a single bilinear pass over a large ratio aliases badly
+        int width = image.getWidth();
+        int height = image.getHeight();
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight) {
+            width /= 2;
+            height /= 2;
+            image = draw(image, width, height);
+        }
+        if (width != targetWidth || height != targetHeight || image.getType() != BufferedImage.TYPE_INT_RGB) {
+            image = draw(image, targetWidth, targetHeight);
+        }
+        return image;
+    }
+
+    /**
+     * Apply an EXIF orientation (1-8) so the pixels are stored upright.
+     * Browsers rotate originals from EXIF, but generated renditions carry no EXIF.
+     */
+    public static BufferedImage applyOrientation(BufferedImage image, Integer orientation) {
+        if (orientation == null || orientation <= 1 || orientation > 8) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform transform;
+        switch (orientation) {
+            case 2 -> transform = new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> transform = new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> transform = new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> transform = new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> transform = new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> transform = new AffineTransform(0, -1, -1, 0, h, w);
+            default -> transform = new AffineTransform(0, -1, 1, 0, 0, w);
+        }
+        boolean swap = orientation >= 5;
+        BufferedImage result = new BufferedImage(swap ? h : w, swap ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Encode an RGB image as baseline JPEG
+     * @param quality 0.0 - 1.0
+     */
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            // White background for images with transparency (PNG, GIF)
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+}
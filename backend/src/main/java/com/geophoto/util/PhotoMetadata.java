@@ -0,0 +1,61 @@
+package com.geophoto.util;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Photo Metadata
+ * Immutable result of a single metadata parse (see {@link GpsExtractor#extract})
+ *
+ * @param latitude GPS latitude in decimal degrees, or null
+ * @param longitude GPS longitude in decimal degrees, or null
+ * @param altitude GPS altitude in meters (negative below sea level), or null
+ * @param takenAt DateTimeOriginal as recorded by the camera (wall-clock time), or null
+ * @param takenAtOffset OffsetTimeOriginal when the camera wrote one, or null
+ * @param orientation EXIF orientation (1-8), or null
+ * @param width image width in pixels, or null
+ * @param height image height in pixels, or null
+ * @param cameraMake camera manufacturer, or null
+ * @param cameraModel camera model, or null
+ * @param thumbnailOffset offset of the embedded EXIF thumbnail, relative to the TIFF header, or null
+ * @param thumbnailLength length of the embedded EXIF thumbnail in bytes, or null
+ */
+public record PhotoMetadata(
+        Double latitude,
+        Double longitude,
+        Double altitude,
+        LocalDateTime takenAt,
+        ZoneOffset takenAtOffset,
+        Integer orientation,
+        Integer width,
+        Integer height,
+        String cameraMake,
+        String cameraModel,
+        Long thumbnailOffset,
+        Integer thumbnailLength) {
+
+    /**
+     * Result for files without readable metadata
+     */
+    public static final PhotoMetadata EMPTY = new PhotoMetadata(
+            null, null, null, null, null, null, null, null, null, null, null, null);
+
+    public boolean hasGps() {
+        return latitude != null && longitude != null;
+    }
+
+    public boolean hasEmbeddedThumbnail() {
+        return thumbnailOffset != null && thumbnailLength != null && thumbnailLength > 0;
+    }
+
+    /**
+     * @return takenAt with its offset, or null if either is missing
+     */
+    public OffsetDateTime takenAtWithOffset() {
+        if (takenAt == null || takenAtOffset == null) {
+            return null;
+        }
+        return takenAt.atOffset(takenAtOffset);
+    }
+}
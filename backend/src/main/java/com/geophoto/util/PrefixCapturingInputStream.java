@@ -0,0 +1,72 @@
+package com.geophoto.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Prefix Capturing InputStream
+ * Passes bytes through unchanged while keeping a copy of the first {@code limit} bytes.
+ * Lets the upload path stream a file into GridFS and parse its EXIF header
+ * from the captured prefix, without reading the stored file back.
+ */
+public class PrefixCapturingInputStream extends FilterInputStream {
+
+    private final byte[] prefix;
+    private int captured;
+
+    public PrefixCapturingInputStream(InputStream in, int limit) {
+        super(in);
+        this.prefix = new byte[Math.max(0, limit)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1 && captured < prefix.length) {
+            prefix[captured++] = (byte) b;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0 && captured < prefix.length) {
+            int toCopy = Math.min(n, prefix.length - captured);
+            System.arraycopy(b, off, prefix, captured, toCopy);
+            captured += toCopy;
+        }
+        return n;
+    }
+
+    /**
+     * Skipped bytes are never seen, so skipping is done by reading to keep the prefix contiguous
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[8192];
+        long remaining = n;
+        while (remaining > 0) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            remaining -= read;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return copy of the bytes captured so far (at most {@code limit} bytes)
+     */
+    public byte[] getPrefix() {
+        return Arrays.copyOf(prefix, captured);
+    }
+}
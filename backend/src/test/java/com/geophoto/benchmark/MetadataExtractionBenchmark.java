@@ -0,0 +1,172 @@
+package com.geophoto.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Metadata;
+import com.geophoto.util.GpsExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata Extraction Benchmark
+ * One step per benchmark, so each change can be measured on its own:
+ * - twoFullParses: the original path, extractGpsCoordinates + extractDateTaken, each a whole-file
+ *   ImageMetadataReader parse
+ * - singleFullParse: one whole-file parse shared by all fields (single-parse PhotoMetadata)
+ * - singleHeaderParse: {@link GpsExtractor#extract} on the full stream, parsed by HeaderMetadataReader
+ *   (header segments only)
+ * - prefixHeaderParse: the upload path, HeaderMetadataReader on the in-memory metadata prefix
+ *
+ * JMH forks a JVM per benchmark with the annotation-processed benchmark list from
+ * target/test-classes, so it must be started by org.openjdk.jmh.Main in its own JVM with the
+ * test classpath (exec:java runs inside Maven and the fork would miss that classpath):
+ *
+ *   mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *       -Dexec.args="-cp %classpath org.openjdk.jmh.Main MetadataExtractionBenchmark"
+ *
+ * Add "-p imagePath=/path/to/photo.jpg" to exec.args to benchmark a real camera file instead of
+ * the generated JPEG with a synthetic EXIF block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataExtractionBenchmark {
+
+    private static final String FILENAME = "benchmark.jpg";
+
+    /** Bytes kept in memory during upload (app.upload.metadata-prefix-bytes) */
+    private static final int METADATA_PREFIX_BYTES = 262144;
+
+    @Param("")
+    public String imagePath;
+
+    private byte[] imageBytes;
+    private byte[] prefixBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        ((Logger) LoggerFactory.getLogger("com.geophoto")).setLevel(Level.OFF);
+        if (imagePath != null && !imagePath.isEmpty()) {
+            imageBytes = Files.readAllBytes(Path.of(imagePath));
+        } else {
+            imageBytes = generateJpegWithExif(4000, 3000);
+        }
+        prefixBytes = Arrays.copyOf(imageBytes, Math.min(imageBytes.length, METADATA_PREFIX_BYTES));
+    }
+
+    @Benchmark
+    public void twoFullParses(Blackhole blackhole) throws Exception {
+        blackhole.consume(GpsExtractor.extractGpsCoordinates(new ByteArrayInputStream(imageBytes), FILENAME));
+        blackhole.consume(GpsExtractor.extractDateTaken(new ByteArrayInputStream(imageBytes), FILENAME));
+    }
+
+    @Benchmark
+    public void singleFullParse(Blackhole blackhole) throws Exception {
+        Metadata metadata = ImageMetadataReader.readMetadata(new ByteArrayInputStream(imageBytes));
+        blackhole.consume(GpsExtractor.extract(metadata, FILENAME));
+    }
+
+    @Benchmark
+    public void singleHeaderParse(Blackhole blackhole) throws Exception {
+        blackhole.consume(GpsExtractor.extract(new ByteArrayInputStream(imageBytes), FILENAME));
+    }
+
+    @Benchmark
+    public void prefixHeaderParse(Blackhole blackhole) throws Exception {
+        blackhole.consume(GpsExtractor.extract(prefixBytes, FILENAME));
+    }
+
+    /**
+     * Encode a JPEG with ImageIO and insert an APP1 Exif segment holding Make,
+     * DateTimeOriginal and GPS latitude/longitude right after SOI
+     */
+    private static byte[] generateJpegWithExif(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", jpeg);
+        byte[] encoded = jpeg.toByteArray();
+
+        byte[] tiff = buildTiff();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length + tiff.length + 10);
+        out.write(encoded, 0, 2); // SOI
+        int segmentLength = 2 + 6 + tiff.length;
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write(segmentLength >> 8);
+        out.write(segmentLength & 0xFF);
+        out.write("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        out.write(tiff);
+        out.write(encoded, 2, encoded.length - 2);
+        return out.toByteArray();
+    }
+
+    private static byte[] buildTiff() {
+        ByteBuffer buffer = ByteBuffer.allocate(200).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] {'I', 'I'}).putShort((short) 42).putInt(8);
+
+        // IFD0 at 8: Make, ExifIFD pointer, GPS pointer
+        buffer.putShort((short) 3);
+        entry(buffer, 0x010F, 2, 9, 50);
+        entry(buffer, 0x8769, 4, 1, 60);
+        entry(buffer, 0x8825, 4, 1, 98);
+        buffer.putInt(0);
+        buffer.put("GeoPhoto\0".getBytes(StandardCharsets.US_ASCII));
+        buffer.put((byte) 0);
+
+        // Exif IFD at 60: DateTimeOriginal
+        buffer.putShort((short) 1);
+        entry(buffer, 0x9003, 2, 20, 78);
+        buffer.putInt(0);
+        buffer.put("2024:05:01 10:20:30\0".getBytes(StandardCharsets.US_ASCII));
+
+        // GPS IFD at 98: latitude/longitude with refs
+        buffer.putShort((short) 4);
+        entry(buffer, 0x0001, 2, 2, 'N');
+        entry(buffer, 0x0002, 5, 3, 152);
+        entry(buffer, 0x0003, 2, 2, 'E');
+        entry(buffer, 0x0004, 5, 3, 176);
+        buffer.putInt(0);
+        rationals(buffer, 21, 1, 1, 44, 3);
+        rationals(buffer, 105, 1, 51, 11, 7);
+        return buffer.array();
+    }
+
+    private static void entry(ByteBuffer buffer, int tag, int type, int count, int valueOrOffset) {
+        buffer.putShort((short) tag).putShort((short) type).putInt(count).putInt(valueOrOffset);
+    }
+
+    private static void rationals(ByteBuffer buffer, int degrees, int degreesDenominator,
+                                  int minutes, int seconds, int secondsDenominator) {
+        buffer.putInt(degrees).putInt(degreesDenominator);
+        buffer.putInt(minutes).putInt(1);
+        buffer.putInt(seconds).putInt(secondsDenominator);
+    }
+}
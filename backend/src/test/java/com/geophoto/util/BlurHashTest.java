@@ -0,0 +1,58 @@
+package com.geophoto.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BlurHashTest {
+
+    @Test
+    void encodesASolidBlackImage() {
+        assertEquals("L00000fQfQfQfQfQfQfQfQfQfQfQ", BlurHash.encode(image(32, 32, 0x000000, 0x000000)));
+    }
+
+    @Test
+    void encodesASolidWhiteImage() {
+        assertEquals("L9TSUA~qfQ~q~qoffQoffQfQfQfQ", BlurHash.encode(image(32, 32, 0xffffff, 0xffffff)));
+    }
+
+    @Test
+    void encodesATwoColourImage() {
+        // Red left half, blue right half; same value as the reference (woltapp) encoder
+        assertEquals("L~LjfL|TsRJro3n~jsa}fQfQfQfQ", BlurHash.encode(image(32, 32, 0xff0000, 0x0000ff)));
+    }
+
+    @Test
+    void usesMoreComponentsAlongTheLongerSide() {
+        // First character: (componentsX - 1) + (componentsY - 1) * 9
+        assertEquals('L', BlurHash.encode(image(64, 32, 0x808080, 0x808080)).charAt(0));
+        assertEquals('T', BlurHash.encode(image(32, 64, 0x808080, 0x808080)).charAt(0));
+    }
+
+    @Test
+    void hashLengthFollowsTheComponentCount() {
+        assertEquals(6, BlurHash.encode(image(32, 32, 0x336699, 0x336699), 1, 1).length());
+        assertEquals(6 + 2 * (9 * 9 - 1), BlurHash.encode(image(32, 32, 0x336699, 0x996633), 9, 9).length());
+    }
+
+    @Test
+    void rejectsComponentsOutOfRange() {
+        BufferedImage image = image(32, 32, 0, 0);
+        assertThrows(IllegalArgumentException.class, () -> BlurHash.encode(image, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> BlurHash.encode(image, 4, 10));
+    }
+
+    /** Image with the left half in one colour and the right half in another */
+    private static BufferedImage image(int width, int height, int left, int right) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, x < width / 2 ? left : right);
+            }
+        }
+        return image;
+    }
+}
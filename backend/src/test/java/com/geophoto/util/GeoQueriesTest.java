@@ -0,0 +1,93 @@
+package com.geophoto.util;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoQueriesTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    void isValidBoxAcceptsBoxesWithAnArea() {
+        assertTrue(GeoQueries.isValidBox(10, 20, 30, 40));
+        assertTrue(GeoQueries.isValidBox(-10, 170, 10, -170));
+        assertTrue(GeoQueries.isValidBox(-90, -180, 90, 180));
+    }
+
+    @Test
+    void isValidBoxRejectsEmptyOrOutOfRangeBoxes() {
+        assertFalse(GeoQueries.isValidBox(30, 20, 30, 40));
+        assertFalse(GeoQueries.isValidBox(30, 20, 10, 40));
+        assertFalse(GeoQueries.isValidBox(10, 20, 30, 20));
+        assertFalse(GeoQueries.isValidBox(10, 180, 30, -180));
+        assertFalse(GeoQueries.isValidBox(-91, 20, 30, 40));
+        assertFalse(GeoQueries.isValidBox(10, 20, 30, 181));
+    }
+
+    @Test
+    void viewportRejectsInvalidBoxes() {
+        assertThrows(IllegalArgumentException.class, () -> GeoQueries.viewport(10, 20, 10, 40));
+    }
+
+    @Test
+    void boxAcrossTheAntimeridianWrapsItsLongitudes() {
+        List<GeoJsonPolygon> parts = GeoQueries.box(-10, 170, 10, -170);
+        assertEquals(1, parts.size());
+        assertEquals(List.of(new Point(170, -10), new Point(-170, -10), new Point(-170, 10),
+                new Point(170, 10), new Point(170, -10)), ring(parts.get(0)));
+    }
+
+    @Test
+    void wideBoxIsSplitIntoPartsOfAtMost90Degrees() {
+        List<GeoJsonPolygon> parts = GeoQueries.box(-10, 120, 10, -120);
+        assertEquals(2, parts.size());
+        assertEquals(120, ring(parts.get(0)).get(0).getX(), DELTA);
+        assertEquals(180, ring(parts.get(0)).get(1).getX(), DELTA);
+        assertEquals(180, ring(parts.get(1)).get(0).getX(), DELTA);
+        assertEquals(-120, ring(parts.get(1)).get(1).getX(), DELTA);
+
+        assertEquals(4, GeoQueries.box(-10, -180, 10, 180).size());
+    }
+
+    @Test
+    void edgesThatBendIntoTheBoxAreMovedTowardsTheEquator() {
+        // A 90 degree wide edge at 40 degrees reaches atan(tan(40) * cos(45)) = 30.682 halfway
+        List<Point> north = ring(GeoQueries.box(40, 0, 60, 90).get(0));
+        assertEquals(30.68205617643342, north.get(0).getY(), DELTA);
+        assertEquals(60, north.get(2).getY(), DELTA);
+
+        List<Point> south = ring(GeoQueries.box(-60, 0, -40, 90).get(0));
+        assertEquals(-60, south.get(0).getY(), DELTA);
+        assertEquals(-30.68205617643342, south.get(2).getY(), DELTA);
+    }
+
+    @Test
+    void boxAcrossTheEquatorIsNotWidened() {
+        List<Point> ring = ring(GeoQueries.box(-40, 0, 40, 90).get(0));
+        assertEquals(-40, ring.get(0).getY(), DELTA);
+        assertEquals(40, ring.get(2).getY(), DELTA);
+    }
+
+    @Test
+    void viewportAcrossTheAntimeridianMatchesEitherLongitudeRange() {
+        Document query = GeoQueries.viewport(-10, 170, 10, -170).getCriteriaObject();
+        List<?> and = (List<?>) query.get("$and");
+        assertEquals(3, and.size());
+        Document longitude = (Document) and.get(2);
+        assertEquals(List.of(new Document("longitude", new Document("$gte", 170.0)),
+                new Document("longitude", new Document("$lte", -170.0))), longitude.get("$or"));
+    }
+
+    private static List<Point> ring(GeoJsonPolygon polygon) {
+        return polygon.getCoordinates().get(0).getCoordinates();
+    }
+}
@@ -0,0 +1,55 @@
+package com.geophoto.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GridCellsTest {
+
+    @Test
+    void cellOfOriginIsSouthEastOfTheCentre() {
+        assertEquals("3" + "0".repeat(GridCells.MAX_LEVEL - 1), GridCells.cell(0.0, 0.0));
+    }
+
+    @Test
+    void cellStartsWithTheQuadkeyOfItsTile() {
+        // Tile x=3, y=5 at zoom 3 is quadkey "213" (longitude -45..0, latitude about -41..-67)
+        String cell = GridCells.cell(-50.0, -22.5);
+        assertEquals(GridCells.MAX_LEVEL, cell.length());
+        assertTrue(cell.startsWith("213"), cell);
+    }
+
+    @Test
+    void cellClampsToTheMapEdges() {
+        assertEquals("1".repeat(GridCells.MAX_LEVEL), GridCells.cell(90.0, 180.0));
+        assertEquals("2".repeat(GridCells.MAX_LEVEL), GridCells.cell(-90.0, -180.0));
+    }
+
+    @Test
+    void cellIsNullForMissingOrOutOfRangeCoordinates() {
+        assertNull(GridCells.cell(null, 10.0));
+        assertNull(GridCells.cell(10.0, null));
+        assertNull(GridCells.cell(91.0, 0.0));
+        assertNull(GridCells.cell(0.0, -180.5));
+    }
+
+    @Test
+    void levelKeepsTheWholeWorldUnderMaxCells() {
+        // (2^4 + 1)^2 = 289 cells fit in 1000, (2^5 + 1)^2 = 1089 do not
+        assertEquals(4, GridCells.level(20, -85, -180, 85, 180, 1000));
+    }
+
+    @Test
+    void levelIsCappedBySmallBoxes() {
+        assertEquals(12, GridCells.level(12, 10.0, 20.0, 10.001, 20.001, 1000));
+        assertEquals(GridCells.MAX_LEVEL, GridCells.level(30, 10.0, 20.0, 10.000001, 20.000001, 1000));
+    }
+
+    @Test
+    void levelOfABoxAcrossTheAntimeridianUsesItsRealWidth() {
+        assertEquals(GridCells.level(20, -10, -10, 10, 10, 100),
+                GridCells.level(20, -10, 170, 10, -170, 100));
+    }
+}
@@ -22,6 +22,7 @@
 
 import { useState, useEffect } from 'react'
 import { fetchAllAlbums, addPhotoToAlbum, createAlbum } from '../../services/albumService'
+import { getPhotoUrl } from '../../config'
 
 const AddToAlbum = ({ photoId, photoName, onClose, onSuccess }) => {
   // ==================== STATES ====================
@@ -222,7 +223,7 @@ const AddToAlbum = ({ photoId, photoName, onClose, onSuccess }) => {
                     <div className="w-12 h-12 rounded-lg overflow-hidden bg-gradient-to-br from-blue-500/20 to-cyan-500/20 flex-shrink-0">
                       {album.coverPhotoUrl ? (
                         <img
-                          src={`http://${window.location.hostname}:8080${album.coverPhotoUrl}`}
+                          src={getPhotoUrl(album.coverPhotoUrl)}
                           alt={album.name}
                           className="w-full h-full object-cover"
                           onError={(e) => e.target.style.display = 'none'}
@@ -28,6 +28,8 @@ import { useParams, useNavigate } from 'react-router-dom'
 import { useAuth } from '../../context/AuthContext'
 import { fetchAlbumById, updateAlbum, removePhotoFromAlbum } from '../../services/albumService'
 import ShareModal from '../share/ShareModal'
+import { getSizedPhotoUrl } from '../../config'
+import { placeholderStyle } from '../../utils/blurhash'
 
 const AlbumDetail = () => {
   // ==================== HOOKS ====================
@@ -349,8 +351,10 @@ const AlbumDetail = () => {
               >
                 {/* Image */}
                 <img
-                  src={`http://${window.location.hostname}:8080${photo.url}`}
+                  src={getSizedPhotoUrl(photo.url, { width: 400, height: 400, fit: 'cover' })}
                   alt={photo.fileName}
+                  loading="lazy"
+                  style={placeholderStyle(photo.blurHash)}
                   className="w-full h-full object-cover"
                   onError={(e) => {
                     e.target.src = 'https://via.placeholder.com/300x300?text=📷'
@@ -423,7 +427,7 @@ const AlbumDetail = () => {
         >
           <div className="max-w-4xl max-h-[90vh] relative" onClick={e => e.stopPropagation()}>
             <img
-              src={`http://${window.location.hostname}:8080${selectedPhoto.url}`}
+              src={getSizedPhotoUrl(selectedPhoto.url, { width: 1280, height: 1280 })}
               alt={selectedPhoto.fileName}
               className="max-w-full max-h-[80vh] object-contain rounded-lg"
             />
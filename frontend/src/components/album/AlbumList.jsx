@@ -25,6 +25,7 @@ import { useState, useEffect } from 'react'
 import { useNavigate } from 'react-router-dom'
 import { useAuth } from '../../context/AuthContext'
 import { fetchAllAlbums, deleteAlbum, createAlbum } from '../../services/albumService'
+import { getPhotoUrl } from '../../config'
 
 const AlbumList = () => {
   // ==================== STATES ====================
@@ -260,7 +261,7 @@ const AlbumList = () => {
                 <div className="aspect-square relative overflow-hidden bg-gradient-to-br from-blue-500/20 to-cyan-500/20">
                   {album.coverPhotoUrl ? (
                     <img
-                      src={`http://${window.location.hostname}:8080${album.coverPhotoUrl}`}
+                      src={getPhotoUrl(album.coverPhotoUrl)}
                       alt={album.name}
                       className="w-full h-full object-cover group-hover:scale-110 transition-transform duration-500"
                       onError={(e) => {
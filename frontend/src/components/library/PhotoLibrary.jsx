@@ -35,6 +35,8 @@ import { useAuth } from '../../context/AuthContext'
 import { fetchAllPhotos, deletePhoto } from '../../services/photoService'
 import AddToAlbum from '../album/AddToAlbum'
 import ShareModal from '../share/ShareModal'
+import { getSizedPhotoUrl } from '../../config'
+import { placeholderStyle } from '../../utils/blurhash'
 
 const PhotoLibrary = () => {
   // ==================== STATES ====================
@@ -365,8 +367,10 @@ const PhotoLibrary = () => {
               >
                 {/* Image */}
                 <img
-                  src={`http://${window.location.hostname}:8080${photo.url}`}
+                  src={getSizedPhotoUrl(photo.url, { width: 400, height: 400, fit: 'cover' })}
                   alt={photo.fileName}
+                  loading="lazy"
+                  style={placeholderStyle(photo.blurHash)}
                   className="w-full h-full object-cover"
                   onError={(e) => {
                     e.target.src = 'https://via.placeholder.com/300x300?text=📷'
@@ -474,8 +478,10 @@ const PhotoLibrary = () => {
                 {/* Thumbnail */}
                 <div className="w-20 h-20 rounded-lg overflow-hidden flex-shrink-0">
                   <img
-                    src={`http://${window.location.hostname}:8080${photo.url}`}
+                    src={getSizedPhotoUrl(photo.url, { width: 200, height: 200, fit: 'cover' })}
                     alt={photo.fileName}
+                    loading="lazy"
+                    style={placeholderStyle(photo.blurHash)}
                     className="w-full h-full object-cover"
                     onError={(e) => {
                       e.target.src = 'https://via.placeholder.com/80x80?text=📷'
@@ -1,10 +1,11 @@
 import { useState, useEffect, useRef } from 'react'
-import { MapContainer, TileLayer, Marker, Popup, useMap } from 'react-leaflet'
+import { MapContainer, TileLayer, Marker, Popup, useMap, useMapEvents } from 'react-leaflet'
 import MarkerClusterGroup from 'react-leaflet-cluster'
 import L from 'leaflet'
 import { useAuth } from '../../context/AuthContext'
 import { useNavigate, useSearchParams } from 'react-router-dom'
-import { fetchPhotosWithGps } from '../../services/photoService'
+import { fetchPhotoClusters, fetchPhotoStats, fetchMarkerAtlas } from '../../services/photoService'
+import { getPhotoUrl } from '../../config'
 // Photo components
 import PhotoUpload from '../photo/PhotoUpload'
 import PhotosWithoutGPS from '../photo/PhotosWithoutGPS'
@@ -31,14 +32,62 @@ const MapFocusHandler = ({ targetLocation, onFocused }) => {
   return null
 }
 
+/**
+ * Báo khung nhìn và mức zoom hiện tại (lúc mount và sau mỗi lần kéo/zoom) để chỉ tải ảnh đang hiển thị
+ */
+const ViewportWatcher = ({ onViewportChange }) => {
+  const map = useMapEvents({
+    moveend: () => onViewportChange(map.getBounds(), map.getZoom())
+  })
+
+  useEffect(() => {
+    onViewportChange(map.getBounds(), map.getZoom())
+  }, [map])
+
+  return null
+}
+
+/**
+ * Marker của một cụm ảnh do server gom nhóm; click để zoom vào vùng chứa các ảnh của cụm
+ */
+const ServerClusterMarker = ({ cluster, icon }) => {
+  const map = useMap()
+
+  const handleClick = () => {
+    if (cluster.south === cluster.north && cluster.west === cluster.east) {
+      map.setView([cluster.latitude, cluster.longitude], Math.min(map.getZoom() + 2, map.getMaxZoom()))
+    } else {
+      map.fitBounds([[cluster.south, cluster.west], [cluster.north, cluster.east]], { padding: [40, 40] })
+    }
+  }
+
+  return (
+    <Marker
+      position={[cluster.latitude, cluster.longitude]}
+      icon={icon}
+      eventHandlers={{ click: handleClick }}
+    />
+  )
+}
+
+// Dưới ngưỡng này mỗi marker tải thumbnail riêng, không cần sprite atlas
+const MIN_PHOTOS_FOR_ATLAS = 50
+// Atlas đang được server tạo (pending): hỏi lại sau khoảng này, tối đa số lần này
+const ATLAS_RETRY_DELAY_MS = 2000
+const ATLAS_MAX_RETRIES = 3
+
 /**
  * PhotoMap Component
  * Hiển thị ảnh trên bản đồ với markers là thumbnail hình tròn
- * Sử dụng MarkerClusterGroup để nhóm ảnh khi zoom out
+ * Khi zoom out, server gom ảnh thành cụm (GET /photos/clusters); khi khung nhìn chỉ có ít ảnh,
+ * MarkerClusterGroup nhóm các ảnh gần nhau
  */
 const PhotoMap = () => {
   const [photos, setPhotos] = useState([])
+  const [clusters, setClusters] = useState([]) // Cụm ảnh do server gom (khi khung nhìn có nhiều ảnh)
+  const [markerSprites, setMarkerSprites] = useState({}) // photoId -> vị trí thumbnail trong sprite atlas
   const [totalPhotos, setTotalPhotos] = useState(0)
+  const [gpsPhotos, setGpsPhotos] = useState(0) // Tổng số ảnh có GPS (không chỉ trong khung nhìn)
   const [loading, setLoading] = useState(true)
   const [error, setError] = useState(null)
   const [selectedPhoto, setSelectedPhoto] = useState(null) // For PhotoDetails modal
@@ -46,6 +95,8 @@ const PhotoMap = () => {
   const [infoPanelCollapsed, setInfoPanelCollapsed] = useState(false) // Collapse/expand info panel
   const [targetLocation, setTargetLocation] = useState(null) // For focusing map from library
   const photosWithoutGPSRef = useRef(null)
+  const boundsRef = useRef(null) // Khung nhìn và mức zoom hiện tại của bản đồ
+  const viewportRequestRef = useRef(0) // Bỏ qua kết quả của các request khung nhìn cũ
   
   const { user, logout } = useAuth()
   const navigate = useNavigate()
@@ -104,37 +155,20 @@ const PhotoMap = () => {
   }, [targetLocation, photos])
 
   /**
-   * Fetch photos from backend API
+   * Fetch photo counts, and the photos of the current viewport, from backend API
    */
   const loadPhotos = async () => {
     try {
-      setLoading(true)
       setError(null) // Clear any previous errors
       
-      const data = await fetchPhotosWithGps()
-      console.log(`Loaded ${data.length} photos with GPS coordinates`)
-      setPhotos(Array.isArray(data) ? data : [])
+      const stats = await fetchPhotoStats()
+      setTotalPhotos(stats.total)
+      setGpsPhotos(stats.withGps)
       
-      // Also fetch total count (including photos without GPS)
-      try {
-        const allPhotosResponse = await fetch('http://${window.location.hostname}:8080/api/photos', {
-          headers: {
-            'Authorization': `Bearer ${localStorage.getItem('token')}`
-          }
-        })
-        
-        if (allPhotosResponse.ok) {
-          const allPhotos = await allPhotosResponse.json()
-          setTotalPhotos(Array.isArray(allPhotos) ? allPhotos.length : 0)
-          console.log(`Total photos in database: ${allPhotos.length}`)
-        } else {
-          setTotalPhotos(data.length) // Fallback to GPS photos count
-        }
-      } catch (totalErr) {
-        console.warn('Could not fetch total photos count:', totalErr)
-        setTotalPhotos(data.length) // Fallback to GPS photos count
+      // Bản đồ chưa mount (lần tải đầu): ViewportWatcher sẽ tải ảnh khi có khung nhìn
+      if (boundsRef.current) {
+        await loadViewportPhotos(boundsRef.current)
       }
-      
     } catch (err) {
       console.error('Lỗi khi tải ảnh:', err)
       // Handle authentication errors
@@ -149,30 +183,114 @@ const PhotoMap = () => {
       } else {
         setPhotos([])
         setTotalPhotos(0)
+        setGpsPhotos(0)
       }
     } finally {
       setLoading(false)
     }
   }
 
+  /**
+   * Tải ảnh của khung nhìn (GET /photos/clusters): từng ảnh nếu ít, ngược lại các cụm do server gom
+   */
+  const loadViewportPhotos = async (viewport) => {
+    const requestId = ++viewportRequestRef.current
+    const { points, clusters: cells } = await fetchPhotoClusters(viewport)
+    if (requestId !== viewportRequestRef.current) return // Đã có khung nhìn mới hơn
+    if (points) {
+      setPhotos(points)
+      setClusters([])
+      if (points.length < MIN_PHOTOS_FOR_ATLAS) {
+        setMarkerSprites({})
+      } else {
+        loadMarkerSprites(points.map(p => p.id), requestId)
+      }
+    } else {
+      setPhotos([])
+      setClusters(cells)
+      // Thumbnail của cụm là ảnh marker riêng của ảnh đại diện (cache theo từng ảnh, không phụ thuộc khung nhìn)
+      setMarkerSprites({})
+    }
+  }
+
+  /**
+   * Khung nhìn thay đổi (kéo/zoom): tải lại ảnh của khung nhìn mới
+   */
+  const handleViewportChange = (bounds, zoom) => {
+    const south = Math.max(-90, bounds.getSouth())
+    const north = Math.min(90, bounds.getNorth())
+    // Leaflet trả về kinh độ ngoài [-180, 180] khi kéo vòng quanh trái đất;
+    // sau khi wrap, west > east nghĩa là khung nhìn vắt qua kinh tuyến 180
+    boundsRef.current = bounds.getEast() - bounds.getWest() >= 360
+      ? { south, west: -180, north, east: 180, zoom }
+      : { south, west: bounds.getSouthWest().wrap().lng, north, east: bounds.getNorthEast().wrap().lng, zoom }
+    loadViewportPhotos(boundsRef.current).catch(err => {
+      console.warn('Could not load photos for viewport:', err)
+    })
+  }
+
+  /**
+   * Tải sprite atlas cho thumbnail marker: vài ảnh lớn thay vì một request cho mỗi marker
+   * Ảnh không có trong atlas (missing) vẫn dùng URL thumbnail riêng; atlas còn đang tạo thì hỏi lại sau
+   */
+  const loadMarkerSprites = async (photoIds, requestId, attempt = 0) => {
+    if (photoIds.length === 0) {
+      setMarkerSprites({})
+      return
+    }
+    try {
+      const atlas = await fetchMarkerAtlas(photoIds)
+      if (requestId !== viewportRequestRef.current) return // Đã có khung nhìn mới hơn
+      if (atlas.pending && attempt < ATLAS_MAX_RETRIES) {
+        setTimeout(() => loadMarkerSprites(photoIds, requestId, attempt + 1), ATLAS_RETRY_DELAY_MS)
+      }
+      const sprites = {}
+      atlas.atlases.forEach(({ url, width, height, sprites: positions }) => {
+        Object.entries(positions).forEach(([photoId, { x, y }]) => {
+          sprites[photoId] = { url: getPhotoUrl(url), x, y, width, height, tileSize: atlas.tileSize }
+        })
+      })
+      setMarkerSprites(sprites)
+    } catch (err) {
+      console.warn('Could not load marker atlas, using individual thumbnails:', err)
+      setMarkerSprites({})
+    }
+  }
+
+  /**
+   * Thumbnail của marker: ô trong sprite atlas nếu có, ngược lại ảnh thumbnail riêng
+   * (ô 48px = marker 56px trừ viền)
+   */
+  const markerImageHtml = (photo) => {
+    const sprite = markerSprites[photo.id]
+    if (sprite) {
+      const scale = 48 / sprite.tileSize
+      return `
+            <div
+              class="w-full h-full"
+              style="background-image: url('${sprite.url}'); background-size: ${sprite.width * scale}px ${sprite.height * scale}px; background-position: -${sprite.x * scale}px -${sprite.y * scale}px;"
+            ></div>`
+    }
+    const imageUrl = getPhotoUrl(photo.thumbnailUrl || photo.url)
+    return `
+            <img 
+              src="${imageUrl}" 
+              alt="Photo marker"
+              class="w-full h-full object-cover"
+              onerror="this.src='https://via.placeholder.com/56x56?text=📷'"
+            />`
+  }
+
   /**
    * Create custom circular thumbnail marker using L.divIcon
    * Marker hình tròn với viền trắng, bóng đổ đẹp mắt và hiệu ứng hover
    */
   const createCustomIcon = (photo) => {
-    const imageUrl = `http://${window.location.hostname}:8080${photo.thumbnailUrl || photo.url}`
-    
     return L.divIcon({
       className: 'custom-photo-marker',
       html: `
         <div class="relative w-14 h-14 rounded-full bg-white p-1 shadow-lg hover:shadow-2xl transition-all duration-200 hover:scale-110 cursor-pointer ring-2 ring-white ring-offset-2 ring-offset-transparent">
-          <div class="w-full h-full rounded-full overflow-hidden">
-            <img 
-              src="${imageUrl}" 
-              alt="Photo marker"
-              class="w-full h-full object-cover"
-              onerror="this.src='https://via.placeholder.com/56x56?text=📷'"
-            />
+          <div class="w-full h-full rounded-full overflow-hidden">${markerImageHtml(photo)}
           </div>
           <div class="absolute -bottom-1 -right-1 w-4 h-4 bg-blue-500 rounded-full border-2 border-white shadow-md flex items-center justify-center">
             <svg class="w-2.5 h-2.5 text-white" fill="currentColor" viewBox="0 0 20 20">
@@ -187,6 +305,29 @@ const PhotoMap = () => {
     })
   }
 
+  /**
+   * Marker của cụm ảnh: thumbnail marker của ảnh đại diện kèm số ảnh trong cụm
+   */
+  const createClusterIcon = (cluster) => {
+    const thumbnail = cluster.thumbnailUrl
+      ? `<div class="w-full h-full rounded-full overflow-hidden">${markerImageHtml({ id: cluster.photoId, thumbnailUrl: cluster.thumbnailUrl })}</div>`
+      : '<div class="w-full h-full rounded-full bg-blue-100"></div>'
+    const count = cluster.count > 999 ? `${Math.floor(cluster.count / 1000)}k` : cluster.count
+    return L.divIcon({
+      className: 'custom-photo-marker',
+      html: `
+        <div class="relative w-14 h-14 rounded-full bg-white p-1 shadow-lg hover:shadow-2xl transition-all duration-200 hover:scale-110 cursor-pointer">
+          ${thumbnail}
+          <div style="min-width: 1.5rem" class="absolute -top-1 -right-2 h-6 px-1.5 bg-blue-500 text-white text-xs font-bold rounded-full border-2 border-white shadow-md flex items-center justify-center">
+            ${count}
+          </div>
+        </div>
+      `,
+      iconSize: [56, 56],
+      iconAnchor: [28, 28]
+    })
+  }
+
   /**
    * Handle successful upload - refresh photos
    */
@@ -289,10 +430,22 @@ const PhotoMap = () => {
           minZoom={3}
         />
 
+        {/* Chỉ tải ảnh trong khung nhìn */}
+        <ViewportWatcher onViewportChange={handleViewportChange} />
+
         {/* Photos Without GPS Management Component */}
         <PhotosWithoutGPS ref={photosWithoutGPSRef} onLocationAdded={handleLocationAdded} />
 
-        {/* Marker Cluster Group - Groups photos when zoomed out */}
+        {/* Cụm ảnh do server gom nhóm */}
+        {clusters.map((cluster) => (
+          <ServerClusterMarker
+            key={`cluster-${cluster.cell}`}
+            cluster={cluster}
+            icon={createClusterIcon(cluster)}
+          />
+        ))}
+
+        {/* Marker Cluster Group - Groups the few photos of the viewport that are close together */}
         {photos.length > 0 && (
           <MarkerClusterGroup
             key={`cluster-${photos.length}`}
@@ -318,7 +471,7 @@ const PhotoMap = () => {
                    {/* Thumbnail Preview */}
                    <div className="photo-popup-image mb-3">
                      <img
-                       src={`http://${window.location.hostname}:8080${photo.url}`}
+                       src={getPhotoUrl(photo.url)}
                        alt={photo.fileName}
                        className="w-full h-32 object-cover rounded-lg"
                        onError={(e) => {
@@ -429,19 +582,19 @@ const PhotoMap = () => {
               </div>
               
               <div className="flex flex-col items-center p-2 bg-green-50 rounded-lg">
-                <span className="text-2xl font-bold text-green-600">{photos.length}</span>
+                <span className="text-2xl font-bold text-green-600">{gpsPhotos}</span>
                 <span className="text-xs text-gray-600 mt-0.5">Có GPS</span>
               </div>
             </div>
             
             {/* Warning - Compact */}
-            {totalPhotos > photos.length && (
+            {totalPhotos > gpsPhotos && (
               <div className="p-2 bg-orange-50 rounded-lg border border-orange-200 mb-3">
                 <p className="text-xs font-medium text-orange-700 flex items-center gap-1.5">
                   <svg className="w-3.5 h-3.5 flex-shrink-0" fill="currentColor" viewBox="0 0 20 20">
                     <path fillRule="evenodd" d="M8.257 3.099c.765-1.36 2.722-1.36 3.486 0l5.58 9.92c.75 1.334-.213 2.98-1.742 2.98H4.42c-1.53 0-2.493-1.646-1.743-2.98l5.58-9.92zM11 13a1 1 0 11-2 0 1 1 0 012 0zm-1-8a1 1 0 00-1 1v3a1 1 0 002 0V6a1 1 0 00-1-1z" clipRule="evenodd" />
                   </svg>
-                  <span>{totalPhotos - photos.length} ảnh chưa có GPS</span>
+                  <span>{totalPhotos - gpsPhotos} ảnh chưa có GPS</span>
                 </p>
               </div>
             )}
@@ -482,7 +635,7 @@ const PhotoMap = () => {
 
               {/* Button to manage photos without GPS */}
               <PhotoManagement 
-                photosWithoutGps={totalPhotos - photos.length}
+                photosWithoutGps={totalPhotos - gpsPhotos}
                 onOpenManagement={handleOpenManagement}
               />
             </div>
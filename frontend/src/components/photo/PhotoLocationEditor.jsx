@@ -3,6 +3,7 @@ import { MapContainer, TileLayer, Marker, useMapEvents } from 'react-leaflet'
 import L from 'leaflet'
 import PropTypes from 'prop-types'
 import { updatePhotoLocation } from '../../services/photoService'
+import { getPhotoUrl } from '../../config'
 
 /**
  * MapClickHandler Component
@@ -213,7 +214,7 @@ const PhotoLocationEditor = ({ photo, onClose, onLocationUpdated }) => {
             {/* Left Column - Photo Preview */}
             <div className="md:col-span-1">
               <img
-                src={`http://${window.location.hostname}:8080${photo.url}`}
+                src={getPhotoUrl(photo.url)}
                 alt={photo.fileName}
                 className="w-full rounded-lg shadow-lg object-cover"
                 style={{ maxHeight: '300px' }}
@@ -1,5 +1,26 @@
 import React, { useState } from 'react'
-import { uploadPhoto } from '../../services/photoService'
+import { uploadPhoto, uploadPhotoResumable, hashFile, checkExistingHashes } from '../../services/photoService'
+
+// Files above the multipart limit use the resumable chunked upload
+const MULTIPART_LIMIT = 10 * 1024 * 1024
+const MAX_FILE_SIZE = 500 * 1024 * 1024
+
+/**
+ * Kiểm tra trước khi upload: user đã có ảnh với cùng nội dung (SHA-256) chưa
+ * Chỉ băm file nhỏ (đọc cả file vào bộ nhớ); lỗi (vd. crypto.subtle không có khi truy cập
+ * qua http từ IP LAN) thì cứ upload bình thường
+ */
+const isAlreadyUploaded = async (file) => {
+  if (file.size > MULTIPART_LIMIT) return false
+  try {
+    const hash = await hashFile(file)
+    const existing = await checkExistingHashes([hash])
+    return existing.includes(hash)
+  } catch (err) {
+    console.warn('Could not check for a duplicate upload:', err)
+    return false
+  }
+}
 
 /**
  * PhotoUpload Component
@@ -39,10 +60,10 @@ const PhotoUpload = ({ onUploadSuccess }) => {
         return
       }
 
-      // Kiểm tra file size (max 10MB)
-      if (file.size > 10 * 1024 * 1024) {
+      // Kiểm tra file size (max 500MB, > 10MB upload theo từng phần)
+      if (file.size > MAX_FILE_SIZE) {
         console.error('❌ File too large:', (file.size / 1024 / 1024).toFixed(2), 'MB')
-        setMessage({ type: 'error', text: 'File quá lớn! Tối đa 10MB' })
+        setMessage({ type: 'error', text: 'File quá lớn! Tối đa 500MB' })
         return
       }
 
@@ -124,6 +145,11 @@ const PhotoUpload = ({ onUploadSuccess }) => {
     setMessage({ type: 'info', text: '⏳ Đang upload...' })
 
     try {
+      if (await isAlreadyUploaded(selectedFile)) {
+        setMessage({ type: 'info', text: 'ℹ️ Ảnh này đã có trong thư viện của bạn, không cần upload lại' })
+        return
+      }
+
       console.log('Calling uploadPhoto service...')
       
       // Attach location to file object if available
@@ -132,7 +158,17 @@ const PhotoUpload = ({ onUploadSuccess }) => {
         selectedFile.longitude = location.longitude
       }
       
-      const result = await uploadPhoto(selectedFile, description)
+      const result = selectedFile.size > MULTIPART_LIMIT
+        ? await uploadPhotoResumable(selectedFile, {
+            description,
+            latitude: location?.latitude,
+            longitude: location?.longitude,
+            onProgress: (sent, total) => setMessage({
+              type: 'info',
+              text: `⏳ Đang upload... ${Math.round((sent / total) * 100)}%`
+            })
+          })
+        : await uploadPhoto(selectedFile, description)
       console.log('Upload success!', result)
       
       setMessage({ 
@@ -297,7 +333,7 @@ const PhotoUpload = ({ onUploadSuccess }) => {
                         {selectedFile ? selectedFile.name : '📷 Click để chọn ảnh'}
                       </p>
                       <p className="text-xs text-gray-500 mt-1">
-                        PNG, JPG, GIF tối đa 10MB
+                        PNG, JPG, GIF tối đa 500MB
                       </p>
                     </div>
                   </label>
@@ -2,6 +2,7 @@ import { useState, useEffect, useRef, useImperativeHandle, forwardRef } from 're
 import { Marker, Popup, useMap } from 'react-leaflet'
 import L from 'leaflet'
 import { fetchAllPhotos, updatePhotoLocation, deletePhoto } from '../../services/photoService'
+import { getPhotoUrl } from '../../config'
 import LocationSearch from '../map/LocationSearch'
 
 /**
@@ -342,7 +343,7 @@ const PhotosWithoutGPS = forwardRef(({ onLocationAdded }, ref) => {
                   >
                     <div className="flex items-center gap-3">
                       <img
-                        src={`http://${window.location.hostname}:8080${photo.url}`}
+                        src={getPhotoUrl(photo.url)}
                         alt={photo.fileName}
                         className="w-12 h-12 object-cover rounded"
                       />
@@ -382,7 +383,7 @@ const PhotosWithoutGPS = forwardRef(({ onLocationAdded }, ref) => {
                   </div>
                   <div className="flex items-center gap-3">
                     <img
-                      src={`http://${window.location.hostname}:8080${selectedPhoto.url}`}
+                      src={getPhotoUrl(selectedPhoto.url)}
                       alt={selectedPhoto.fileName}
                       className="w-16 h-16 object-cover rounded"
                     />
@@ -20,6 +20,8 @@
 import { useState, useEffect } from 'react'
 import { useParams, useNavigate } from 'react-router-dom'
 import { getPublicShareInfo, viewSharedContent } from '../../services/shareService'
+import { getSizedPhotoUrl } from '../../config'
+import { placeholderStyle } from '../../utils/blurhash'
 
 const SharedView = () => {
   // ==================== HOOKS ====================
@@ -262,7 +264,7 @@ const SharedView = () => {
           <div className="flex flex-col items-center">
             <div className="bg-black/50 rounded-2xl overflow-hidden shadow-2xl max-w-4xl w-full">
               <img
-                src={`http://${window.location.hostname}:8080${photo.url}`}
+                src={getSizedPhotoUrl(photo.url, { width: 1280, height: 1280 })}
                 alt={photo.fileName}
                 className="w-full h-auto object-contain max-h-[70vh]"
                 onClick={() => setSelectedPhoto(photo)}
@@ -331,8 +333,10 @@ const SharedView = () => {
                     onClick={() => setSelectedPhoto(p)}
                   >
                     <img
-                      src={`http://${window.location.hostname}:8080${p.url}`}
+                      src={getSizedPhotoUrl(p.url, { width: 400, height: 400, fit: 'cover' })}
                       alt={p.fileName}
+                      loading="lazy"
+                      style={placeholderStyle(p.blurHash)}
                       className="w-full h-full object-cover group-hover:scale-110 transition-transform duration-300"
                       onError={(e) => {
                         e.target.src = 'https://via.placeholder.com/300x300?text=📷'
@@ -381,7 +385,7 @@ const SharedView = () => {
           </button>
           
           <img
-            src={`http://${window.location.hostname}:8080${selectedPhoto.url}`}
+            src={getSizedPhotoUrl(selectedPhoto.url, { width: 1280, height: 1280 })}
             alt={selectedPhoto.fileName}
             className="max-w-full max-h-[90vh] object-contain rounded-lg"
             onClick={(e) => e.stopPropagation()}
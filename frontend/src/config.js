@@ -41,16 +41,40 @@ export const getApiUrl = () => {
 
 /**
  * Lấy URL cho ảnh
+ * - Ảnh GridFS (/api/photos/image/...) đi qua origin của trang: nginx cache ảnh ở production,
+ *   proxy /api của Vite khi dev
+ * - Ảnh cũ (/uploads/...) và khi dùng ngrok: gọi thẳng backend
  * @param {string} photoUrl - URL ảnh từ backend (ví dụ: /uploads/abc.jpg)
  */
 export const getPhotoUrl = (photoUrl) => {
   if (!photoUrl) return ''
+  if (!NGROK_BACKEND_URL && photoUrl.startsWith('/api/photos/image/')) {
+    return `${window.location.origin}${photoUrl}`
+  }
   return `${getBackendUrl()}${photoUrl}`
 }
 
+/**
+ * Lấy URL ảnh đã thu nhỏ (server tạo và cache bản thu nhỏ)
+ * Kích thước phải nằm trong allow-list của backend: 64, 112, 200, 400, 800, 1280, 1920
+ * @param {string} photoUrl - URL ảnh từ backend
+ * @param {{width?: number, height?: number, fit?: 'cover'|'contain'}} size
+ */
+export const getSizedPhotoUrl = (photoUrl, { width, height, fit } = {}) => {
+  if (!photoUrl) return ''
+  // Ảnh cũ trong /uploads không hỗ trợ thu nhỏ
+  if (!photoUrl.startsWith('/api/photos/image/')) return getPhotoUrl(photoUrl)
+  const params = new URLSearchParams()
+  if (width) params.set('w', width)
+  if (height) params.set('h', height)
+  if (fit) params.set('fit', fit)
+  return `${getPhotoUrl(photoUrl)}?${params}`
+}
+
 export default {
   getBackendUrl,
   getApiUrl,
   getPhotoUrl,
+  getSizedPhotoUrl,
   NGROK_BACKEND_URL
 }
@@ -82,6 +82,56 @@ export const fetchPhotosWithGps = async () => {
   }
 };
 
+/**
+ * Fetch the photos inside a map viewport (/photos/within)
+ * bounds: { south, west, north, east }; polygon (optional): [[lng, lat], ...]
+ * Returns { photos, truncated }
+ */
+export const fetchPhotosWithin = async ({ south, west, north, east }, polygon = null) => {
+  try {
+    const params = { south, west, north, east };
+    if (polygon) {
+      params.polygon = polygon.map(([lng, lat]) => `${lng},${lat}`).join(";");
+    }
+    const response = await apiClient.get("/photos/within", { params });
+    return response.data;
+  } catch (error) {
+    console.error("Error fetching photos in viewport:", error);
+    throw error;
+  }
+};
+
+/**
+ * Fetch the photos of a map viewport grouped for a zoom level (/photos/clusters)
+ * viewport: { south, west, north, east, zoom }
+ * Returns { total, level, clusters, points }: points (individual photos) when the viewport holds
+ * few photos, otherwise clusters [{ cell, latitude, longitude, count, photoId, south, west, north, east }]
+ */
+export const fetchPhotoClusters = async ({ south, west, north, east, zoom }) => {
+  try {
+    const response = await apiClient.get("/photos/clusters", {
+      params: { south, west, north, east, zoom },
+    });
+    return response.data;
+  } catch (error) {
+    console.error("Error fetching photo clusters:", error);
+    throw error;
+  }
+};
+
+/**
+ * Photo counts of the current user: { total, withGps }
+ */
+export const fetchPhotoStats = async () => {
+  try {
+    const response = await apiClient.get("/photos/stats");
+    return response.data;
+  } catch (error) {
+    console.error("Error fetching photo stats:", error);
+    throw error;
+  }
+};
+
 /**
  * Fetch all photos
  */
@@ -150,6 +200,173 @@ export const uploadPhoto = async (file, description = "") => {
   }
 };
 
+/**
+ * Upload several photos in one request
+ * Returns one result per file: { fileName, success, photo, error }
+ */
+export const uploadPhotosBatch = async (files) => {
+  try {
+    const formData = new FormData();
+    for (const file of files) {
+      formData.append("files", file);
+    }
+
+    const response = await apiClient.post("/photos/upload/batch", formData, {
+      headers: {
+        "Content-Type": "multipart/form-data",
+      },
+    });
+    return response.data;
+  } catch (error) {
+    console.error("Error uploading photo batch:", error);
+    throw error;
+  }
+};
+
+/**
+ * SHA-256 of a file as lowercase hex (same form the server stores)
+ */
+export const hashFile = async (file) => {
+  const digest = await crypto.subtle.digest("SHA-256", await file.arrayBuffer());
+  return Array.from(new Uint8Array(digest))
+    .map((b) => b.toString(16).padStart(2, "0"))
+    .join("");
+};
+
+/**
+ * Ask which of the given SHA-256 hashes the current user has already uploaded
+ * Returns the subset of hashes the server already has
+ */
+export const checkExistingHashes = async (hashes) => {
+  try {
+    const response = await apiClient.post("/photos/hashes/check", { hashes });
+    return response.data.existing;
+  } catch (error) {
+    console.error("Error checking photo hashes:", error);
+    throw error;
+  }
+};
+
+/**
+ * Upload a large photo in resumable chunks (/photos/uploads)
+ * A dropped connection resumes from the offset the server reports instead of restarting.
+ * onProgress(bytesSent, totalBytes) is called after each chunk.
+ */
+export const uploadPhotoResumable = async (
+  file,
+  { description, latitude, longitude, onProgress, maxRetries = 5 } = {},
+) => {
+  const { data: session } = await apiClient.post("/photos/uploads", {
+    fileName: file.name,
+    contentType: file.type,
+    totalSize: file.size,
+  });
+
+  // Send several GridFS chunks per request; the server keeps only whole chunks
+  const requestSize = session.chunkSize * 4;
+  let offset = session.offset;
+  let retries = 0;
+  while (offset < file.size) {
+    try {
+      const response = await apiClient.patch(
+        `/photos/uploads/${session.id}`,
+        file.slice(offset, Math.min(offset + requestSize, file.size)),
+        {
+          headers: {
+            "Content-Type": "application/octet-stream",
+            "Upload-Offset": offset,
+          },
+        },
+      );
+      offset = Number(response.headers["upload-offset"]);
+      retries = 0;
+      if (onProgress) {
+        onProgress(offset, file.size);
+      }
+    } catch (error) {
+      if (retries++ >= maxRetries) {
+        console.error("Error uploading photo chunk:", error);
+        throw error;
+      }
+      // Server busy (admission control): wait as instructed before resuming
+      if (error.response && error.response.status === 429) {
+        const retryAfter = Number(error.response.headers["retry-after"]) || 5;
+        await new Promise((resolve) => setTimeout(resolve, retryAfter * 1000));
+      }
+      // Resume from what the server actually stored
+      const head = await apiClient.head(`/photos/uploads/${session.id}`);
+      offset = Number(head.headers["upload-offset"]);
+    }
+  }
+
+  const params = {};
+  if (description) params.description = description;
+  if (latitude != null && longitude != null) {
+    params.latitude = latitude;
+    params.longitude = longitude;
+  }
+  const response = await apiClient.post(
+    `/photos/uploads/${session.id}/finalize`,
+    null,
+    { params },
+  );
+  return response.data;
+};
+
+/**
+ * Import the photos of a ZIP archive (/photos/imports)
+ * The archive is streamed as the raw request body; the request resolves (202) once the server
+ * has received the whole archive and the import continues in the background.
+ * onJobCreated(job) receives the job so progress can be polled with fetchImportJob.
+ */
+export const importArchive = async (file, { onJobCreated } = {}) => {
+  const { data: job } = await apiClient.post("/photos/imports", null, {
+    params: { fileName: file.name },
+  });
+  if (onJobCreated) {
+    onJobCreated(job);
+  }
+  try {
+    const response = await apiClient.put(
+      `/photos/imports/${job.id}/archive`,
+      file,
+      { headers: { "Content-Type": "application/zip" } },
+    );
+    return response.data;
+  } catch (error) {
+    console.error("Error importing archive:", error);
+    throw error;
+  }
+};
+
+/**
+ * Progress of a ZIP import: { status, entriesProcessed, imported, skipped, failed, errors }
+ */
+export const fetchImportJob = async (id) => {
+  try {
+    const response = await apiClient.get(`/photos/imports/${id}`);
+    return response.data;
+  } catch (error) {
+    console.error(`Error fetching import job ${id}:`, error);
+    throw error;
+  }
+};
+
+/**
+ * Sprite atlases of map marker thumbnails for the given photos (/photos/atlas)
+ * Returns { tileSize, atlases: [{ url, width, height, sprites: { photoId: { x, y } } }], missing, pending }
+ * pending: some atlases are still being generated (their photos are in missing), ask again later
+ */
+export const fetchMarkerAtlas = async (photoIds) => {
+  try {
+    const response = await apiClient.post("/photos/atlas", { photoIds });
+    return response.data;
+  } catch (error) {
+    console.error("Error fetching marker atlas:", error);
+    throw error;
+  }
+};
+
 /**
  * Delete a photo
  */
@@ -180,9 +397,19 @@ export const updatePhotoLocation = async (id, latitude, longitude) => {
 
 export default {
   fetchPhotosWithGps,
+  fetchPhotosWithin,
+  fetchPhotoClusters,
+  fetchPhotoStats,
   fetchAllPhotos,
   fetchPhotoById,
   uploadPhoto,
+  uploadPhotosBatch,
+  uploadPhotoResumable,
+  hashFile,
+  checkExistingHashes,
+  importArchive,
+  fetchImportJob,
+  fetchMarkerAtlas,
   deletePhoto,
   updatePhotoLocation,
 };
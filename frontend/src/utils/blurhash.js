@@ -0,0 +1,120 @@
+/**
+ * BlurHash decoder (https://github.com/woltapp/blurhash)
+ * Biến chuỗi blurHash của ảnh (PhotoDTO.blurHash) thành ảnh mờ nhỏ để hiển thị ngay,
+ * trước khi thumbnail thật tải xong
+ */
+
+const ALPHABET =
+  '0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~'
+
+const decode83 = (str) => {
+  let value = 0
+  for (const char of str) {
+    value = value * 83 + ALPHABET.indexOf(char)
+  }
+  return value
+}
+
+const sRGBToLinear = (value) => {
+  const v = value / 255
+  return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4)
+}
+
+const linearToSRGB = (value) => {
+  const v = Math.max(0, Math.min(1, value))
+  return v <= 0.0031308
+    ? Math.trunc(v * 12.92 * 255 + 0.5)
+    : Math.trunc((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5)
+}
+
+const signPow = (value, exp) => Math.sign(value) * Math.pow(Math.abs(value), exp)
+
+/**
+ * Giải mã blurHash thành mảng pixel RGBA
+ */
+const decode = (hash, width, height) => {
+  const sizeFlag = decode83(hash[0])
+  const componentsX = (sizeFlag % 9) + 1
+  const componentsY = Math.floor(sizeFlag / 9) + 1
+  if (hash.length !== 4 + 2 * componentsX * componentsY) {
+    return null
+  }
+
+  const maximumValue = (decode83(hash[1]) + 1) / 166
+  const colors = new Array(componentsX * componentsY)
+  const dc = decode83(hash.substring(2, 6))
+  colors[0] = [sRGBToLinear(dc >> 16), sRGBToLinear((dc >> 8) & 255), sRGBToLinear(dc & 255)]
+  for (let i = 1; i < colors.length; i++) {
+    const ac = decode83(hash.substring(4 + i * 2, 6 + i * 2))
+    colors[i] = [
+      signPow((Math.floor(ac / (19 * 19)) - 9) / 9, 2) * maximumValue,
+      signPow((Math.floor(ac / 19) % 19 - 9) / 9, 2) * maximumValue,
+      signPow((ac % 19 - 9) / 9, 2) * maximumValue,
+    ]
+  }
+
+  const pixels = new Uint8ClampedArray(width * height * 4)
+  for (let y = 0; y < height; y++) {
+    for (let x = 0; x < width; x++) {
+      let r = 0
+      let g = 0
+      let b = 0
+      for (let j = 0; j < componentsY; j++) {
+        for (let i = 0; i < componentsX; i++) {
+          const basis = Math.cos((Math.PI * x * i) / width) * Math.cos((Math.PI * y * j) / height)
+          const color = colors[i + j * componentsX]
+          r += color[0] * basis
+          g += color[1] * basis
+          b += color[2] * basis
+        }
+      }
+      const offset = 4 * (x + y * width)
+      pixels[offset] = linearToSRGB(r)
+      pixels[offset + 1] = linearToSRGB(g)
+      pixels[offset + 2] = linearToSRGB(b)
+      pixels[offset + 3] = 255
+    }
+  }
+  return pixels
+}
+
+// blurHash -> data URL (mỗi ảnh chỉ giải mã một lần)
+const dataUrlCache = new Map()
+
+/**
+ * Ảnh placeholder (data URL 32x32) từ blurHash, hoặc null nếu không có / không hợp lệ
+ */
+export const blurHashToDataUrl = (hash) => {
+  if (!hash || hash.length < 6) return null
+  if (dataUrlCache.has(hash)) return dataUrlCache.get(hash)
+
+  let url = null
+  try {
+    const size = 32
+    const pixels = decode(hash, size, size)
+    if (pixels) {
+      const canvas = document.createElement('canvas')
+      canvas.width = size
+      canvas.height = size
+      canvas.getContext('2d').putImageData(new ImageData(pixels, size, size), 0, 0)
+      url = canvas.toDataURL()
+    }
+  } catch (err) {
+    console.warn('Invalid blurHash:', hash, err)
+  }
+  dataUrlCache.set(hash, url)
+  return url
+}
+
+/**
+ * Style nền cho thẻ ảnh: hiển thị placeholder mờ cho tới khi ảnh thật tải xong
+ */
+export const placeholderStyle = (hash) => {
+  const url = blurHashToDataUrl(hash)
+  return url ? { backgroundImage: `url(${url})`, backgroundSize: 'cover', backgroundPosition: 'center' } : undefined
+}
+
+export default {
+  blurHashToDataUrl,
+  placeholderStyle,
+}